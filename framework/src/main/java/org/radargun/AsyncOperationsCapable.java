@@ -0,0 +1,20 @@
+package org.radargun;
+
+import java.util.concurrent.Future;
+
+/**
+ * Additional CacheWrapper feature, allows having several operations in flight from a single thread. Wrappers that
+ * don't implement it are invoked synchronously, see {@link org.radargun.utils.AsyncOperations}.
+ */
+public interface AsyncOperationsCapable {
+
+   /**
+    * @see CacheWrapper#put(String, Object, Object)
+    */
+   Future<?> putAsync(String bucket, Object key, Object value) throws Exception;
+
+   /**
+    * @see CacheWrapper#get(String, Object)
+    */
+   Future<?> getAsync(String bucket, Object key) throws Exception;
+}
@@ -0,0 +1,23 @@
+package org.radargun;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Additional CacheWrapper feature, allows putting and getting multiple entries with a single invocation. Wrappers that
+ * don't implement it are accessed one entry at a time, see {@link org.radargun.utils.BulkOperations}.
+ */
+public interface BulkOperationsCapable {
+
+   /**
+    * @see CacheWrapper#put(String, Object, Object)
+    */
+   void putAll(String bucket, Map<Object, Object> entries) throws Exception;
+
+   /**
+    * @return map of the requested keys to their values. Keys that are not in the cache may be missing from the map
+    * or mapped to null.
+    * @see CacheWrapper#get(String, Object)
+    */
+   Map<Object, Object> getAll(String bucket, Set<Object> keys) throws Exception;
+}
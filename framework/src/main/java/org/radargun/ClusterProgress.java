@@ -0,0 +1,292 @@
+package org.radargun;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.radargun.stressors.IntervalStats;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cluster-wide view of the progress of the running stage, built on the master from the reports streamed by the slaves
+ * (see {@link ProgressListener}). The reports are combined into rows: a row is completed once every slave of the stage
+ * has reported, or when a slave is late by more than twice the reporting period, so a stuck slave doesn't stop the
+ * view. Each row is logged, the rows of the last stage with any progress are kept in the master's state for
+ * ReportProgressStage.
+ * <p/>
+ * Concurrency: this class is thread safe, it is read by the {@link ProgressServer}.
+ */
+public class ClusterProgress {
+
+   private static Log log = LogFactory.getLog(ClusterProgress.class);
+
+   /**
+    * The key of the rows in the master state.
+    */
+   public static final String PROGRESS = "PROGRESS";
+
+   private String stageName;
+   private int slaveCount;
+   private long stageStartMillis;
+   private final Map<Integer, SlaveProgress> slaves = new TreeMap<Integer, SlaveProgress>();
+   private final List<Row> rows = new ArrayList<Row>();
+   private long lastRowMillis;
+
+   /**
+    * Discards the progress of the previous stage.
+    */
+   public synchronized void stageStarted(String stageName, int slaveCount) {
+      this.stageName = stageName;
+      this.slaveCount = slaveCount;
+      this.stageStartMillis = System.currentTimeMillis();
+      this.lastRowMillis = stageStartMillis;
+      slaves.clear();
+      rows.clear();
+   }
+
+   public synchronized void progressReceived(int slaveIndex, IntervalStats progress) {
+      SlaveProgress slave = slaves.get(slaveIndex);
+      if (slave == null) {
+         slave = new SlaveProgress();
+         slaves.put(slaveIndex, slave);
+      }
+      slave.add(progress);
+      long now = System.currentTimeMillis();
+      int pending = 0;
+      long period = 0;
+      for (SlaveProgress s : slaves.values()) {
+         if (s.pendingReports > 0) {
+            pending++;
+            period = Math.max(period, s.lastReport.getDurationMillis());
+         }
+      }
+      if (pending >= slaveCount || now - lastRowMillis > 2 * period) {
+         completeRow(now);
+      }
+   }
+
+   /**
+    * Completes the last row with the reports received so far.
+    *
+    * @return the rows of the stage, empty if no slave has reported any progress
+    */
+   public synchronized List<Row> stageFinished() {
+      boolean pending = false;
+      for (SlaveProgress s : slaves.values()) {
+         pending |= s.pendingReports > 0;
+      }
+      if (pending) {
+         completeRow(System.currentTimeMillis());
+      }
+      return new ArrayList<Row>(rows);
+   }
+
+   public synchronized List<Row> getRows() {
+      return new ArrayList<Row>(rows);
+   }
+
+   private void completeRow(long now) {
+      int reporting = 0;
+      double throughput = 0;
+      long ops = 0;
+      long failures = 0;
+      long readP99 = 0;
+      long readMax = 0;
+      long writeP99 = 0;
+      long writeMax = 0;
+      for (SlaveProgress s : slaves.values()) {
+         if (s.pendingReports > 0) {
+            reporting++;
+            throughput += s.pendingOps * 1000.0 / Math.max(s.pendingMillis, 1);
+            readP99 = Math.max(readP99, s.pendingReadP99);
+            readMax = Math.max(readMax, s.pendingReadMax);
+            writeP99 = Math.max(writeP99, s.pendingWriteP99);
+            writeMax = Math.max(writeMax, s.pendingWriteMax);
+            s.clearPending();
+         }
+         ops += s.totalOps;
+         failures += s.totalFailures;
+      }
+      Row row = new Row(now, now - stageStartMillis, stageName, reporting, slaveCount, throughput, ops, failures,
+                        readP99, readMax, writeP99, writeMax);
+      rows.add(row);
+      lastRowMillis = now;
+      log.info("Progress: " + row);
+   }
+
+   /**
+    * @return the state of the running stage, as JSON
+    */
+   public synchronized String toJson() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("{\"stage\":").append(stageName == null ? "null" : "\"" + stageName + "\"");
+      sb.append(",\"slaveCount\":").append(slaveCount);
+      sb.append(",\"stageStart\":").append(stageStartMillis);
+      sb.append(",\"slaves\":{");
+      boolean first = true;
+      for (Map.Entry<Integer, SlaveProgress> e : slaves.entrySet()) {
+         if (!first) sb.append(',');
+         first = false;
+         SlaveProgress s = e.getValue();
+         sb.append('"').append(e.getKey()).append("\":{\"ops\":").append(s.totalOps)
+               .append(",\"failures\":").append(s.totalFailures)
+               .append(",\"lastReport\":").append(s.lastReport.getTimestamp() + s.lastReport.getDurationMillis())
+               .append(",\"throughput\":").append(s.lastReport.getThroughput()).append('}');
+      }
+      sb.append("},\"rows\":[");
+      for (int i = 0; i < rows.size(); i++) {
+         if (i > 0) sb.append(',');
+         rows.get(i).appendJson(sb);
+      }
+      return sb.append("]}").toString();
+   }
+
+   private static class SlaveProgress {
+      private IntervalStats lastReport;
+      private long totalOps;
+      private long totalFailures;
+      // reports received since the last row
+      private int pendingReports;
+      private long pendingOps;
+      private long pendingMillis;
+      private long pendingReadP99;
+      private long pendingReadMax;
+      private long pendingWriteP99;
+      private long pendingWriteMax;
+
+      private void add(IntervalStats progress) {
+         lastReport = progress;
+         long ops = progress.getReads() + progress.getWrites();
+         totalOps += ops;
+         totalFailures += progress.getFailures();
+         pendingReports++;
+         pendingOps += ops;
+         pendingMillis += progress.getDurationMillis();
+         pendingReadP99 = Math.max(pendingReadP99, progress.getReadP99());
+         pendingReadMax = Math.max(pendingReadMax, progress.getReadMax());
+         pendingWriteP99 = Math.max(pendingWriteP99, progress.getWriteP99());
+         pendingWriteMax = Math.max(pendingWriteMax, progress.getWriteMax());
+      }
+
+      private void clearPending() {
+         pendingReports = 0;
+         pendingOps = 0;
+         pendingMillis = 0;
+         pendingReadP99 = 0;
+         pendingReadMax = 0;
+         pendingWriteP99 = 0;
+         pendingWriteMax = 0;
+      }
+   }
+
+   /**
+    * Cluster-wide progress at one point of a stage. The throughput is the sum of the slaves' throughputs since their
+    * previous reports, the latencies (in nanoseconds) are the maximum over the slaves, the operation and failure counts
+    * are totals since the start of the stage.
+    */
+   public static class Row implements Serializable {
+
+      private static final long serialVersionUID = 3528907349866238601L;
+
+      private final long timestamp;
+      private final long elapsedMillis;
+      private final String stage;
+      private final int slavesReporting;
+      private final int slaveCount;
+      private final double throughput;
+      private final long ops;
+      private final long failures;
+      private final long readP99;
+      private final long readMax;
+      private final long writeP99;
+      private final long writeMax;
+
+      public Row(long timestamp, long elapsedMillis, String stage, int slavesReporting, int slaveCount,
+                 double throughput, long ops, long failures, long readP99, long readMax, long writeP99, long writeMax) {
+         this.timestamp = timestamp;
+         this.elapsedMillis = elapsedMillis;
+         this.stage = stage;
+         this.slavesReporting = slavesReporting;
+         this.slaveCount = slaveCount;
+         this.throughput = throughput;
+         this.ops = ops;
+         this.failures = failures;
+         this.readP99 = readP99;
+         this.readMax = readMax;
+         this.writeP99 = writeP99;
+         this.writeMax = writeMax;
+      }
+
+      public long getTimestamp() {
+         return timestamp;
+      }
+
+      public long getElapsedMillis() {
+         return elapsedMillis;
+      }
+
+      public String getStage() {
+         return stage;
+      }
+
+      public int getSlavesReporting() {
+         return slavesReporting;
+      }
+
+      public int getSlaveCount() {
+         return slaveCount;
+      }
+
+      public double getThroughput() {
+         return throughput;
+      }
+
+      public long getOps() {
+         return ops;
+      }
+
+      public long getFailures() {
+         return failures;
+      }
+
+      public long getReadP99() {
+         return readP99;
+      }
+
+      public long getReadMax() {
+         return readMax;
+      }
+
+      public long getWriteP99() {
+         return writeP99;
+      }
+
+      public long getWriteMax() {
+         return writeMax;
+      }
+
+      private void appendJson(StringBuilder sb) {
+         sb.append("{\"timestamp\":").append(timestamp)
+               .append(",\"elapsedMillis\":").append(elapsedMillis)
+               .append(",\"slavesReporting\":").append(slavesReporting)
+               .append(",\"throughput\":").append(throughput)
+               .append(",\"ops\":").append(ops)
+               .append(",\"failures\":").append(failures)
+               .append(",\"readP99\":").append(readP99)
+               .append(",\"readMax\":").append(readMax)
+               .append(",\"writeP99\":").append(writeP99)
+               .append(",\"writeMax\":").append(writeMax).append('}');
+      }
+
+      @Override
+      public String toString() {
+         return stage + " after " + (elapsedMillis / 1000) + "s: " + slavesReporting + "/" + slaveCount +
+               " slaves reporting, " + Math.round(throughput) + " ops/sec, " + ops + " ops, " + failures +
+               " failures, GET p99/max " + readP99 / 1000 + "/" + readMax / 1000 + " us, PUT p99/max " +
+               writeP99 / 1000 + "/" + writeMax / 1000 + " us";
+      }
+   }
+}
@@ -13,6 +13,22 @@ import java.util.List;
  */
 public interface DistStage extends Stage, Serializable {
 
+   /**
+    * After un-marshalling on the slave and before {@link #initOnSlave(org.radargun.state.SlaveState)}, sets the index
+    * of the slave: the master sends the same stage to all the slaves. A slave keeps its index for the whole benchmark,
+    * even when other slaves leave, so the indexes of the slaves running a stage may have gaps.
+    */
+   void setSlaveIndex(int slaveIndex);
+
+   int getSlaveIndex();
+
+   /**
+    * Set by the master before the stage is sent to the slaves.
+    *
+    * @param activeSlaveIndexes indexes of the slaves running the stage, in ascending order
+    */
+   void setActiveSlaveIndexes(List<Integer> activeSlaveIndexes);
+
    /**
     * After un-marshalling on the slave, this method will be called to setUp the stage with slave's state.
     */
@@ -29,9 +45,9 @@ public interface DistStage extends Stage, Serializable {
    DistStageAck executeOnSlave();
 
    /**
-    * Called on master. Master state should not be passed to the slaves.
+    * Called on master, once for all the slaves of the stage. Master state should not be passed to the slaves.
     */
-   void initOnMaster(MasterState masterState, int slaveIndex);
+   void initOnMaster(MasterState masterState);
 
    /**
     * After all slaves replied through {@link #executeOnSlave()}, this method will be called on the master.
@@ -48,4 +64,10 @@ public interface DistStage extends Stage, Serializable {
    boolean isExitBenchmarkOnSlaveFailure();
 
    void setExitBenchmarkOnSlaveFailure(boolean exitOnFailure);
+
+   /**
+    * @return how long the slaves may run this stage; the slaves that haven't finished it by then are considered
+    *         failed. Non-positive value means no limit.
+    */
+   long getStageTimeoutMillis();
 }
@@ -0,0 +1,16 @@
+package org.radargun;
+
+/**
+ * A {@link DistStage} that may be sent to the slaves several times in a row, each time with parameters computed on
+ * the master from the results of the previous iteration (e.g. searching for a maximum sustainable throughput). The
+ * same master-side instance receives all the acks, so it can keep the state of the iterations.
+ */
+public interface IterativeDistStage extends DistStage {
+
+   /**
+    * Called on master after {@link #processAckOnMaster(java.util.List, org.radargun.state.MasterState)} returned true.
+    *
+    * @return true if the stage should be run on the slaves again
+    */
+   boolean hasNextIteration();
+}
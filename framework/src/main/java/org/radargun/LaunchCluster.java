@@ -0,0 +1,164 @@
+package org.radargun;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.radargun.config.ConfigParser;
+import org.radargun.config.MasterConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a distributed benchmark on a single box: the master and as many slaves as the benchmark needs, all connected
+ * over the loopback interface, which is handy when writing stages and plugins.
+ * <p/>
+ * By default the slaves are threads of this JVM. They still get their products from their own class loaders (see
+ * {@link org.radargun.stages.AbstractDistStage#createInstance(String)}), so e.g. StartClusterStage forms a real
+ * cluster, but the slaves share the CPUs, heap and GC. With -fork each slave is a JVM of its own, started with the
+ * same classpath and JVM options as this one, which gives numbers closer to a real deployment; -nodes packs that many
+ * slaves in each forked JVM (see {@link Slave}). Stages that kill the JVM need -fork.
+ *
+ * @see LaunchMaster
+ */
+public class LaunchCluster {
+
+   private static Log log = LogFactory.getLog(LaunchCluster.class);
+
+   private static final String LOOPBACK = "127.0.0.1";
+
+   public static void main(String[] args) throws Exception {
+      String config = null;
+      boolean fork = false;
+      int nodesPerJvm = 1;
+      for (int i = 0; i < args.length; i++) {
+         if (args[i].equals("-config") && i < args.length - 1) {
+            config = args[++i];
+         } else if (args[i].equals("-nodes") && i < args.length - 1) {
+            nodesPerJvm = Integer.parseInt(args[++i]);
+         } else if (args[i].equals("-fork")) {
+            fork = true;
+         } else {
+            printUsageAndExit();
+         }
+      }
+      if (config == null) {
+         printUsageAndExit();
+      }
+      // the slaves' products cluster over the loopback interface, unless told otherwise
+      System.setProperty("java.net.preferIPv4Stack", "true");
+      setIfAbsent("bind.address", LOOPBACK);
+      setIfAbsent("jgroups.bind_addr", LOOPBACK);
+
+      launch(ConfigParser.getConfigParser().parseConfig(config), fork, nodesPerJvm);
+   }
+
+   /**
+    * Runs the benchmarks of the configuration, returns once the master is done (if it doesn't exit the JVM).
+    */
+   static void launch(MasterConfig masterConfig, boolean fork, int nodesPerJvm) throws Exception {
+      final Master master = new Master(masterConfig);
+      Thread masterThread = new Thread("Master") {
+         @Override
+         public void run() {
+            try {
+               master.start();
+            } catch (Throwable e) {
+               log.error("Master failed", e);
+               ShutDownHook.exit(1);
+            }
+         }
+      };
+      masterThread.start();
+      master.awaitListening();
+
+      String masterHost = masterConfig.getHost() == null ? LOOPBACK : masterConfig.getHost();
+      log.info("Starting " + masterConfig.getSlaveCount() + (fork ? " forked" : " in-JVM") + " slaves");
+      if (fork) {
+         forkSlaves(masterConfig.getSlaveCount(), nodesPerJvm, masterHost, masterConfig.getPort());
+      } else {
+         Slave.startNodes(masterHost, masterConfig.getPort(), masterConfig.getSlaveCount());
+      }
+      // the master exits the JVM once the benchmark is over
+      masterThread.join();
+   }
+
+   private static void forkSlaves(int slaveCount, int nodesPerJvm, String masterHost, int masterPort) throws IOException {
+      final List<Process> processes = new ArrayList<Process>();
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         @Override
+         public void run() {
+            for (Process process : processes) {
+               process.destroy();
+            }
+         }
+      });
+      String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      for (int i = 0; i * nodesPerJvm < slaveCount; i++) {
+         List<String> command = new ArrayList<String>();
+         command.add(java);
+         command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+         command.add("-Djava.net.preferIPv4Stack=true");
+         command.add("-Dbind.address=" + System.getProperty("bind.address"));
+         command.add("-Djgroups.bind_addr=" + System.getProperty("jgroups.bind_addr"));
+         command.add("-Dlog4j.file.prefix=slave" + i);
+         command.add("-classpath");
+         command.add(System.getProperty("java.class.path"));
+         command.add(Slave.class.getName());
+         command.add("-master");
+         command.add(masterHost + ":" + masterPort);
+         command.add("-nodes");
+         command.add(String.valueOf(Math.min(nodesPerJvm, slaveCount - i * nodesPerJvm)));
+         Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+         processes.add(process);
+         File out = new File("stdout_slave_" + i + ".out");
+         copyInBackground(process.getInputStream(), new FileOutputStream(out), "Slave-" + i + "-output");
+         log.info("Started slave JVM " + i + ", its output goes to " + out.getAbsolutePath());
+      }
+   }
+
+   private static void copyInBackground(final InputStream in, final OutputStream out, String threadName) {
+      Thread copier = new Thread(threadName) {
+         @Override
+         public void run() {
+            byte[] buffer = new byte[8192];
+            try {
+               int read;
+               while ((read = in.read(buffer)) >= 0) {
+                  out.write(buffer, 0, read);
+                  out.flush();
+               }
+            } catch (IOException e) {
+               log.trace("Slave output closed", e);
+            } finally {
+               try {
+                  out.close();
+               } catch (IOException e) {
+                  log.warn(e);
+               }
+            }
+         }
+      };
+      copier.setDaemon(true);
+      copier.start();
+   }
+
+   private static void setIfAbsent(String property, String value) {
+      if (System.getProperty(property) == null) {
+         System.setProperty(property, value);
+      }
+   }
+
+   private static void printUsageAndExit() {
+      System.out.println("Usage: cluster.sh -config <config-file.xml> [-fork [-nodes <count>]]");
+      System.out.println("       -config : xml file containing benchmark's configuration");
+      System.out.println("       -fork   : run the slaves in JVMs of their own instead of in the master's JVM");
+      System.out.println("       -nodes  : number of slaves in each forked JVM. Defaults to 1");
+      ShutDownHook.exit(1);
+   }
+}
@@ -3,7 +3,11 @@ package org.radargun;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.radargun.config.MasterConfig;
+import org.radargun.protocol.MessageChannel;
+import org.radargun.stages.DefaultDistStageAck;
 import org.radargun.state.MasterState;
+import org.radargun.stressors.IntervalStats;
+import org.radargun.utils.Utils;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -14,13 +18,23 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * This is the master that will coordinate the {@link Slave}s in order to run the benchmark.
+ * <p/>
+ * The cluster is elastic: once the initial slaves have registered, more slaves may connect at any time, and slaves
+ * that disconnect or fail are dropped from the cluster while the benchmark goes on. Each slave gets an index when it
+ * joins, in the order they join, and keeps it for the whole benchmark: the index of a slave that left isn't reused, as
+ * the cache wrappers, the keys and the results of the other slaves are tied to their indexes. Each stage runs on the
+ * first activeSlaveCount live slaves by index (on all of them if the stage runs on all slaves); the stage gets the
+ * indexes of all its slaves, see {@link org.radargun.stages.AbstractDistStage#getSlavePosition()}. A stage waits up to
+ * the slave timeout for enough slaves to join.
  *
  * @author Mircea.Markus@jboss.com
  */
@@ -29,20 +43,59 @@ public class Master {
    private static Log log = LogFactory.getLog(Master.class);
    public static final int DEFAULT_PORT = 2103;
 
+   /**
+    * How long before the start of the load the slaves waiting in the StartBarrier are notified.
+    */
+   private static final long START_DELAY_MILLIS = 200;
+
+   /**
+    * Number of round trips used to estimate the clock offset of each slave. The one with the shortest round trip is
+    * used, as its timestamps are the least skewed by network and scheduling delays.
+    */
+   private static final int CLOCK_PROBES = 8;
+
+   /**
+    * How often the master checks that the slaves are alive and the stage is within its timeout.
+    */
+   private static final long CHECK_INTERVAL_MILLIS = 1000;
+
    MasterConfig masterConfig;
 
    private ServerSocketChannel serverSocketChannel;
+   // all the slaves that have joined, by their index, and the ones that have left since
    private List<SocketChannel> slaves = new ArrayList<SocketChannel>();
+   private Map<SocketChannel, Integer> slaveIndexes = new HashMap<SocketChannel, Integer>();
+   private Set<SocketChannel> deadSlaves = new HashSet<SocketChannel>();
 
-   private Map<SocketChannel, ByteBuffer> writeBufferMap = new HashMap<SocketChannel, ByteBuffer>();
-   private Map<SocketChannel, ByteBuffer> readBufferMap = new HashMap<SocketChannel, ByteBuffer>();
+   private Map<SocketChannel, MessageChannel> messageChannels = new HashMap<SocketChannel, MessageChannel>();
    private List<DistStageAck> responses = new ArrayList<DistStageAck>();
    private Selector communicationSelector;
-   private Selector discoverySelector;
-   private Map<SocketChannel, Integer> slave2Index = new HashMap<SocketChannel, Integer>();
+   // the slaves of the current stage
+   private List<SocketChannel> stageSlaves = new ArrayList<SocketChannel>();
+   private int stageSize;
+   // the next stage, waiting for enough slaves to join
+   private DistStage pendingStage;
+   private long pendingSince;
+   private boolean pendingLogged;
+   private Map<SocketChannel, Long> clockOffsets = new HashMap<SocketChannel, Long>();
+   // the slaves that have connected, but whose clock offset is still being estimated
+   private Map<SocketChannel, ClockProbe> joiningSlaves = new HashMap<SocketChannel, ClockProbe>();
+   private boolean benchmarkStarted;
+   private Set<SocketChannel> stageRecipients = new HashSet<SocketChannel>();
+   // start barrier of the current stage: the slaves that are ready, and the slaves that finished the stage, which
+   // won't join the barrier any more
+   private Set<SocketChannel> readySlaves = new HashSet<SocketChannel>();
+   private Set<SocketChannel> finishedSlaves = new HashSet<SocketChannel>();
+   // failure detection: when each slave was last heard from, and the slaves which have been silent for a few
+   // heartbeats; the slaves which have been silent for too long or didn't finish a stage in time are dropped
+   private Map<SocketChannel, Long> lastHeard = new HashMap<SocketChannel, Long>();
+   private Set<SocketChannel> suspectedSlaves = new HashSet<SocketChannel>();
+   private long stageDeadline;
+   private final CountDownLatch listening = new CountDownLatch(1);
    private MasterState state;
+   private ClusterProgress progress = new ClusterProgress();
+   private ProgressServer progressServer;
    int processedSlaves = 0;
-   private static final int DEFAULT_READ_BUFF_CAPACITY = 1024;
 
    public Master(MasterConfig masterConfig) {
       this.masterConfig = masterConfig;
@@ -58,57 +111,138 @@ public class Master {
    public void start() throws Exception {
       try {
          startServerSocket();
-         runDiscovery();
-         prepareNextStage();
+         if (masterConfig.getProgressPort() > 0) {
+            progressServer = new ProgressServer(masterConfig.getHost(), masterConfig.getProgressPort(), progress);
+         }
+         serverSocketChannel.register(communicationSelector, SelectionKey.OP_ACCEPT);
+         startBenchmarkOrPendingStage();
          startCommunicationWithSlaves();
       } finally {
          releaseResources();
       }
    }
 
+   /**
+    * Waits until the slaves can connect, for the slaves started along with the master by {@link LaunchCluster}.
+    */
+   void awaitListening() throws InterruptedException {
+      listening.await();
+   }
+
+   /**
+    * Starts the benchmark once the initial slaves have joined; afterwards, the slaves joining may let a pending stage
+    * start.
+    */
+   private void startBenchmarkOrPendingStage() throws Exception {
+      if (benchmarkStarted) {
+         startPendingStage();
+      } else if (liveSlaveCount() < masterConfig.getInitialSlaveCount()) {
+         log.info("Awaiting registration from " + (masterConfig.getInitialSlaveCount() - liveSlaveCount()) + " slaves.");
+      } else {
+         log.info("Connection established from " + liveSlaveCount() + " slaves.");
+         benchmarkStarted = true;
+         prepareNextStage();
+      }
+   }
+
    private void prepareNextStage() throws Exception {
       DistStage toExecute = state.getNextDistStageToProcess();
       if (toExecute == null) {
          releaseResourcesAndExit();
       } else {
-         runDistStage(toExecute, toExecute.getActiveSlaveCount());
+         pendingStage = toExecute;
+         pendingSince = System.currentTimeMillis();
+         pendingLogged = false;
+         startPendingStage();
+      }
+   }
+
+   private void startPendingStage() throws Exception {
+      if (pendingStage == null) {
+         return;
+      }
+      int noSlaves = pendingStage.isRunOnAllSlaves() ? liveSlaveCount() : pendingStage.getActiveSlaveCount();
+      if (liveSlaveCount() < noSlaves) {
+         long waited = System.currentTimeMillis() - pendingSince;
+         if (waited < masterConfig.getSlaveTimeoutMillis()) {
+            if (!pendingLogged) {
+               pendingLogged = true;
+               log.info("'" + pendingStage.getClass().getSimpleName() + "' needs " + noSlaves + " slaves, waiting for "
+                              + (noSlaves - liveSlaveCount()) + " more to join");
+            }
+            return;
+         }
+         log.error("Only " + liveSlaveCount() + " of the " + noSlaves + " slaves needed by '"
+                         + pendingStage.getClass().getSimpleName() + "' have joined");
       }
+      DistStage toExecute = pendingStage;
+      pendingStage = null;
+      runDistStage(toExecute, noSlaves);
    }
 
+   /**
+    * The stage is serialized once, into a buffer shared by all the slaves' channels; each slave gets its own index in a
+    * small header, see {@link MessageChannel#STAGE}.
+    */
    private void runDistStage(DistStage currentStage, int noSlaves) throws Exception {
-      writeBufferMap.clear();
-      DistStage toSerialize;
-      for (int i = 0; i < noSlaves; i++) {
-         SocketChannel slave = slaves.get(i);
-         slave.configureBlocking(false);
-         slave.register(communicationSelector, SelectionKey.OP_WRITE);
-         toSerialize = currentStage.clone();
-         toSerialize.initOnMaster(state, i);
-         if (i == 0) {//only log this once
-            if (log.isDebugEnabled())
-               log.debug("Starting '" + toSerialize.getClass().getSimpleName() + "' on " + toSerialize.getActiveSlaveCount() + " slave nodes. Details: " + toSerialize);
-            else
-               log.info("Starting '" + toSerialize.getClass().getSimpleName() + "' on " + toSerialize.getActiveSlaveCount() + " slave nodes.");
+      stageSlaves.clear();
+      List<Integer> stageSlaveIndexes = new ArrayList<Integer>();
+      for (SocketChannel slave : slaves) {
+         if (stageSlaves.size() < noSlaves && !deadSlaves.contains(slave)) {
+            stageSlaves.add(slave);
+            stageSlaveIndexes.add(slaveIndexes.get(slave));
          }
-         byte[] bytes = SerializationHelper.prepareForSerialization(toSerialize);
-         writeBufferMap.put(slave, ByteBuffer.wrap(bytes));
       }
+      DistStage toSerialize = currentStage.clone();
+      toSerialize.initOnMaster(state);
+      toSerialize.setActiveSlavesCount(noSlaves);
+      toSerialize.setActiveSlaveIndexes(stageSlaveIndexes);
+      if (log.isDebugEnabled())
+         log.debug("Starting '" + toSerialize.getClass().getSimpleName() + "' on " + toSerialize.getActiveSlaveCount() + " slave nodes. Details: " + toSerialize);
+      else
+         log.info("Starting '" + toSerialize.getClass().getSimpleName() + "' on " + toSerialize.getActiveSlaveCount() + " slave nodes.");
+      ByteBuffer body = MessageChannel.share(SerializationHelper.encode(toSerialize));
+      progress.stageStarted(currentStage.getClass().getSimpleName(), noSlaves);
+      readySlaves.clear();
+      finishedSlaves.clear();
+      responses.clear();
+      processedSlaves = 0;
+      stageSize = noSlaves;
+      long now = System.currentTimeMillis();
+      stageDeadline = currentStage.getStageTimeoutMillis() > 0 ? now + currentStage.getStageTimeoutMillis() : Long.MAX_VALUE;
+      for (SocketChannel slave : stageSlaves) {
+         // the master couldn't listen while running the master stages
+         lastHeard.put(slave, now);
+         MessageChannel messageChannel = messageChannels.get(slave);
+         slave.keyFor(communicationSelector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+         stageRecipients.add(slave);
+         ByteBuffer header = ByteBuffer.allocate(8);
+         header.putInt(slaveIndexes.get(slave)).putInt(noSlaves);
+         messageChannel.send(MessageChannel.STAGE, header.array(), body);
+      }
+      for (int i = stageSlaves.size(); i < noSlaves; i++) {
+         // the index the missing slave would get if it joined now
+         int missingIndex = slaves.size() + i - stageSlaves.size();
+         DefaultDistStageAck ack = new DefaultDistStageAck(missingIndex, null);
+         ack.setError(true);
+         ack.setErrorMessage("There was no slave " + missingIndex + " to run the stage");
+         responses.add(ack);
+      }
+      checkStageFinished();
    }
 
    private void releaseResources() {
-      try {
-         discoverySelector.close();
-      } catch (Throwable e) {
-         log.warn(e);
+      if (progressServer != null) {
+         progressServer.stop();
       }
       try {
          communicationSelector.close();
       } catch (Throwable e) {
          log.warn(e);
       }
-      for (SocketChannel sc : slaves) {
+      for (SocketChannel sc : messageChannels.keySet()) {
          try {
-            sc.socket().close();
+            messageChannels.get(sc).close();
          } catch (Throwable e) {
             log.warn(e);
          }
@@ -121,35 +255,90 @@ public class Master {
       }
    }
 
-   private void runDiscovery() throws IOException {
-      discoverySelector = Selector.open();
-      serverSocketChannel.register(discoverySelector, SelectionKey.OP_ACCEPT);
-      while (slaves.size() < masterConfig.getSlaveCount()) {
-         log.info("Awaiting registration from " + (masterConfig.getSlaveCount() - slaves.size()) + " slaves.");
-         discoverySelector.select();
-         Set<SelectionKey> keySet = discoverySelector.selectedKeys();
-         Iterator<SelectionKey> it = keySet.iterator();
-         while (it.hasNext()) {
-            SelectionKey selectionKey = it.next();
-            it.remove();
-            if (!selectionKey.isValid()) {
-               continue;
-            }
-            ServerSocketChannel srvSocketChannel = (ServerSocketChannel) selectionKey.channel();
-            SocketChannel socketChannel = srvSocketChannel.accept();
-            slaves.add(socketChannel);
-            slave2Index.put(socketChannel, (slaves.size() - 1));
-            this.readBufferMap.put(socketChannel, ByteBuffer.allocate(DEFAULT_READ_BUFF_CAPACITY));
-            if (log.isTraceEnabled())
-               log.trace("Added new slave connection from: " + socketChannel.socket().getInetAddress());
-         }
+   /**
+    * Accepts a slave and starts estimating the offset of its clock in the NTP way: the master sends its time, the slave
+    * replies with the times it received the probe and sent the reply, see {@link #clockReplyReceived}. The slave joins
+    * the cluster once all the probes are answered.
+    */
+   private void slaveJoined() throws Exception {
+      SocketChannel slave = serverSocketChannel.accept();
+      if (slave == null) {
+         return;
+      }
+      slave.configureBlocking(false);
+      MessageChannel messageChannel = new MessageChannel(slave);
+      messageChannels.put(slave, messageChannel);
+      slave.register(communicationSelector, SelectionKey.OP_READ, messageChannel);
+      joiningSlaves.put(slave, new ClockProbe(System.currentTimeMillis() + masterConfig.getSlaveTimeoutMillis()));
+      if (log.isTraceEnabled())
+         log.trace("Added new slave connection from: " + slave.socket().getInetAddress());
+      sendClockProbe(slave);
+   }
+
+   private void sendClockProbe(SocketChannel slave) throws IOException {
+      MessageChannel messageChannel = messageChannels.get(slave);
+      messageChannel.send(MessageChannel.CLOCK_PROBE, SerializationHelper.encode(new long[]{System.currentTimeMillis()}));
+      // written right away, so that the time in the probe isn't skewed by the select loop
+      if (!messageChannel.flush()) {
+         slave.keyFor(communicationSelector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      }
+   }
+
+   /**
+    * The offsets of the slaves of each stage are put in the {@link MasterState}, to convert the timestamps reported by
+    * the slaves to the master's clock.
+    */
+   private void clockReplyReceived(SocketChannel slave, long[] times) throws Exception {
+      long replyReceived = System.currentTimeMillis();
+      ClockProbe probe = joiningSlaves.get(slave);
+      // probeSent, probeReceived, replySent
+      long roundTrip = (replyReceived - times[0]) - (times[2] - times[1]);
+      if (roundTrip < probe.bestRoundTrip) {
+         probe.bestRoundTrip = roundTrip;
+         probe.bestOffset = ((times[0] - times[1]) + (replyReceived - times[2])) / 2;
+      }
+      if (++probe.replies < CLOCK_PROBES) {
+         sendClockProbe(slave);
+         return;
       }
-      log.info("Connection established from " + slaves.size() + " slaves.");
+      joiningSlaves.remove(slave);
+      clockOffsets.put(slave, probe.bestOffset);
+      log.info("Clock offset of slave " + name(slave) + " is " + probe.bestOffset + " ms (round trip " + probe.bestRoundTrip + " ms)");
+      lastHeard.put(slave, System.currentTimeMillis());
+      int slaveIndex = slaves.size();
+      slaves.add(slave);
+      slaveIndexes.put(slave, slaveIndex);
+      state.setClockOffset(slaveIndex, probe.bestOffset);
+      log.info("Slave " + name(slave) + " joined the cluster, which has " + liveSlaveCount() + " slaves now");
+      startBenchmarkOrPendingStage();
+   }
+
+   /**
+    * Drops a slave that couldn't join the cluster, e.g. because it didn't answer the clock probes in time.
+    */
+   private void joinFailed(SocketChannel slave, String reason) throws IOException {
+      log.warn("Slave " + name(slave) + " couldn't join the cluster: " + reason);
+      joiningSlaves.remove(slave);
+      slave.keyFor(communicationSelector).cancel();
+      messageChannels.remove(slave).close();
+   }
+
+   /**
+    * @return the slave's index, or its address if it hasn't joined the cluster yet
+    */
+   private String name(SocketChannel slave) {
+      Integer index = slaveIndexes.get(slave);
+      return index != null ? String.valueOf(index) : "at " + slave.socket().getRemoteSocketAddress();
+   }
+
+   private int liveSlaveCount() {
+      return slaves.size() - deadSlaves.size();
    }
 
    private void startCommunicationWithSlaves() throws Exception {
+      long nextCheck = System.currentTimeMillis() + CHECK_INTERVAL_MILLIS;
       while (true) {
-         communicationSelector.select();
+         communicationSelector.select(CHECK_INTERVAL_MILLIS);
          Set<SelectionKey> keys = communicationSelector.selectedKeys();
          if (keys.size() > 0) {
             Iterator<SelectionKey> keysIt = keys.iterator();
@@ -159,8 +348,10 @@ public class Master {
                if (!key.isValid()) {
                   continue;
                }
-               if (key.isWritable()) {
-                  sendStage(key);
+               if (key.isAcceptable()) {
+                  slaveJoined();
+               } else if (key.isWritable()) {
+                  writeMessages(key);
                } else if (key.isReadable()) {
                   readStageAck(key);
                } else {
@@ -168,44 +359,152 @@ public class Master {
                }
             }
          }
+         if (System.currentTimeMillis() >= nextCheck) {
+            checkJoiningSlaves();
+            checkSlaves();
+            startPendingStage();
+            nextCheck = System.currentTimeMillis() + CHECK_INTERVAL_MILLIS;
+         }
       }
    }
 
+   private void checkJoiningSlaves() throws IOException {
+      long now = System.currentTimeMillis();
+      for (SocketChannel slave : new ArrayList<SocketChannel>(joiningSlaves.keySet())) {
+         if (now > joiningSlaves.get(slave).deadline) {
+            joinFailed(slave, "it hasn't answered the clock probes within "
+                  + Utils.getMillisDurationString(masterConfig.getSlaveTimeoutMillis()));
+         }
+      }
+   }
+
+   /**
+    * Fails the slaves of the current stage that have been silent for longer than the slave timeout, or haven't
+    * finished the stage within its timeout.
+    */
+   private void checkSlaves() throws Exception {
+      long now = System.currentTimeMillis();
+      for (SocketChannel slave : stageSlaves) {
+         if (deadSlaves.contains(slave) || finishedSlaves.contains(slave)) {
+            continue;
+         }
+         long silentMillis = now - lastHeard.get(slave);
+         if (silentMillis > masterConfig.getSlaveTimeoutMillis()) {
+            slaveFailed(slave, "Slave " + name(slave) + " hasn't responded for " + Utils.getMillisDurationString(silentMillis));
+            // the failure may have finished the stage and started the next one
+            return;
+         } else if (now > stageDeadline) {
+            slaveFailed(slave, "Slave " + name(slave) + " hasn't finished " + state.getCurrentDistStage().getClass().getSimpleName()
+                  + " within " + Utils.getMillisDurationString(state.getCurrentDistStage().getStageTimeoutMillis()));
+            return;
+         } else if (silentMillis > 3 * Slave.HEARTBEAT_INTERVAL_MILLIS && suspectedSlaves.add(slave)) {
+            log.warn("Slave " + name(slave) + " is suspected, it hasn't responded for " + Utils.getMillisDurationString(silentMillis));
+         }
+      }
+   }
+
+   /**
+    * Drops the slave from the cluster; its index isn't given to any other slave. If the slave hasn't finished the
+    * current stage, its ack is replaced by an error ack: whether the benchmark continues depends on the stage's
+    * exitBenchmarkOnSlaveFailure, as for any other error.
+    */
+   private void slaveFailed(SocketChannel slave, String reason) throws Exception {
+      deadSlaves.add(slave);
+      stageRecipients.remove(slave);
+      suspectedSlaves.remove(slave);
+      lastHeard.remove(slave);
+      readySlaves.remove(slave);
+      slave.keyFor(communicationSelector).cancel();
+      messageChannels.remove(slave).close();
+      if (!stageSlaves.contains(slave) || finishedSlaves.contains(slave)) {
+         log.warn(reason + ", dropping it from the cluster, which has " + liveSlaveCount() + " slaves now");
+         // the stage may have been waiting for this slave to get ready
+         releaseStartBarrier();
+         return;
+      }
+      log.error(reason + ", dropping it from the cluster, which has " + liveSlaveCount() + " slaves now");
+      DefaultDistStageAck ack = new DefaultDistStageAck(slaveIndexes.get(slave), slave.socket().getInetAddress());
+      ack.setError(true);
+      ack.setErrorMessage(reason);
+      ackReceived(slave, ack);
+      checkStageFinished();
+   }
+
    private void readStageAck(SelectionKey key) throws Exception {
       SocketChannel socketChannel = (SocketChannel) key.channel();
+      MessageChannel messageChannel = (MessageChannel) key.attachment();
 
-      ByteBuffer byteBuffer = readBufferMap.get(socketChannel);
-      int value = socketChannel.read(byteBuffer);
-
-      if (value == -1) {
-         log.warn("Slave stopped! Index: " + slave2Index.get(socketChannel) + ". Remote socket is: " + socketChannel);
-         key.cancel();
-         if (!slaves.remove(socketChannel)) {
-            throw new IllegalStateException("Socket " + socketChannel + " should have been there!");
+      boolean open;
+      try {
+         open = messageChannel.read();
+      } catch (IOException e) {
+         log.trace("Could not read from " + socketChannel, e);
+         open = false;
+      }
+      if (!open) {
+         if (joiningSlaves.containsKey(socketChannel)) {
+            joinFailed(socketChannel, "it closed the connection");
+         } else {
+            slaveFailed(socketChannel, "Slave " + name(socketChannel) + " closed the connection");
          }
-         releaseResourcesAndExit();
-      } else if (byteBuffer.limit() >= 4) {
-         int expectedSize = byteBuffer.getInt(0);
-         if ((expectedSize + 4) > byteBuffer.capacity()) {
-            ByteBuffer replacer = ByteBuffer.allocate(expectedSize + 4);
-            replacer.put(byteBuffer.array());
-            readBufferMap.put(socketChannel, replacer);
+         return;
+      }
+      if (joiningSlaves.containsKey(socketChannel)) {
+         readClockReplies(socketChannel, messageChannel);
+         return;
+      }
+      lastHeard.put(socketChannel, System.currentTimeMillis());
+      if (suspectedSlaves.remove(socketChannel)) {
+         log.info("Slave " + name(socketChannel) + " is responding again");
+      }
+      MessageChannel.Message message;
+      boolean acked = false;
+      while ((message = messageChannel.poll()) != null) {
+         if (message.getType() == MessageChannel.ACK) {
             if (log.isTraceEnabled())
-               log.trace("Expected size(" + expectedSize + ")" + " is > ByteBuffer's capacity(" +
-                     byteBuffer.capacity() + ")" + ".Replacing " + byteBuffer + " with " + replacer);
-            byteBuffer = replacer;
+               log.trace("Received ACK of " + message.getData().length + " bytes from " + socketChannel);
+            ackReceived(socketChannel, (DistStageAck) message.decode());
+            acked = true;
+         } else if (message.getType() == MessageChannel.HEARTBEAT) {
+            // lastHeard is updated for any message
+         } else if (message.getType() == MessageChannel.PROGRESS && stageSlaves.contains(socketChannel)) {
+            progress.progressReceived(slaveIndexes.get(socketChannel), (IntervalStats) message.decode());
+         } else if (message.getType() == MessageChannel.READY) {
+            readySlaves.add(socketChannel);
+            releaseStartBarrier();
+         } else {
+            log.warn("Unexpected " + message + " from slave " + name(socketChannel));
          }
-         if (log.isTraceEnabled())
-            log.trace("Expected size: " + expectedSize + ". byteBuffer.position() == " + byteBuffer.position());
-         if (byteBuffer.position() == expectedSize + 4) {
-            log.trace("Received ACK from " + socketChannel);
-            DistStageAck ack = (DistStageAck) SerializationHelper.deserialize(byteBuffer.array(), 4, expectedSize);
-            byteBuffer.clear();
-            responses.add(ack);
+      }
+
+      if (acked) {
+         checkStageFinished();
+      }
+   }
+
+   private void readClockReplies(SocketChannel slave, MessageChannel messageChannel) throws Exception {
+      MessageChannel.Message message;
+      while (joiningSlaves.containsKey(slave) && (message = messageChannel.poll()) != null) {
+         if (message.getType() == MessageChannel.CLOCK_REPLY) {
+            clockReplyReceived(slave, (long[]) message.decode());
+         } else if (message.getType() != MessageChannel.HEARTBEAT) {
+            joinFailed(slave, "unexpected " + message);
          }
       }
+   }
 
-      if (responses.size() == state.getSlavesCountForCurrentStage()) {
+   private void ackReceived(SocketChannel slave, DistStageAck ack) throws IOException {
+      responses.add(ack);
+      finishedSlaves.add(slave);
+      releaseStartBarrier();
+   }
+
+   private void checkStageFinished() throws Exception {
+      if (responses.size() == stageSize) {
+         List<ClusterProgress.Row> rows = progress.stageFinished();
+         if (!rows.isEmpty()) {
+            state.put(ClusterProgress.PROGRESS, rows);
+         }
          if (!state.distStageFinished(responses)) {
             log.error("Exiting because issues processing current stage: " + state.getCurrentDistStage());
             releaseResourcesAndExit();
@@ -214,27 +513,49 @@ public class Master {
       }
    }
 
+   /**
+    * Sends the start time to the slaves waiting in the {@link StartBarrier}, once all the slaves of the stage are
+    * either ready or done with the stage.
+    */
+   private void releaseStartBarrier() throws IOException {
+      if (readySlaves.isEmpty()) {
+         return;
+      }
+      for (SocketChannel slave : stageSlaves) {
+         if (!readySlaves.contains(slave) && !finishedSlaves.contains(slave)) {
+            return;
+         }
+      }
+      long startMillis = System.currentTimeMillis() + START_DELAY_MILLIS;
+      for (SocketChannel slave : readySlaves) {
+         long[] start = new long[]{startMillis, clockOffsets.get(slave)};
+         messageChannels.get(slave).send(MessageChannel.START, SerializationHelper.encode(start));
+         slave.keyFor(communicationSelector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      }
+      log.info(readySlaves.size() + " slave(s) ready, starting the load in " + START_DELAY_MILLIS + " ms");
+      readySlaves.clear();
+   }
+
    private void releaseResourcesAndExit() {
       releaseResources();
       ShutDownHook.exit(0);
    }
 
-   private void sendStage(SelectionKey key) throws IOException {
-      SocketChannel socketChannel = (SocketChannel) key.channel();
-      ByteBuffer buf = writeBufferMap.get(socketChannel);
-      socketChannel.write(buf);
-      if (buf.remaining() == 0) {
-         log.trace("Finished writing entire buffer");
-         key.interestOps(SelectionKey.OP_READ);
-         processedSlaves++;
-         if (log.isTraceEnabled())
-            log.trace("Current stage successfully transmitted to " + processedSlaves + " slave(s).");
-      }
-      if (processedSlaves == state.getSlavesCountForCurrentStage()) {
+   private void writeMessages(SelectionKey key) throws IOException {
+      MessageChannel messageChannel = (MessageChannel) key.attachment();
+      if (!messageChannel.flush()) {
+         return;
+      }
+      key.interestOps(SelectionKey.OP_READ);
+      if (!stageRecipients.remove(key.channel())) {
+         return;
+      }
+      log.trace("Finished writing the stage");
+      processedSlaves++;
+      if (log.isTraceEnabled())
+         log.trace("Current stage successfully transmitted to " + processedSlaves + " slave(s).");
+      if (processedSlaves == stageSlaves.size()) {
          log.trace("Successfully completed broadcasting stage " + state.getCurrentDistStage());
-         processedSlaves = 0;
-         writeBufferMap.clear();
-         responses.clear();
       }
    }
 
@@ -248,14 +569,18 @@ public class Master {
          address = new InetSocketAddress(masterConfig.getHost(), masterConfig.getPort());
       }
       serverSocketChannel.socket().bind(address);
+      listening.countDown();
       log.info("Master started and listening for connection on: " + address);
-      log.info("Waiting 5 seconds for server socket to open completely");
-      try 
-      {
-      	Thread.sleep(5000);
-      } catch (InterruptedException ex)
-      {
-          // ignore
+   }
+
+   private static class ClockProbe {
+      private final long deadline;
+      private int replies;
+      private long bestRoundTrip = Long.MAX_VALUE;
+      private long bestOffset;
+
+      private ClockProbe(long deadline) {
+         this.deadline = deadline;
       }
    }
 }
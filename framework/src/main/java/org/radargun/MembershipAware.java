@@ -0,0 +1,24 @@
+package org.radargun;
+
+/**
+ * Additional CacheWrapper feature, notifies about changes of the cluster membership. Lets
+ * {@link org.radargun.stages.StartClusterStage} proceed as soon as the cluster is formed; wrappers that don't implement
+ * it are polled with {@link CacheWrapper#getNumMembers()}.
+ */
+public interface MembershipAware {
+
+   /**
+    * Registers a listener invoked after each change of the membership seen by this node.
+    */
+   void addMembershipListener(MembershipListener listener);
+
+   void removeMembershipListener(MembershipListener listener);
+
+   interface MembershipListener {
+
+      /**
+       * @param numMembers the number of members in the new view, as returned by {@link CacheWrapper#getNumMembers()}
+       */
+      void membershipChanged(int numMembers);
+   }
+}
@@ -0,0 +1,15 @@
+package org.radargun;
+
+import org.radargun.stressors.IntervalStats;
+
+/**
+ * Receives the progress of a running stage. On a slave, the listener in the {@link org.radargun.state.SlaveState}
+ * forwards it to the master, which shows a live cluster-wide view.
+ */
+public interface ProgressListener {
+
+   /**
+    * @param progress statistics of the operations executed on this node since the previous call
+    */
+   void progressUpdated(IntervalStats progress);
+}
@@ -0,0 +1,46 @@
+package org.radargun;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Serves the {@link ClusterProgress} of the running stage as JSON on http://&lt;master&gt;:&lt;progressPort&gt;/progress,
+ * so that a long benchmark can be watched (and aborted if it goes wrong) without waiting for its reports.
+ */
+public class ProgressServer {
+
+   private static Log log = LogFactory.getLog(ProgressServer.class);
+
+   private final HttpServer server;
+
+   public ProgressServer(String host, int port, final ClusterProgress progress) throws IOException {
+      InetSocketAddress address = host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+      server = HttpServer.create(address, 0);
+      server.createContext("/progress", new HttpHandler() {
+         public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = progress.toJson().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream os = exchange.getResponseBody();
+            try {
+               os.write(body);
+            } finally {
+               os.close();
+            }
+         }
+      });
+      server.start();
+      log.info("Progress of the benchmark is available at http://" + address.getHostName() + ":" + port + "/progress");
+   }
+
+   public void stop() {
+      server.stop(0);
+   }
+}
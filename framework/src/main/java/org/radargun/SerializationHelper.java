@@ -2,16 +2,17 @@ package org.radargun;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.radargun.protocol.BinaryCodec;
+import org.radargun.protocol.BinaryOutput;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
- * Helper class holding serialization logic.
+ * Helper class holding serialization logic. Messages between the master and the slaves are encoded by
+ * {@link BinaryCodec}, prefixed by their length.
  *
  * @author Mircea.Markus@jboss.com
  */
@@ -19,6 +20,18 @@ public class SerializationHelper {
 
    private static Log log = LogFactory.getLog(SerializationHelper.class);
 
+   /**
+    * Bigger buffers are not kept for the next message.
+    */
+   private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+   private static final ThreadLocal<BinaryOutput> OUTPUT = new ThreadLocal<BinaryOutput>() {
+      @Override
+      protected BinaryOutput initialValue() {
+         return new BinaryOutput();
+      }
+   };
+
    public static byte[] serializeObject(Serializable serializable) throws IOException {
       ByteArrayOutputStream out = new ByteArrayOutputStream();
       ObjectOutputStream oos = new ObjectOutputStream(out);
@@ -86,22 +99,39 @@ public class SerializationHelper {
       }
    }
 
+   /**
+    * Decodes a message written by {@link #encode(Object)}.
+    */
    public static Object deserialize(byte[] serializedData, int startPos, int length) throws IOException {
-      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializedData, startPos, length));
-      try {
-         return ois.readObject();
-      } catch (ClassNotFoundException e) {
-         log.error("Unmarshalling exceptions: ", e);
-         throw new IllegalStateException(e);
-      }
+      return BinaryCodec.decode(serializedData, startPos, length);
    }
 
+   /**
+    * Encodes the stage or the ack with the {@link BinaryCodec}, prefixed by its length as 4 bytes.
+    */
    public static byte[] prepareForSerialization(Serializable towrite) throws IOException {
-      byte[] bytes = serializeObject(towrite);
-      byte[] toSend = new byte[bytes.length + 4];
-      byte[] size = intToByteArray(bytes.length);
-      System.arraycopy(size, 0, toSend, 0, 4);
-      System.arraycopy(bytes, 0, toSend, 4, bytes.length);
+      BinaryOutput output = encode(towrite);
+      byte[] toSend = new byte[output.size() + 4];
+      System.arraycopy(intToByteArray(output.size()), 0, toSend, 0, 4);
+      System.arraycopy(output.getBuffer(), 0, toSend, 4, output.size());
       return toSend;
    }
+
+   /**
+    * Encodes the message with the {@link BinaryCodec} into a buffer reused by the calling thread: the returned output
+    * is only valid until the next call from the same thread.
+    */
+   public static BinaryOutput encode(Object message) throws IOException {
+      BinaryOutput output = OUTPUT.get();
+      if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+         output = new BinaryOutput();
+         OUTPUT.set(output);
+      }
+      output.reset();
+      BinaryCodec.encode(message, output);
+      if (log.isTraceEnabled()) {
+         log.trace("Encoded " + (message == null ? null : message.getClass().getSimpleName()) + " in " + output.size() + " bytes");
+      }
+      return output;
+   }
 }
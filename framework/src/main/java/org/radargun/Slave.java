@@ -2,7 +2,11 @@ package org.radargun;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.radargun.protocol.BinaryCodec;
+import org.radargun.protocol.MessageChannel;
+import org.radargun.stages.DefaultDistStageAck;
 import org.radargun.state.SlaveState;
+import org.radargun.stressors.IntervalStats;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -10,20 +14,26 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * Slave being coordinated by a single {@link Master} object in order to run benchmarks.
+ * <p/>
+ * A JVM may host several slaves (-nodes), each being a node of the benchmarked cluster: every slave connects to the
+ * master on its own and has its own {@link SlaveState}, so its own product class loader, cache wrapper and stressor
+ * threads. This packs many nodes on a few machines, but the nodes share the JVM's heap, so the memory figures (e.g. in
+ * DestroyWrapperStage and the background statistics) are those of the whole JVM.
  *
  * @author Mircea.Markus@jboss.com
  */
@@ -31,12 +41,20 @@ public class Slave {
 
    private static Log log = LogFactory.getLog(Slave.class);
 
+   /**
+    * How often the slave sends a heartbeat to the master, see {@link org.radargun.config.MasterConfig#getSlaveTimeoutMillis()}.
+    */
+   public static final long HEARTBEAT_INTERVAL_MILLIS = 2000;
+   private static final byte[] NO_DATA = new byte[0];
+
    private String masterHost;
    private boolean exitOnMasterShutdown = true;
    private int masterPort;
    private SocketChannel socketChannel;
-   private ByteBuffer byteBuffer = null;
+   private MessageChannel messageChannel;
+   private Selector selector;
    private SlaveState state = new SlaveState();
+   private final MasterStartBarrier startBarrier = new MasterStartBarrier();
 
    ExecutorService es = Executors.newSingleThreadExecutor(new ThreadFactory() {
       public Thread newThread(Runnable r) {
@@ -45,115 +63,229 @@ public class Slave {
          return th;
       }
    });
-   private Future<?> future;
-
    public Slave(String masterHost, int masterPort) {
       this.masterHost = masterHost;
       this.masterPort = masterPort;
-      Runtime.getRuntime().addShutdownHook(new ShutDownHook("Slave process"));
-      int byteBufferSize = 8192;
-      try {
-         byteBufferSize = Integer.valueOf(System.getProperty("slave.bufsize", "8192"));
-      } catch (Exception e) {
-         log.error("Couldn't parse byte buffer size, keeping default", e);
-      }
-      this.byteBuffer = ByteBuffer.allocate(byteBufferSize);
    }
 
    private void start() throws Exception {
+      Runtime.getRuntime().addShutdownHook(new ShutDownHook("Slave process"));
+      run();
+      ShutDownHook.exit(0);
+   }
+
+   /**
+    * Runs the stages sent by the master, until the master closes the connection.
+    */
+   void run() throws Exception {
       connectToMaster();
       startCommunicationWithMaster();
-      ShutDownHook.exit(0);
+   }
+
+   /**
+    * Starts the slaves in threads of this JVM.
+    *
+    * @return the threads, which end when the master closes the connection
+    */
+   static List<Thread> startNodes(String masterHost, int masterPort, int nodes) {
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < nodes; i++) {
+         final Slave slave = new Slave(masterHost, masterPort);
+         Thread thread = new Thread("Node-" + i) {
+            @Override
+            public void run() {
+               try {
+                  slave.run();
+               } catch (Throwable e) {
+                  log.error("Slave failed", e);
+               }
+            }
+         };
+         thread.start();
+         threads.add(thread);
+      }
+      return threads;
    }
 
    private void startCommunicationWithMaster() throws Exception {
-      Selector selector = Selector.open();
-      socketChannel.register(selector, SelectionKey.OP_CONNECT);
+      selector = Selector.open();
+      SelectionKey key = socketChannel.register(selector, SelectionKey.OP_CONNECT);
+      long nextHeartbeat = 0;
       while (true) {
-         selector.select();
+         selector.select(HEARTBEAT_INTERVAL_MILLIS);
          // Get set of ready objects
          Set<SelectionKey> readyKeys = selector.selectedKeys();
 
          Iterator<SelectionKey> readyItor = readyKeys.iterator();
          // Walk through set
          while (readyItor.hasNext()) {
-            final SelectionKey key = readyItor.next();
+            readyItor.next();
             readyItor.remove();
-            SocketChannel keyChannel = (SocketChannel) key.channel();
 
             if (key.isConnectable()) {
-               if (keyChannel.isConnectionPending()) {
+               if (socketChannel.isConnectionPending()) {
                   try {
-                     keyChannel.finishConnect();
+                     socketChannel.finishConnect();
                   } catch (IOException e) {
                      key.cancel();
                      log.warn("Could not finish connecting. Is the master started?", e);
                      throw e;
                   }
-                  state.setLocalAddress(keyChannel.socket().getLocalAddress());
-                  state.setMasterAddress(keyChannel.socket().getInetAddress());
+                  state.setLocalAddress(socketChannel.socket().getLocalAddress());
+                  state.setMasterAddress(socketChannel.socket().getInetAddress());
+                  state.setProgressListener(new ProgressListener() {
+                     public void progressUpdated(IntervalStats progress) {
+                        sendProgress(progress);
+                     }
+                  });
+                  state.setStartBarrier(startBarrier);
                   key.interestOps(SelectionKey.OP_READ);
                }
                log.info("Successfully established connection with master at: " + masterHost + ":" + masterPort);
-
-            } else if (key.isReadable()) {
-               int numRead = keyChannel.read(byteBuffer);
-               if (numRead == -1) {
+               continue;
+            }
+            if (key.isReadable()) {
+               if (!messageChannel.read()) {
                   log.info("Master shutdown!");
-                  key.channel().close();
                   key.cancel();
+                  messageChannel.close();
                   return;
                }
-               final int expectedSize = byteBuffer.getInt(0);
-               if (byteBuffer.position() == expectedSize + 4) {
-                  Runnable runnable = new Runnable() {
-                     public void run() {
-                        try {
-                           DistStage stage = (DistStage) SerializationHelper.deserialize(byteBuffer.array(), 4, expectedSize);
-                           stage.initOnSlave(state);
-                           log.info("Executing stage: " + stage);
-                           long start =System.currentTimeMillis();
-                           DistStageAck ack = stage.executeOnSlave();
-                           ack.setDuration(System.currentTimeMillis() - start);
-                           byte[] bytes = SerializationHelper.prepareForSerialization(ack);
-                           log.info("Finished stage: " + stage);
-                           byteBuffer.clear();
-                           byteBuffer.put(bytes);
-                           byteBuffer.flip();
-                        } catch (IOException e) {
-                           log.error(e);
-                        }
-                     }
-                  };
-                  future = es.submit(runnable);
-                  key.interestOps(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
-               }
-            } else if (key.isWritable()) {
-               try {
-                  future.get(500, TimeUnit.MILLISECONDS);
-                  if (log.isTraceEnabled()) {
-                     log.trace("Buffer before writing is: " + byteBuffer);
-                  }
-                  key.interestOps(SelectionKey.OP_WRITE);
-                  int val = keyChannel.write(byteBuffer);
-                  if (log.isTraceEnabled()) {
-                     log.trace("Successfully written: " + val + " bytes to the master from buffer: " + byteBuffer);
+               MessageChannel.Message message;
+               while ((message = messageChannel.poll()) != null) {
+                  if (message.getType() == MessageChannel.STAGE) {
+                     executeStage(decodeStage(message.getData()));
+                  } else if (message.getType() == MessageChannel.START) {
+                     startBarrier.startReceived((long[]) message.decode());
+                  } else if (message.getType() == MessageChannel.CLOCK_PROBE) {
+                     replyToClockProbe(message);
+                  } else {
+                     log.warn("Unexpected " + message + " from the master");
                   }
-
-                  if (byteBuffer.remaining() == 0) {
-                     log.info("Ack successfully sent to the master");
-                     byteBuffer.clear();
-                     key.interestOps(SelectionKey.OP_READ);
-                  }
-
-               } catch (TimeoutException e) {
-//                  log.trace("Current stage not finished processing, nothing to write for now.");
                }
+            }
+            if (key.isValid() && key.isWritable()) {
+               if (log.isTraceEnabled()) {
+                  log.trace("Writing to the master: " + messageChannel);
+               }
+               if (messageChannel.flush() && log.isTraceEnabled()) {
+                  log.trace("All messages sent to the master");
+               }
+            }
+         }
+         if (key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            // stages run in another thread, so a stage that hangs is detected by its stageTimeout instead
+            if (System.currentTimeMillis() >= nextHeartbeat) {
+               messageChannel.send(MessageChannel.HEARTBEAT, NO_DATA, 0, 0);
+               nextHeartbeat = System.currentTimeMillis() + HEARTBEAT_INTERVAL_MILLIS;
+            }
+            // acks and progress reports are queued by other threads, which wake up the selector
+            key.interestOps(messageChannel.hasPendingWrites() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+         }
+      }
+   }
 
-            } else {
-               log.warn("Received a key that is not connectible, readable or writable: " + key);
+   /**
+    * The stage is the same for all the slaves, it's preceded by the slave's index and the active slave count.
+    */
+   private DistStage decodeStage(byte[] data) throws IOException {
+      ByteBuffer header = ByteBuffer.wrap(data, 0, 8);
+      int slaveIndex = header.getInt();
+      int activeSlaveCount = header.getInt();
+      DistStage stage = (DistStage) BinaryCodec.decode(data, 8, data.length - 8);
+      stage.setSlaveIndex(slaveIndex);
+      stage.setActiveSlavesCount(activeSlaveCount);
+      return stage;
+   }
+
+   private void executeStage(final DistStage stage) {
+      Runnable runnable = new Runnable() {
+         public void run() {
+            try {
+               stage.initOnSlave(state);
+               log.info("Executing stage: " + stage);
+               long start =System.currentTimeMillis();
+               DistStageAck ack = stage.executeOnSlave();
+               ack.setDuration(System.currentTimeMillis() - start);
+               sendAck(ack);
+               log.info("Finished stage: " + stage);
+            } catch (Throwable e) {
+               // without an ack, the master would wait for this slave until the stage times out
+               log.error("Stage " + stage + " failed", e);
+               DefaultDistStageAck ack = new DefaultDistStageAck(stage.getSlaveIndex(), state.getLocalAddress());
+               ack.setError(true);
+               ack.setErrorMessage("Stage failed on the slave: " + e);
+               ack.setRemoteException(e);
+               sendAck(ack);
             }
          }
+      };
+      es.execute(runnable);
+   }
+
+   private void sendAck(DistStageAck ack) {
+      try {
+         messageChannel.send(MessageChannel.ACK, SerializationHelper.encode(ack));
+         selector.wakeup();
+      } catch (IOException e) {
+         log.error("Could not send " + ack + " to the master", e);
+      }
+   }
+
+   /**
+    * Called by the threads of a running stage, the report is sent along with the acks.
+    */
+   private void sendProgress(IntervalStats progress) {
+      try {
+         messageChannel.send(MessageChannel.PROGRESS, SerializationHelper.encode(progress));
+         selector.wakeup();
+      } catch (IOException e) {
+         log.warn("Could not send the progress report " + progress, e);
+      }
+   }
+
+   /**
+    * Answers right away, so that the master's estimate isn't skewed by the time the reply waits in the queue.
+    */
+   private void replyToClockProbe(MessageChannel.Message probe) throws IOException {
+      long probeReceived = System.currentTimeMillis();
+      long probeSent = ((long[]) probe.decode())[0];
+      long[] reply = new long[]{probeSent, probeReceived, System.currentTimeMillis()};
+      messageChannel.send(MessageChannel.CLOCK_REPLY, SerializationHelper.encode(reply));
+      messageChannel.flush();
+   }
+
+   /**
+    * Sends READY to the master and waits for the START message, passed in by the selector thread. The message carries
+    * the master's estimate of the offset between the clocks, see {@link Master}.
+    */
+   private class MasterStartBarrier implements StartBarrier {
+      private final BlockingQueue<long[]> starts = new LinkedBlockingQueue<long[]>();
+      private volatile long clockOffset;
+
+      public long awaitStart() throws InterruptedException {
+         starts.clear();
+         try {
+            messageChannel.send(MessageChannel.READY, SerializationHelper.encode(new long[0]));
+         } catch (IOException e) {
+            throw new IllegalStateException("Could not notify the master", e);
+         }
+         selector.wakeup();
+         log.info("Ready to start, waiting for the other slaves");
+         // the start time in the master's clock and the clock offset
+         long[] start = starts.take();
+         clockOffset = start[1];
+         log.info("Starting in " + (start[0] - clockOffset - System.currentTimeMillis()) + " ms, clock offset to the master is " +
+                        clockOffset + " ms");
+         return start[0];
+      }
+
+      public long getClockOffset() {
+         return clockOffset;
+      }
+
+      private void startReceived(long[] start) {
+         starts.add(start);
       }
    }
 
@@ -163,6 +295,7 @@ public class Slave {
       socketChannel = SocketChannel.open();
       socketChannel.configureBlocking(false);
       socketChannel.connect(socketAddress);
+      messageChannel = new MessageChannel(socketChannel);
       if (exitOnMasterShutdown) {
          es = Executors.newSingleThreadExecutor();
       } else {
@@ -196,7 +329,16 @@ public class Slave {
    public static void main(String[] args) throws Exception {
       String masterHost = null;
       int masterPort = Master.DEFAULT_PORT;
+      int nodes = 1;
       for (int i = 0; i < args.length - 1; i++) {
+         if (args[i].equals("-nodes")) {
+            try {
+               nodes = Integer.parseInt(args[i + 1]);
+            } catch (NumberFormatException nfe) {
+               log.warn("Unable to parse the number of nodes!  Failing!");
+               ShutDownHook.exit(10);
+            }
+         }
          if (args[i].equals("-master")) {
             String param = args[i + 1];
             if (param.contains(":")) {
@@ -215,13 +357,22 @@ public class Slave {
       if (masterHost == null) {
          printUsageAndExit();
       }
-      Slave slave = new Slave(masterHost, masterPort);
-      slave.start();
+      if (nodes == 1) {
+         Slave slave = new Slave(masterHost, masterPort);
+         slave.start();
+      } else {
+         Runtime.getRuntime().addShutdownHook(new ShutDownHook("Slave process"));
+         for (Thread node : startNodes(masterHost, masterPort, nodes)) {
+            node.join();
+         }
+         ShutDownHook.exit(0);
+      }
    }
 
    private static void printUsageAndExit() {
-      System.out.println("Usage: start_local_slave.sh -master <host>:port");
+      System.out.println("Usage: start_local_slave.sh -master <host>:port [-nodes <count>]");
       System.out.println("       -master: The host(and optional port) on which the master resides. If port is missing it defaults to " + Master.DEFAULT_PORT);
+      System.out.println("       -nodes: The number of slaves (cluster nodes) run by this JVM. Defaults to 1");
       ShutDownHook.exit(1);
    }
 }
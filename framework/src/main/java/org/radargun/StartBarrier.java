@@ -0,0 +1,23 @@
+package org.radargun;
+
+/**
+ * Lets the slaves running a stage start their load at the same moment. Each slave blocks in {@link #awaitStart()}
+ * once it's ready; when all of them are ready, the master picks a start time a little in the future and sends it to
+ * all of them. Slaves that finish the stage without reaching the barrier (e.g. with no cache wrapper) don't hold the
+ * others back.
+ */
+public interface StartBarrier {
+
+   /**
+    * Blocks until all the slaves running the current stage are ready.
+    *
+    * @return the time at which all the slaves start, in the master's clock (System.currentTimeMillis() on the master)
+    */
+   long awaitStart() throws InterruptedException;
+
+   /**
+    * @return estimated difference between the master's clock and this node's clock, in milliseconds; add it to a local
+    *         time to get the master's time
+    */
+   long getClockOffset();
+}
@@ -1,6 +1,7 @@
 package org.radargun.config;
 
 import org.radargun.utils.TypedProperties;
+import org.radargun.utils.Utils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -122,6 +123,15 @@ public class DomConfigParser extends ConfigParser {
       String bindAddress = ConfigHelper.getStrAttribute(masterEl, "bindAddress");
       int port = masterEl.getAttribute("port") != null ? ConfigHelper.getIntAttribute(masterEl, "port") : Master.DEFAULT_PORT;
       masterConfig = new MasterConfig(port, bindAddress, prototype.getMaxSize());
+      if (masterEl.getAttribute("progressPort").length() > 0) {
+         masterConfig.setProgressPort(ConfigHelper.getIntAttribute(masterEl, "progressPort"));
+      }
+      if (masterEl.getAttribute("slaveTimeout").length() > 0) {
+         masterConfig.setSlaveTimeoutMillis(Utils.string2Millis(ConfigHelper.getStrAttribute(masterEl, "slaveTimeout")));
+      }
+      if (masterEl.getAttribute("initialSlaves").length() > 0) {
+         masterConfig.setInitialSlaveCount(ConfigHelper.getIntAttribute(masterEl, "initialSlaves"));
+      }
       return masterConfig;
    }
 
@@ -14,6 +14,9 @@ public class MasterConfig {
    private int port;
    private String host;
    private int slavesCount;
+   private int progressPort = -1;
+   private long slaveTimeoutMillis = 60000;
+   private int initialSlaveCount = -1;
 
    List<FixedSizeBenchmarkConfig> benchmarks = new ArrayList<FixedSizeBenchmarkConfig>();
 
@@ -35,6 +38,40 @@ public class MasterConfig {
       return slavesCount;
    }
 
+   /**
+    * @return port of the HTTP endpoint showing the progress of the running stage, or -1 if disabled
+    */
+   public int getProgressPort() {
+      return progressPort;
+   }
+
+   public void setProgressPort(int progressPort) {
+      this.progressPort = progressPort;
+   }
+
+   /**
+    * @return how long a slave may stay silent (no heartbeats nor other messages) before it is considered failed
+    */
+   public long getSlaveTimeoutMillis() {
+      return slaveTimeoutMillis;
+   }
+
+   public void setSlaveTimeoutMillis(long slaveTimeoutMillis) {
+      this.slaveTimeoutMillis = slaveTimeoutMillis;
+   }
+
+   /**
+    * @return how many slaves the master waits for before starting the benchmark, the others may join later. Defaults
+    *         to the slave count
+    */
+   public int getInitialSlaveCount() {
+      return initialSlaveCount > 0 ? initialSlaveCount : slavesCount;
+   }
+
+   public void setInitialSlaveCount(int initialSlaveCount) {
+      this.initialSlaveCount = initialSlaveCount;
+   }
+
    public List<FixedSizeBenchmarkConfig> getBenchmarks() {
       return benchmarks;
    }
@@ -0,0 +1,434 @@
+package org.radargun.protocol;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.radargun.DistStage;
+import org.radargun.stages.DefaultDistStageAck;
+import org.radargun.stressors.BackgroundStats;
+import org.radargun.stressors.IntervalStats;
+import org.radargun.utils.LatencyHistogram;
+
+/**
+ * Binary encoding of the messages exchanged by the master and the slaves. A message starts with the {@link #VERSION}
+ * of the format, followed by a single tagged value. Supported values are:
+ * <ul>
+ * <li>null, primitive wrappers, strings, enums and primitive arrays</li>
+ * <li>ArrayList and HashMap/LinkedHashMap of supported values. Maps are read as LinkedHashMap, keeping the
+ * order in which they were iterated when written.</li>
+ * <li>classes with a registered {@link BinaryExternalizer}, e.g. the stage acks and the statistics they carry</li>
+ * <li>the framework's {@link DistStage}s: their non-transient fields are written one by one. Fields holding a
+ * commons-logging Log are skipped, the constructor creates them again on the slave.</li>
+ * </ul>
+ * Anything else, including stages from outside of the framework and stages with custom serialization methods, falls
+ * back to Java serialization for that value only. Messages produced by Java serialization alone are still accepted.
+ * <p/>
+ * Concurrency: this class is thread safe; externalizers should be registered before any message is exchanged.
+ */
+public class BinaryCodec {
+
+   /**
+    * Version of the format. Master and slaves must use the same one.
+    */
+   public static final byte VERSION = 1;
+
+   /**
+    * First byte of the Java serialization stream header.
+    */
+   private static final byte JAVA_SERIALIZATION_MAGIC = (byte) 0xAC;
+
+   static final byte NULL = 0;
+   static final byte TRUE = 1;
+   static final byte FALSE = 2;
+   static final byte BYTE = 3;
+   static final byte SHORT = 4;
+   static final byte CHAR = 5;
+   static final byte INT = 6;
+   static final byte LONG = 7;
+   static final byte FLOAT = 8;
+   static final byte DOUBLE = 9;
+   static final byte STRING = 10;
+   static final byte BYTE_ARRAY = 11;
+   static final byte INT_ARRAY = 12;
+   static final byte LONG_ARRAY = 13;
+   static final byte DOUBLE_ARRAY = 14;
+   static final byte LIST = 15;
+   static final byte MAP = 16;
+   static final byte ENUM = 17;
+   static final byte EXTERNALIZED = 18;
+   static final byte FIELDS = 19;
+   static final byte SERIALIZED = 20;
+
+   private static final Map<Class<?>, Integer> classToId = new HashMap<Class<?>, Integer>();
+   private static final Map<Integer, BinaryExternalizer<?>> externalizers = new HashMap<Integer, BinaryExternalizer<?>>();
+   private static final Map<Class<?>, Field[]> encodableFields = new HashMap<Class<?>, Field[]>();
+
+   static {
+      register(1, DefaultDistStageAck.class, new DefaultDistStageAck.Externalizer());
+      register(2, IntervalStats.class, new IntervalStats.Externalizer());
+      register(3, BackgroundStats.Stats.class, new BackgroundStats.Stats.Externalizer());
+      register(4, LatencyHistogram.class, new LatencyHistogram.Externalizer());
+   }
+
+   /**
+    * Registers the externalizer used for instances of exactly the given class (subclasses are not affected).
+    *
+    * @param id unique, positive identifier of the class in the format. 1 - 99 are reserved for the framework.
+    */
+   public static synchronized <T> void register(int id, Class<T> clazz, BinaryExternalizer<T> externalizer) {
+      if (id <= 0) {
+         throw new IllegalArgumentException("Externalizer id must be positive: " + id);
+      }
+      BinaryExternalizer<?> existing = externalizers.get(id);
+      if (existing != null && !Integer.valueOf(id).equals(classToId.get(clazz))) {
+         throw new IllegalArgumentException("Id " + id + " is already used by " + existing);
+      }
+      classToId.put(clazz, id);
+      externalizers.put(id, externalizer);
+   }
+
+   /**
+    * Appends the versioned message to the output.
+    */
+   public static void encode(Object message, BinaryOutput output) throws IOException {
+      output.write(VERSION);
+      writeObject(output, message);
+   }
+
+   public static Object decode(byte[] buffer, int offset, int length) throws IOException {
+      if (length > 0 && buffer[offset] == JAVA_SERIALIZATION_MAGIC) {
+         return readSerialized(new BinaryInput(buffer, offset, length), length);
+      }
+      BinaryInput input = new BinaryInput(buffer, offset, length);
+      byte version = input.readByte();
+      if (version != VERSION) {
+         throw new IOException("Unsupported message format version " + version + ", expected " + VERSION +
+                                     ". Are the master and the slaves running the same RadarGun version?");
+      }
+      return readObject(input);
+   }
+
+   static void writeObject(BinaryOutput out, Object object) throws IOException {
+      if (object == null) {
+         out.write(NULL);
+         return;
+      }
+      Class<?> clazz = object.getClass();
+      if (clazz == String.class) {
+         out.write(STRING);
+         out.writeString((String) object);
+      } else if (clazz == Integer.class) {
+         out.write(INT);
+         out.writeSignedVarLong((Integer) object);
+      } else if (clazz == Long.class) {
+         out.write(LONG);
+         out.writeSignedVarLong((Long) object);
+      } else if (clazz == Double.class) {
+         out.write(DOUBLE);
+         out.writeDouble((Double) object);
+      } else if (clazz == Boolean.class) {
+         out.write((Boolean) object ? TRUE : FALSE);
+      } else if (clazz == Float.class) {
+         out.write(FLOAT);
+         out.writeInt(Float.floatToIntBits((Float) object));
+      } else if (clazz == Short.class) {
+         out.write(SHORT);
+         out.writeSignedVarLong((Short) object);
+      } else if (clazz == Byte.class) {
+         out.write(BYTE);
+         out.write((Byte) object);
+      } else if (clazz == Character.class) {
+         out.write(CHAR);
+         out.writeVarInt((Character) object);
+      } else if (clazz == byte[].class) {
+         out.write(BYTE_ARRAY);
+         out.writeBytes((byte[]) object);
+      } else if (clazz == int[].class) {
+         int[] array = (int[]) object;
+         out.write(INT_ARRAY);
+         out.writeVarInt(array.length);
+         for (int value : array) out.writeSignedVarLong(value);
+      } else if (clazz == long[].class) {
+         long[] array = (long[]) object;
+         out.write(LONG_ARRAY);
+         out.writeVarInt(array.length);
+         for (long value : array) out.writeSignedVarLong(value);
+      } else if (clazz == double[].class) {
+         double[] array = (double[]) object;
+         out.write(DOUBLE_ARRAY);
+         out.writeVarInt(array.length);
+         for (double value : array) out.writeDouble(value);
+      } else if (clazz == ArrayList.class) {
+         List<?> list = (List<?>) object;
+         out.write(LIST);
+         out.writeVarInt(list.size());
+         for (Object element : list) writeObject(out, element);
+      } else if (clazz == HashMap.class || clazz == LinkedHashMap.class) {
+         Map<?, ?> map = (Map<?, ?>) object;
+         out.write(MAP);
+         out.writeVarInt(map.size());
+         for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeObject(out, entry.getKey());
+            writeObject(out, entry.getValue());
+         }
+      } else if (object instanceof Enum) {
+         out.write(ENUM);
+         out.writeString(((Enum<?>) object).getDeclaringClass().getName());
+         out.writeString(((Enum<?>) object).name());
+      } else {
+         writeComplexObject(out, object, clazz);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static void writeComplexObject(BinaryOutput out, Object object, Class<?> clazz) throws IOException {
+      Integer id;
+      BinaryExternalizer<Object> externalizer;
+      synchronized (BinaryCodec.class) {
+         id = classToId.get(clazz);
+         externalizer = id == null ? null : (BinaryExternalizer<Object>) externalizers.get(id);
+      }
+      if (externalizer != null) {
+         out.write(EXTERNALIZED);
+         out.writeVarInt(id);
+         externalizer.writeObject(out, object);
+         return;
+      }
+      Field[] fields = getEncodableFields(clazz);
+      if (fields != null) {
+         out.write(FIELDS);
+         out.writeString(clazz.getName());
+         out.writeVarInt(fields.length);
+         try {
+            for (Field field : fields) {
+               writeObject(out, field.get(object));
+            }
+         } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+         }
+         return;
+      }
+      out.write(SERIALIZED);
+      int lengthPosition = out.reserve(4);
+      ObjectOutputStream oos = new ObjectOutputStream(out);
+      oos.writeObject(object);
+      oos.flush();
+      out.putInt(lengthPosition, out.size() - lengthPosition - 4);
+   }
+
+   static Object readObject(BinaryInput in) throws IOException {
+      byte tag = in.readByte();
+      switch (tag) {
+         case NULL:
+            return null;
+         case TRUE:
+            return Boolean.TRUE;
+         case FALSE:
+            return Boolean.FALSE;
+         case BYTE:
+            return in.readByte();
+         case SHORT:
+            return (short) in.readSignedVarLong();
+         case CHAR:
+            return (char) in.readVarInt();
+         case INT:
+            return (int) in.readSignedVarLong();
+         case LONG:
+            return in.readSignedVarLong();
+         case FLOAT:
+            return Float.intBitsToFloat(in.readInt());
+         case DOUBLE:
+            return in.readDouble();
+         case STRING:
+            return in.readString();
+         case BYTE_ARRAY:
+            return in.readBytes();
+         case INT_ARRAY: {
+            int[] array = new int[in.readVarInt()];
+            for (int i = 0; i < array.length; i++) array[i] = (int) in.readSignedVarLong();
+            return array;
+         }
+         case LONG_ARRAY: {
+            long[] array = new long[in.readVarInt()];
+            for (int i = 0; i < array.length; i++) array[i] = in.readSignedVarLong();
+            return array;
+         }
+         case DOUBLE_ARRAY: {
+            double[] array = new double[in.readVarInt()];
+            for (int i = 0; i < array.length; i++) array[i] = in.readDouble();
+            return array;
+         }
+         case LIST: {
+            int size = in.readVarInt();
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) list.add(readObject(in));
+            return list;
+         }
+         case MAP: {
+            int size = in.readVarInt();
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+               Object key = readObject(in);
+               map.put(key, readObject(in));
+            }
+            return map;
+         }
+         case ENUM:
+            return readEnum(in);
+         case EXTERNALIZED: {
+            int id = in.readVarInt();
+            BinaryExternalizer<?> externalizer;
+            synchronized (BinaryCodec.class) {
+               externalizer = externalizers.get(id);
+            }
+            if (externalizer == null) {
+               throw new IOException("No externalizer registered with id " + id);
+            }
+            return externalizer.readObject(in);
+         }
+         case FIELDS:
+            return readFields(in);
+         case SERIALIZED:
+            return readSerialized(in, in.readInt());
+         default:
+            throw new IOException("Unknown tag " + tag + " at position " + (in.getPosition() - 1));
+      }
+   }
+
+   @SuppressWarnings({"unchecked", "rawtypes"})
+   private static Object readEnum(BinaryInput in) throws IOException {
+      Class clazz = loadClass(in.readString());
+      return Enum.valueOf(clazz, in.readString());
+   }
+
+   private static Object readFields(BinaryInput in) throws IOException {
+      String className = in.readString();
+      Class<?> clazz = loadClass(className);
+      Field[] fields = getEncodableFields(clazz);
+      int count = in.readVarInt();
+      if (fields == null || fields.length != count) {
+         throw new IOException("Class " + className + " differs between the master and the slave");
+      }
+      try {
+         Constructor<?> constructor = clazz.getDeclaredConstructor();
+         constructor.setAccessible(true);
+         Object object = constructor.newInstance();
+         for (Field field : fields) {
+            field.set(object, readObject(in));
+         }
+         return object;
+      } catch (IOException e) {
+         throw e;
+      } catch (Exception e) {
+         throw new IOException("Cannot instantiate " + className, e);
+      }
+   }
+
+   private static Object readSerialized(BinaryInput in, int length) throws IOException {
+      int start = in.skipExactly(length);
+      ObjectInputStream ois = new ObjectInputStream(new BinaryInput(in.getBuffer(), start, length)) {
+         @Override
+         protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+               return loadClass(desc.getName());
+            } catch (IOException e) {
+               return super.resolveClass(desc);
+            }
+         }
+      };
+      try {
+         return ois.readObject();
+      } catch (ClassNotFoundException e) {
+         throw new IOException("Cannot deserialize object", e);
+      }
+   }
+
+   private static Class<?> loadClass(String name) throws IOException {
+      ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+      if (classLoader == null) {
+         classLoader = BinaryCodec.class.getClassLoader();
+      }
+      try {
+         return Class.forName(name, false, classLoader);
+      } catch (ClassNotFoundException e) {
+         try {
+            return Class.forName(name, false, BinaryCodec.class.getClassLoader());
+         } catch (ClassNotFoundException e2) {
+            throw new IOException("Cannot load class " + name, e2);
+         }
+      }
+   }
+
+   /**
+    * @return the fields written for instances of the class, or null if they must be serialized by Java serialization
+    */
+   private static synchronized Field[] getEncodableFields(Class<?> clazz) {
+      if (encodableFields.containsKey(clazz)) {
+         return encodableFields.get(clazz);
+      }
+      Field[] fields = null;
+      if (DistStage.class.isAssignableFrom(clazz) && clazz.getName().startsWith("org.radargun.")
+            && !Modifier.isAbstract(clazz.getModifiers()) && hasDefaultConstructor(clazz) && !hasCustomSerialization(clazz)) {
+         List<Field> list = new ArrayList<Field>();
+         List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+         for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+         }
+         for (Class<?> c : hierarchy) {
+            Field[] declared = c.getDeclaredFields();
+            Arrays.sort(declared, new Comparator<Field>() {
+               @Override
+               public int compare(Field f1, Field f2) {
+                  return f1.getName().compareTo(f2.getName());
+               }
+            });
+            for (Field field : declared) {
+               int modifiers = field.getModifiers();
+               if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Log.class.isAssignableFrom(field.getType())) {
+                  continue;
+               }
+               field.setAccessible(true);
+               list.add(field);
+            }
+         }
+         fields = list.toArray(new Field[list.size()]);
+      }
+      encodableFields.put(clazz, fields);
+      return fields;
+   }
+
+   private static boolean hasDefaultConstructor(Class<?> clazz) {
+      try {
+         clazz.getDeclaredConstructor();
+         return true;
+      } catch (NoSuchMethodException e) {
+         return false;
+      }
+   }
+
+   private static boolean hasCustomSerialization(Class<?> clazz) {
+      for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+         for (Method method : c.getDeclaredMethods()) {
+            String name = method.getName();
+            if (name.equals("writeObject") || name.equals("readObject") || name.equals("writeReplace") || name.equals("readResolve")) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+}
@@ -0,0 +1,15 @@
+package org.radargun.protocol;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads instances of one class in the binary format of {@link BinaryCodec}. Externalizers are registered
+ * with {@link BinaryCodec#register(int, Class, BinaryExternalizer)} under the same id on the master and on the slaves.
+ * Nested objects should be written with {@link BinaryOutput#writeObject(Object)}.
+ */
+public interface BinaryExternalizer<T> {
+
+   void writeObject(BinaryOutput output, T object) throws IOException;
+
+   T readObject(BinaryInput input) throws IOException;
+}
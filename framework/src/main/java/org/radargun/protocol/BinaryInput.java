@@ -0,0 +1,171 @@
+package org.radargun.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads what was written by a {@link BinaryOutput} directly from a byte array, without copying it.
+ * <p/>
+ * Concurrency: this class is not thread safe.
+ */
+public class BinaryInput extends InputStream {
+
+   private final byte[] buffer;
+   private final int limit;
+   private int position;
+
+   public BinaryInput(byte[] buffer, int offset, int length) {
+      this.buffer = buffer;
+      this.position = offset;
+      this.limit = offset + length;
+   }
+
+   public int getPosition() {
+      return position;
+   }
+
+   public int remaining() {
+      return limit - position;
+   }
+
+   @Override
+   public int available() {
+      return remaining();
+   }
+
+   @Override
+   public int read() {
+      return position < limit ? buffer[position++] & 0xFF : -1;
+   }
+
+   @Override
+   public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) return 0;
+      int count = Math.min(length, limit - position);
+      if (count <= 0) return -1;
+      System.arraycopy(buffer, position, bytes, offset, count);
+      position += count;
+      return count;
+   }
+
+   @Override
+   public long skip(long n) {
+      int count = (int) Math.max(0, Math.min(n, limit - position));
+      position += count;
+      return count;
+   }
+
+   /**
+    * Moves past the given number of bytes, failing if there are not enough of them.
+    *
+    * @return the position of the first skipped byte
+    */
+   public int skipExactly(int length) throws IOException {
+      require(length);
+      int start = position;
+      position += length;
+      return start;
+   }
+
+   /**
+    * Gives access to the underlying array, e.g. to read a region returned by {@link #skipExactly(int)}.
+    */
+   public byte[] getBuffer() {
+      return buffer;
+   }
+
+   public byte readByte() throws IOException {
+      require(1);
+      return buffer[position++];
+   }
+
+   public boolean readBoolean() throws IOException {
+      return readByte() != 0;
+   }
+
+   public int readInt() throws IOException {
+      require(4);
+      int value = ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+            | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+      position += 4;
+      return value;
+   }
+
+   public int readVarInt() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+         byte b = readByte();
+         value |= (b & 0x7F) << shift;
+         if (b >= 0) return value;
+      }
+      throw new IOException("Malformed variable length int");
+   }
+
+   public long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 70; shift += 7) {
+         byte b = readByte();
+         value |= (long) (b & 0x7F) << shift;
+         if (b >= 0) return value;
+      }
+      throw new IOException("Malformed variable length long");
+   }
+
+   public long readSignedVarLong() throws IOException {
+      long encoded = readVarLong();
+      return (encoded >>> 1) ^ -(encoded & 1);
+   }
+
+   public long readLong() throws IOException {
+      long high = readInt();
+      return (high << 32) | (readInt() & 0xFFFFFFFFL);
+   }
+
+   public double readDouble() throws IOException {
+      return Double.longBitsToDouble(readLong());
+   }
+
+   public String readString() throws IOException {
+      int length = readVarInt() - 1;
+      if (length < 0) return null;
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+         require(1);
+         byte b = buffer[position];
+         if (b >= 0) {
+            chars[i] = (char) b;
+            position++;
+         } else {
+            chars[i] = (char) readVarInt();
+         }
+      }
+      return new String(chars);
+   }
+
+   public byte[] readBytes() throws IOException {
+      int length = readVarInt() - 1;
+      if (length < 0) return null;
+      byte[] bytes = new byte[length];
+      System.arraycopy(buffer, skipExactly(length), bytes, 0, length);
+      return bytes;
+   }
+
+   public Object readObject() throws IOException {
+      return BinaryCodec.readObject(this);
+   }
+
+   private void require(int length) throws IOException {
+      if (length < 0 || position + length > limit) {
+         throw new EOFException("Expected " + length + " more bytes, only " + (limit - position) + " available");
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "BinaryInput{" +
+            "position=" + position +
+            ", limit=" + limit +
+            '}';
+   }
+}
@@ -0,0 +1,186 @@
+package org.radargun.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable buffer the {@link BinaryCodec} writes to. The buffer is kept by {@link #reset()}, so that a single instance
+ * can encode all the messages sent by a thread without allocating. Integers are written as variable length
+ * (7 bits per byte) values, small numbers take a single byte.
+ * <p/>
+ * Concurrency: this class is not thread safe.
+ */
+public class BinaryOutput extends OutputStream {
+
+   private byte[] buffer;
+   private int position;
+
+   public BinaryOutput() {
+      this(1024);
+   }
+
+   public BinaryOutput(int initialCapacity) {
+      buffer = new byte[Math.max(16, initialCapacity)];
+   }
+
+   /**
+    * Discards the content, keeping the buffer.
+    */
+   public void reset() {
+      position = 0;
+   }
+
+   public int size() {
+      return position;
+   }
+
+   /**
+    * @return the internal buffer, valid up to {@link #size()}. It is replaced when the output grows.
+    */
+   public byte[] getBuffer() {
+      return buffer;
+   }
+
+   public byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+   }
+
+   /**
+    * Skips the given number of bytes, to be filled later e.g. by {@link #putInt(int, int)}.
+    *
+    * @return the position of the first skipped byte
+    */
+   public int reserve(int length) {
+      ensureCapacity(length);
+      int start = position;
+      position += length;
+      return start;
+   }
+
+   /**
+    * Overwrites 4 bytes at the given position with a big-endian int.
+    */
+   public void putInt(int at, int value) {
+      buffer[at] = (byte) (value >>> 24);
+      buffer[at + 1] = (byte) (value >>> 16);
+      buffer[at + 2] = (byte) (value >>> 8);
+      buffer[at + 3] = (byte) value;
+   }
+
+   @Override
+   public void write(int b) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) b;
+   }
+
+   @Override
+   public void write(byte[] bytes, int offset, int length) {
+      ensureCapacity(length);
+      System.arraycopy(bytes, offset, buffer, position, length);
+      position += length;
+   }
+
+   public void writeBoolean(boolean value) {
+      write(value ? 1 : 0);
+   }
+
+   /**
+    * Big-endian, always 4 bytes.
+    */
+   public void writeInt(int value) {
+      putInt(reserve(4), value);
+   }
+
+   public void writeVarInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+         buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+   }
+
+   public void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+         buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+   }
+
+   /**
+    * Variable length encoding for values that may be negative: small absolute values take a single byte.
+    */
+   public void writeSignedVarLong(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+   }
+
+   public void writeLong(long value) {
+      int at = reserve(8);
+      putInt(at, (int) (value >>> 32));
+      putInt(at + 4, (int) value);
+   }
+
+   public void writeDouble(double value) {
+      writeLong(Double.doubleToLongBits(value));
+   }
+
+   /**
+    * Writes a string, or null, without the 64k limit of {@link java.io.DataOutput#writeUTF(String)}. ASCII characters
+    * take a single byte.
+    */
+   public void writeString(String value) {
+      if (value == null) {
+         writeVarInt(0);
+         return;
+      }
+      int length = value.length();
+      writeVarInt(length + 1);
+      ensureCapacity(length);
+      for (int i = 0; i < length; i++) {
+         char c = value.charAt(i);
+         if (c < 0x80) {
+            if (position == buffer.length) ensureCapacity(1);
+            buffer[position++] = (byte) c;
+         } else {
+            writeVarInt(c);
+         }
+      }
+   }
+
+   /**
+    * Writes the length and the content of the array, or null.
+    */
+   public void writeBytes(byte[] bytes) {
+      if (bytes == null) {
+         writeVarInt(0);
+      } else {
+         writeVarInt(bytes.length + 1);
+         write(bytes, 0, bytes.length);
+      }
+   }
+
+   /**
+    * Writes any object supported by {@link BinaryCodec}, including null.
+    */
+   public void writeObject(Object object) throws IOException {
+      BinaryCodec.writeObject(this, object);
+   }
+
+   private void ensureCapacity(int additional) {
+      int required = position + additional;
+      if (required > buffer.length) {
+         buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "BinaryOutput{" +
+            "size=" + position +
+            ", capacity=" + buffer.length +
+            '}';
+   }
+}
@@ -0,0 +1,56 @@
+package org.radargun.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of direct buffers of a single size. Allocating direct buffers is expensive and their memory is only released by
+ * the garbage collector, so the buffers used for the master/slave communication are reused. At most maxPooled buffers
+ * are kept; any further buffers are allocated when needed and left to the garbage collector once released.
+ * <p/>
+ * Concurrency: this class is thread safe.
+ */
+public class BufferPool {
+
+   private final int bufferSize;
+   private final BlockingQueue<ByteBuffer> buffers;
+
+   public BufferPool(int bufferSize, int maxPooled) {
+      this.bufferSize = bufferSize;
+      this.buffers = new ArrayBlockingQueue<ByteBuffer>(maxPooled);
+   }
+
+   public int getBufferSize() {
+      return bufferSize;
+   }
+
+   /**
+    * @return a cleared buffer of {@link #getBufferSize()} bytes
+    */
+   public ByteBuffer acquire() {
+      ByteBuffer buffer = buffers.poll();
+      if (buffer == null) {
+         return ByteBuffer.allocateDirect(bufferSize);
+      }
+      buffer.clear();
+      return buffer;
+   }
+
+   /**
+    * Returns a buffer obtained from {@link #acquire()}; the caller must not use it any more.
+    */
+   public void release(ByteBuffer buffer) {
+      if (buffer.capacity() == bufferSize && buffer.isDirect()) {
+         buffers.offer(buffer);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "BufferPool{" +
+            "bufferSize=" + bufferSize +
+            ", pooled=" + buffers.size() +
+            '}';
+   }
+}
@@ -0,0 +1,409 @@
+package org.radargun.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Typed messages over a non-blocking socket channel between the master and a slave. Messages are split into chunks,
+ * each starting with a header of 9 bytes: the message type, the length of the chunk and the length of the whole
+ * message. Chunks of different types may be interleaved on the wire.
+ * <p/>
+ * The chunks are staged in direct buffers taken from a {@link BufferPool} and written by gathering writes, a few
+ * chunks at a time, so a big message doesn't need any more direct memory than a small one. On the receiving side, the
+ * array holding a message is allocated in full when its first chunk arrives, and each byte is copied into it only
+ * once. Messages longer than maxMessageLength (256 MB unless set by the radargun.maxMessageLength system property)
+ * are refused and the channel is closed, so that a corrupt header can't exhaust the heap.
+ * <p/>
+ * A message sent to many channels, like a stage sent to all the slaves, can be kept in a single read-only buffer
+ * shared by the channels (see {@link #share(BinaryOutput)}): its chunks are then written straight from that buffer,
+ * only their headers and a small per-channel prefix are made for each channel.
+ * <p/>
+ * Concurrency: {@link #send(byte, byte[], int, int)} may be called by any thread, the other methods only by the thread
+ * polling the channel's selector.
+ */
+public class MessageChannel {
+
+   /**
+    * A stage sent from the master to a slave: the index of the slave and the number of active slaves (4 bytes each),
+    * followed by the stage, which is the same for all the slaves.
+    */
+   public static final byte STAGE = 1;
+   /**
+    * The ack of a stage, sent from a slave to the master.
+    */
+   public static final byte ACK = 2;
+   /**
+    * Statistics of a running stage, sent from a slave to the master while the stage runs.
+    */
+   public static final byte PROGRESS = 3;
+   /**
+    * A slave is ready to start the load of the running stage, see {@link org.radargun.StartBarrier}.
+    */
+   public static final byte READY = 4;
+   /**
+    * The time at which the slaves start the load, sent from the master once all of them are ready.
+    */
+   public static final byte START = 5;
+   /**
+    * Request for the current time of a slave, sent by the master to estimate the offset between their clocks.
+    */
+   public static final byte CLOCK_PROBE = 6;
+   /**
+    * The answer to a {@link #CLOCK_PROBE}.
+    */
+   public static final byte CLOCK_REPLY = 7;
+   /**
+    * Sent periodically by a slave to show it's alive, even while a long stage runs.
+    */
+   public static final byte HEARTBEAT = 8;
+
+   public static final int CHUNK_SIZE = 64 * 1024;
+   public static final int DEFAULT_MAX_MESSAGE_LENGTH = Integer.getInteger("radargun.maxMessageLength", 256 * 1024 * 1024);
+   static final int HEADER_SIZE = 9;
+
+   private static final int MAX_GATHERED_CHUNKS = 16;
+   private static final BufferPool DEFAULT_POOL = new BufferPool(CHUNK_SIZE, 4 * MAX_GATHERED_CHUNKS);
+
+   private final SocketChannel channel;
+   private final BufferPool pool;
+   private final int maxMessageLength;
+
+   private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<Outgoing>();
+   // a chunk of a shared message takes two buffers: its header and a slice of the shared buffer
+   private final ByteBuffer[] inFlight = new ByteBuffer[2 * MAX_GATHERED_CHUNKS];
+   private final boolean[] inFlightPooled = new boolean[2 * MAX_GATHERED_CHUNKS];
+   private int inFlightCount;
+
+   private final Queue<Message> received = new LinkedList<Message>();
+   private final Map<Byte, Assembly> assemblies = new HashMap<Byte, Assembly>();
+   private ByteBuffer readBuffer;
+   private Assembly currentChunk;
+   private int chunkRemaining;
+
+   public MessageChannel(SocketChannel channel) {
+      this(channel, DEFAULT_POOL, DEFAULT_MAX_MESSAGE_LENGTH);
+   }
+
+   public MessageChannel(SocketChannel channel, BufferPool pool, int maxMessageLength) {
+      if (pool.getBufferSize() <= HEADER_SIZE) {
+         throw new IllegalArgumentException("Buffers are too small: " + pool);
+      }
+      this.channel = channel;
+      this.pool = pool;
+      this.maxMessageLength = maxMessageLength;
+   }
+
+   public SocketChannel getChannel() {
+      return channel;
+   }
+
+   /**
+    * Queues a message. The array is not copied, it must not be changed until the message is written.
+    */
+   public void send(byte type, byte[] data, int offset, int length) {
+      outgoing.add(new Outgoing(type, data, offset, length));
+   }
+
+   /**
+    * Queues a copy of the output's content, the output may be reused immediately.
+    */
+   public void send(byte type, BinaryOutput output) {
+      send(type, output.toByteArray(), 0, output.size());
+   }
+
+   /**
+    * Queues a message made of the prefix followed by the remaining bytes of the shared buffer. The prefix is not
+    * copied, it must not be changed until the message is written. The shared buffer is neither copied nor modified,
+    * so the same buffer may be queued to any number of channels.
+    */
+   public void send(byte type, byte[] prefix, ByteBuffer shared) {
+      outgoing.add(new Outgoing(type, prefix, shared.duplicate()));
+   }
+
+   /**
+    * @return a read-only direct buffer with the output's content, to be sent by {@link #send(byte, byte[], ByteBuffer)}
+    */
+   public static ByteBuffer share(BinaryOutput output) {
+      ByteBuffer shared = ByteBuffer.allocateDirect(output.size());
+      shared.put(output.getBuffer(), 0, output.size());
+      shared.flip();
+      return shared.asReadOnlyBuffer();
+   }
+
+   public boolean hasPendingWrites() {
+      return inFlightCount > 0 || !outgoing.isEmpty();
+   }
+
+   /**
+    * Writes as much of the queued messages as the socket accepts.
+    *
+    * @return true if everything was written
+    */
+   public boolean flush() throws IOException {
+      while (true) {
+         fillChunks();
+         if (inFlightCount == 0) {
+            return true;
+         }
+         channel.write(inFlight, 0, inFlightCount);
+         int written = 0;
+         while (written < inFlightCount && !inFlight[written].hasRemaining()) {
+            if (inFlightPooled[written]) {
+               pool.release(inFlight[written]);
+            }
+            written++;
+         }
+         System.arraycopy(inFlight, written, inFlight, 0, inFlightCount - written);
+         System.arraycopy(inFlightPooled, written, inFlightPooled, 0, inFlightCount - written);
+         for (int i = inFlightCount - written; i < inFlightCount; i++) {
+            inFlight[i] = null;
+         }
+         inFlightCount -= written;
+         if (inFlightCount > 0) {
+            // the socket's send buffer is full
+            return false;
+         }
+      }
+   }
+
+   private void fillChunks() {
+      while (inFlightCount < MAX_GATHERED_CHUNKS) {
+         Outgoing message = outgoing.peek();
+         if (message == null) {
+            return;
+         }
+         if (message.shared == null) {
+            ByteBuffer chunk = pool.acquire();
+            int chunkLength = Math.min(message.remaining(), chunk.capacity() - HEADER_SIZE);
+            chunk.put(message.type);
+            chunk.putInt(chunkLength);
+            chunk.putInt(message.length);
+            chunk.put(message.data, message.offset + message.sent, chunkLength);
+            chunk.flip();
+            inFlightPooled[inFlightCount] = true;
+            inFlight[inFlightCount++] = chunk;
+            message.sent += chunkLength;
+         } else {
+            int chunkLength = Math.min(message.remaining(), pool.getBufferSize() - HEADER_SIZE);
+            int fromPrefix = Math.max(0, Math.min(message.data.length - message.sent, chunkLength));
+            // a direct buffer, so that the gathering write doesn't copy it to a temporary one
+            ByteBuffer header = pool.acquire();
+            header.put(message.type);
+            header.putInt(chunkLength);
+            header.putInt(message.length);
+            if (fromPrefix > 0) {
+               header.put(message.data, message.sent, fromPrefix);
+            }
+            header.flip();
+            inFlightPooled[inFlightCount] = true;
+            inFlight[inFlightCount++] = header;
+            if (chunkLength > fromPrefix) {
+               ByteBuffer slice = message.shared.slice();
+               slice.limit(chunkLength - fromPrefix);
+               message.shared.position(message.shared.position() + slice.limit());
+               inFlightPooled[inFlightCount] = false;
+               inFlight[inFlightCount++] = slice;
+            }
+            message.sent += chunkLength;
+         }
+         if (message.remaining() == 0) {
+            outgoing.poll();
+         }
+      }
+   }
+
+   /**
+    * Reads the available bytes; the completed messages are returned by {@link #poll()}.
+    *
+    * @return false if the end of the stream was reached
+    */
+   public boolean read() throws IOException {
+      if (readBuffer == null) {
+         readBuffer = pool.acquire();
+      }
+      int read = channel.read(readBuffer);
+      if (read == -1) {
+         return false;
+      }
+      readBuffer.flip();
+      try {
+         parseChunks();
+      } catch (IOException e) {
+         // the rest of the stream can't be trusted
+         close();
+         throw e;
+      }
+      readBuffer.compact();
+      if (readBuffer.position() == 0) {
+         // keep the buffer only while a header is incomplete
+         pool.release(readBuffer);
+         readBuffer = null;
+      }
+      return true;
+   }
+
+   private void parseChunks() throws IOException {
+      while (true) {
+         if (currentChunk == null) {
+            if (readBuffer.remaining() < HEADER_SIZE) {
+               return;
+            }
+            byte type = readBuffer.get();
+            int chunkLength = readBuffer.getInt();
+            int messageLength = readBuffer.getInt();
+            Assembly assembly = assemblies.get(type);
+            if (assembly == null) {
+               if (messageLength < 0 || messageLength > maxMessageLength) {
+                  throw new IOException("Invalid message length " + messageLength + " of message type " + type
+                                              + ", the maximum is " + maxMessageLength);
+               }
+               assembly = new Assembly(type, messageLength);
+               assemblies.put(type, assembly);
+            } else if (assembly.data.length != messageLength) {
+               throw new IOException("Chunk of a message of type " + type + " with length " + messageLength
+                                           + " received while a message with length " + assembly.data.length + " is incomplete");
+            }
+            if (chunkLength < 0 || chunkLength > messageLength - assembly.filled) {
+               throw new IOException("Invalid chunk length " + chunkLength + " for " + assembly);
+            }
+            currentChunk = assembly;
+            chunkRemaining = chunkLength;
+         }
+         int length = Math.min(chunkRemaining, readBuffer.remaining());
+         readBuffer.get(currentChunk.data, currentChunk.filled, length);
+         currentChunk.filled += length;
+         chunkRemaining -= length;
+         if (chunkRemaining > 0) {
+            return;
+         }
+         if (currentChunk.filled == currentChunk.data.length) {
+            assemblies.remove(currentChunk.type);
+            received.add(new Message(currentChunk.type, currentChunk.data));
+         }
+         currentChunk = null;
+      }
+   }
+
+   /**
+    * @return the next completely received message, or null
+    */
+   public Message poll() {
+      return received.poll();
+   }
+
+   /**
+    * Closes the socket and returns the buffers to the pool.
+    */
+   public void close() throws IOException {
+      try {
+         channel.close();
+      } finally {
+         if (readBuffer != null) {
+            pool.release(readBuffer);
+            readBuffer = null;
+         }
+         for (int i = 0; i < inFlightCount; i++) {
+            if (inFlightPooled[i]) {
+               pool.release(inFlight[i]);
+            }
+            inFlight[i] = null;
+         }
+         inFlightCount = 0;
+         outgoing.clear();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "MessageChannel{" +
+            "channel=" + channel +
+            ", queued=" + outgoing.size() +
+            ", received=" + received.size() +
+            '}';
+   }
+
+   /**
+    * A message received in full.
+    */
+   public static class Message {
+      private final byte type;
+      private final byte[] data;
+
+      public Message(byte type, byte[] data) {
+         this.type = type;
+         this.data = data;
+      }
+
+      public byte getType() {
+         return type;
+      }
+
+      public byte[] getData() {
+         return data;
+      }
+
+      /**
+       * @return the object encoded by {@link BinaryCodec}
+       */
+      public Object decode() throws IOException {
+         return BinaryCodec.decode(data, 0, data.length);
+      }
+
+      @Override
+      public String toString() {
+         return "Message{type=" + type + ", length=" + data.length + '}';
+      }
+   }
+
+   private static class Outgoing {
+      private final byte type;
+      private final byte[] data;
+      private final int offset;
+      private final int length;
+      // the rest of the message after data, if the message is shared
+      private final ByteBuffer shared;
+      private int sent;
+
+      private Outgoing(byte type, byte[] data, int offset, int length) {
+         this.type = type;
+         this.data = data;
+         this.offset = offset;
+         this.length = length;
+         this.shared = null;
+      }
+
+      private Outgoing(byte type, byte[] prefix, ByteBuffer shared) {
+         this.type = type;
+         this.data = prefix;
+         this.offset = 0;
+         this.length = prefix.length + shared.remaining();
+         this.shared = shared;
+      }
+
+      private int remaining() {
+         return length - sent;
+      }
+   }
+
+   private static class Assembly {
+      private final byte type;
+      private final byte[] data;
+      private int filled;
+
+      private Assembly(byte type, int length) {
+         this.type = type;
+         this.data = new byte[length];
+      }
+
+      @Override
+      public String toString() {
+         return "Assembly{type=" + type + ", length=" + data.length + ", filled=" + filled + '}';
+      }
+   }
+}
@@ -3,6 +3,7 @@ package org.radargun.stages;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,8 +32,21 @@ public abstract class AbstractDistStage implements DistStage {
 
    protected boolean exitBenchmarkOnSlaveFailure = false;
 
+   /**
+    * Stage timeout of the stages that don't set one. A stage always has a limit: a slave whose stage hangs keeps
+    * sending heartbeats, so it would hold the benchmark forever otherwise.
+    */
+   public static final long DEFAULT_STAGE_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+   /**
+    * If positive, the slaves which don't finish the stage within this time are considered failed. Otherwise
+    * {@link #getDefaultStageTimeoutMillis()} applies.
+    */
+   private long stageTimeoutMillis = -1;
+
    protected int slaveIndex;
    private int activeSlavesCount;
+   private List<Integer> activeSlaveIndexes;
    private int totalSlavesCount;
    private boolean runOnAllSlaves;
    private boolean useSmartClassLoading = true;
@@ -42,9 +56,8 @@ public abstract class AbstractDistStage implements DistStage {
       this.slaveState = slaveState;
    }
 
-   public void initOnMaster(MasterState masterState, int slaveIndex) {
+   public void initOnMaster(MasterState masterState) {
       this.masterConfig = masterState.getConfig();
-      this.slaveIndex = slaveIndex;
       assert masterConfig != null;
       this.totalSlavesCount = masterState.getConfig().getSlaveCount();
       if (isRunOnAllSlaves()) {
@@ -70,6 +83,21 @@ public abstract class AbstractDistStage implements DistStage {
       this.exitBenchmarkOnSlaveFailure = exitOnFailure;
    }
 
+   public long getStageTimeoutMillis() {
+      return stageTimeoutMillis > 0 ? stageTimeoutMillis : getDefaultStageTimeoutMillis();
+   }
+
+   /**
+    * @return the stage timeout used when none is configured, stages that run for a given time should add it
+    */
+   protected long getDefaultStageTimeoutMillis() {
+      return DEFAULT_STAGE_TIMEOUT_MILLIS;
+   }
+
+   public void setStageTimeout(String stageTimeout) {
+      this.stageTimeoutMillis = Utils.string2Millis(stageTimeout);
+   }
+
    protected DefaultDistStageAck newDefaultStageAck() {
       return new DefaultDistStageAck(getSlaveIndex(), slaveState.getLocalAddress());
    }
@@ -124,10 +152,32 @@ public abstract class AbstractDistStage implements DistStage {
       return slaveIndex;
    }
 
+   public List<Integer> getActiveSlaveIndexes() {
+      return activeSlaveIndexes;
+   }
+
+   public void setActiveSlaveIndexes(List<Integer> activeSlaveIndexes) {
+      this.activeSlaveIndexes = activeSlaveIndexes;
+   }
+
+   /**
+    * @return position of this slave among the slaves running the stage, from 0 to activeSlavesCount - 1. Unlike the
+    *         slave index, it changes when slaves leave the cluster: use it to split work among the slaves, and the
+    *         slave index to tell the slaves apart
+    */
+   public int getSlavePosition() {
+      return activeSlaveIndexes == null ? slaveIndex : activeSlaveIndexes.indexOf(slaveIndex);
+   }
+
+   public void setSlaveIndex(int slaveIndex) {
+      this.slaveIndex = slaveIndex;
+   }
+
    @Override
    public String toString() {
       return "productName='" + productName + "', useSmartClassLoading=" + useSmartClassLoading + ", slaveIndex="
-            + slaveIndex + ", activeSlavesCount=" + activeSlavesCount + ", totalSlavesCount=" + totalSlavesCount
+            + slaveIndex + ", activeSlavesCount=" + activeSlavesCount + ", activeSlaveIndexes=" + activeSlaveIndexes
+            + ", totalSlavesCount=" + totalSlavesCount
             + (slaves == null ? "}" : ", slaves=" + slaves + "}");
    }
 
@@ -5,6 +5,7 @@ import org.radargun.DistStageAck;
 import org.radargun.state.MasterState;
 import org.radargun.utils.Utils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -65,7 +66,7 @@ public class ClusterValidationStage extends AbstractDistStage {
 
    private int confirmReplication() throws Exception {
       wrapper.put(nodeBucket(getSlaveIndex()), confirmationKey(getSlaveIndex()), "true");
-      for (int i = 0; i < getActiveSlaveCount(); i++) {
+      for (int i : slaveIndexes()) {
          for (int j = 0; j < 10 && (wrapper.get(nodeBucket(i), confirmationKey(i)) == null); j++) {
             tryToPut();
             wrapper.put(nodeBucket(getSlaveIndex()), confirmationKey(getSlaveIndex()), "true");
@@ -151,9 +152,8 @@ public class ClusterValidationStage extends AbstractDistStage {
    }
 
    private int replicationCount() throws Exception {
-      int clusterSize = getActiveSlaveCount();
       int replicaCount = 0;
-      for (int i = 0; i < clusterSize; i++) {
+      for (int i : slaveIndexes()) {
          int currentSlaveIndex = getSlaveIndex();
          if (i == currentSlaveIndex) {
             continue;
@@ -171,6 +171,20 @@ public class ClusterValidationStage extends AbstractDistStage {
    }
 
 
+   /**
+    * @return the indexes of the slaves running the stage, they have gaps if some slaves have left the cluster
+    */
+   private List<Integer> slaveIndexes() {
+      if (getActiveSlaveIndexes() != null) {
+         return getActiveSlaveIndexes();
+      }
+      List<Integer> indexes = new ArrayList<Integer>();
+      for (int i = 0; i < getActiveSlaveCount(); i++) {
+         indexes.add(i);
+      }
+      return indexes;
+   }
+
    private Object tryGet(int i) throws Exception {
       int tryCont = 0;
       while (tryCont < 5) {
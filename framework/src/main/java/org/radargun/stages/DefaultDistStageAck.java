@@ -1,7 +1,11 @@
 package org.radargun.stages;
 
 import org.radargun.DistStageAck;
+import org.radargun.protocol.BinaryExternalizer;
+import org.radargun.protocol.BinaryInput;
+import org.radargun.protocol.BinaryOutput;
 
+import java.io.IOException;
 import java.net.InetAddress;
 
 /**
@@ -93,4 +97,31 @@ public class DefaultDistStageAck implements DistStageAck {
    public long getDuration() {
       return duration;
    }
+
+   /**
+    * Binary form used by {@link org.radargun.protocol.BinaryCodec}.
+    */
+   public static class Externalizer implements BinaryExternalizer<DefaultDistStageAck> {
+      public void writeObject(BinaryOutput output, DefaultDistStageAck ack) throws IOException {
+         output.writeVarInt(ack.slaveIndex);
+         output.writeBytes(ack.slaveAddress == null ? null : ack.slaveAddress.getAddress());
+         output.writeBoolean(ack.isError);
+         output.writeString(ack.errorMessage);
+         output.writeVarLong(ack.duration);
+         output.writeString(ack.remoteExceptionString);
+         output.writeObject(ack.payload);
+      }
+
+      public DefaultDistStageAck readObject(BinaryInput input) throws IOException {
+         int slaveIndex = input.readVarInt();
+         byte[] address = input.readBytes();
+         DefaultDistStageAck ack = new DefaultDistStageAck(slaveIndex, address == null ? null : InetAddress.getByAddress(address));
+         ack.isError = input.readBoolean();
+         ack.errorMessage = input.readString();
+         ack.duration = input.readVarLong();
+         ack.remoteExceptionString = input.readString();
+         ack.payload = input.readObject();
+         return ack;
+      }
+   }
 }
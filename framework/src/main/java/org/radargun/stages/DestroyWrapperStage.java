@@ -7,7 +7,9 @@ import org.radargun.state.MasterState;
 import org.radargun.stressors.BackgroundStats;
 import org.radargun.utils.Utils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.radargun.utils.Utils.*;
 
@@ -21,7 +23,8 @@ public class DestroyWrapperStage extends AbstractDistStage {
 
    private boolean enforceMemoryThrashHold = true;
 
-   private Long initialFreeMemoryKb;
+   // of all the slaves, by slave index
+   private Map<Integer, Long> initialFreeMemoryKb = new HashMap<Integer, Long>();
 
    private byte memoryThreshold = 95;
 
@@ -29,9 +32,14 @@ public class DestroyWrapperStage extends AbstractDistStage {
    }
 
    @Override
-   public void initOnMaster(MasterState masterState, int slaveIndex) {
-      super.initOnMaster(masterState, slaveIndex);
-      this.initialFreeMemoryKb = (Long) masterState.get(FREEMEM_KB + "_" +  getSlaveIndex());
+   public void initOnMaster(MasterState masterState) {
+      super.initOnMaster(masterState);
+      for (int i = 0; i < masterState.getConfig().getSlaveCount(); i++) {
+         Long freeMemoryKb = (Long) masterState.get(FREEMEM_KB + "_" + i);
+         if (freeMemoryKb != null) {
+            initialFreeMemoryKb.put(i, freeMemoryKb);
+         }
+      }
    }
 
    public DistStageAck executeOnSlave() {
@@ -73,7 +81,7 @@ public class DestroyWrapperStage extends AbstractDistStage {
    }
 
    private boolean notFirstRun() {
-      return initialFreeMemoryKb != null;
+      return initialFreeMemoryKb.containsKey(getSlaveIndex());
    }
 
 
@@ -113,11 +121,11 @@ public class DestroyWrapperStage extends AbstractDistStage {
          freeMemory = getFreeMemoryKb();
          // initialFreeMemoryKb  ... 100%
          // freeMemory           ... x% (actualPercentage)
-         actualPercentage = (freeMemory * 100) / initialFreeMemoryKb;
+         actualPercentage = (freeMemory * 100) / initialFreeMemoryKb.get(getSlaveIndex());
          if (actualPercentage >= memoryThreshold) break;
          Utils.seep(1000);
       }
-      log.info("Free memory: " + memString(freeMemory, "kb") + " (" + actualPercentage + "% from the initial free memory - " + memString(initialFreeMemoryKb, "kb") + ")");
+      log.info("Free memory: " + memString(freeMemory, "kb") + " (" + actualPercentage + "% from the initial free memory - " + memString(initialFreeMemoryKb.get(getSlaveIndex()), "kb") + ")");
       if (actualPercentage < memoryThreshold) {
          String msg = "Actual percentage of memory smaller than expected!";
          log.error(msg);
@@ -12,6 +12,7 @@ import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -43,12 +44,19 @@ public class GenerateChartStage extends AbstractMasterStage {
    protected Map<String, List<Pattern>> compiledFilters = null;
    ClusterReport putReport = new LineClusterReport();
    ClusterReport getReport = new LineClusterReport();
+   ClusterReport putLatencyReport = new LineClusterReport();
+   ClusterReport getLatencyReport = new LineClusterReport();
+   private boolean hasLatencyData = false;
 
    public boolean execute() throws Exception {
       putReport.setReportFile(reportDirectory, fnPrefix + "_PUT");
       putReport.init(X_LABEL, "PUT ops/sec on each cache instance", "Average PUT per cache instance", getSubtitle());
       getReport.setReportFile(reportDirectory, fnPrefix + "_GET");
       getReport.init(X_LABEL, "GET ops/sec on each cache instance", "Average GET per cache instance", getSubtitle());
+      putLatencyReport.setReportFile(reportDirectory, fnPrefix + "_PUT_P99");
+      putLatencyReport.init(X_LABEL, "PUT 99th percentile latency (ms)", "Highest PUT p99 latency among cache instances", getSubtitle());
+      getLatencyReport.setReportFile(reportDirectory, fnPrefix + "_GET_P99");
+      getLatencyReport.init(X_LABEL, "GET 99th percentile latency (ms)", "Highest GET p99 latency among cache instances", getSubtitle());
 
       File[] files = getFilteredFiles(new File(csvFilesDirectory));
       for (File f : files) {
@@ -57,6 +65,10 @@ public class GenerateChartStage extends AbstractMasterStage {
 
       putReport.generate();
       getReport.generate();
+      if (hasLatencyData) {
+         putLatencyReport.generate();
+         getLatencyReport.generate();
+      }
       return true;
    }
 
@@ -81,7 +93,11 @@ public class GenerateChartStage extends AbstractMasterStage {
       BufferedReader br = new BufferedReader(new FileReader(f));
       long avgPutPerSec = 0, avgGetsPerSec = 0;
       Stats s = null;
-      br.readLine(); //this is the header
+      String header = br.readLine();
+      List<String> columns = header == null ? new ArrayList<String>() : Arrays.asList(header.split(","));
+      int putP99Column = columns.indexOf("WRITE_P99_NANOS");
+      int getP99Column = columns.indexOf("READ_P99_NANOS");
+      long maxPutP99 = 0, maxGetP99 = 0;
       while ((line = br.readLine()) != null) {
          s = getAveragePutAndGet(line);
          log.debug("Read stats " + s);
@@ -89,6 +105,15 @@ public class GenerateChartStage extends AbstractMasterStage {
             avgPutPerSec += s.putsPerSec;
             avgGetsPerSec += s.getsPerSec;
          }
+         if (putP99Column > 0 && getP99Column > 0) {
+            String[] values = line.split(",");
+            try {
+               maxPutP99 = Math.max(maxPutP99, Long.parseLong(values[putP99Column]));
+               maxGetP99 = Math.max(maxGetP99, Long.parseLong(values[getP99Column]));
+            } catch (RuntimeException e) {
+               log.error("Unable to parse latency percentiles from line: " + line, e);
+            }
+         }
       }
       br.close();
       avgGetsPerSec = avgGetsPerSec / clusterSize;
@@ -97,6 +122,11 @@ public class GenerateChartStage extends AbstractMasterStage {
       String name = productName + "(" + configName + ")";
       putReport.addCategory(name, clusterSize, avgPutPerSec);
       getReport.addCategory(name, clusterSize, avgGetsPerSec);
+      if (putP99Column > 0 && getP99Column > 0) {
+         hasLatencyData = true;
+         putLatencyReport.addCategory(name, clusterSize, maxPutP99 / 1000000.0);
+         getLatencyReport.addCategory(name, clusterSize, maxGetP99 / 1000000.0);
+      }
    }
 
    private Stats getAveragePutAndGet(String line) {
@@ -3,7 +3,6 @@ package org.radargun.stages;
 import org.radargun.CacheWrapper;
 import org.radargun.DistStageAck;
 import org.radargun.Killable;
-import org.radargun.state.MasterState;
 import org.radargun.stressors.BackgroundStats;
 
 /**
@@ -21,11 +20,6 @@ public class KillStage extends AbstractDistStage {
       // nada
    }
 
-   @Override
-   public void initOnMaster(MasterState masterState, int slaveIndex) {
-      super.initOnMaster(masterState, slaveIndex);
-   }
-
    public DistStageAck executeOnSlave() {
       log.info("Received kill request from master...");
       DefaultDistStageAck ack = newDefaultStageAck();
@@ -31,6 +31,7 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
    private int chartWidth = 800;
    private int chartHeight = 600;
    private boolean generateIntervalTimeData = false;
+   private boolean alignByTime = true;
 
    public boolean execute() {
       @SuppressWarnings("unchecked")
@@ -47,6 +48,9 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
          log.error("We're missing statistics from some slaves");
          return false;
       }
+      if (alignByTime) {
+         results = alignByTime(results);
+      }
       try {
          File reportDir = new File(targetDir);
          if (!reportDir.exists() && !reportDir.mkdirs()) {
@@ -165,6 +169,58 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
       }
    }
 
+   private List<List<Stats>> alignByTime(List<List<Stats>> results) {
+      List<Integer> slaveIndexes = getSlaveIndexes();
+      long[] clockOffsets = new long[results.size()];
+      for (int i = 0; i < results.size(); i++) {
+         clockOffsets[i] = masterState.getClockOffset(slaveIndexes.get(i));
+      }
+      return alignByTime(results, clockOffsets);
+   }
+
+   /**
+    * Converts the times of the statistics to the master's clock and lines them up by time instead of by index: row i
+    * holds the interval of each slave whose middle falls into the i-th period since the earliest start, the period
+    * being the median interval duration. Intervals of a slave falling into the same period, e.g. because of jitter, are
+    * merged. Intervals a slave doesn't have, e.g. because it started later, are null.
+    */
+   public static List<List<Stats>> alignByTime(List<List<Stats>> results, long[] clockOffsets) {
+      List<List<Stats>> shifted = new ArrayList<List<Stats>>(results.size());
+      List<Long> durations = new ArrayList<Long>();
+      long start = Long.MAX_VALUE;
+      for (int slaveIndex = 0; slaveIndex < results.size(); slaveIndex++) {
+         List<Stats> slaveStats = new ArrayList<Stats>(results.get(slaveIndex).size());
+         for (Stats stats : results.get(slaveIndex)) {
+            if (stats == null) continue;
+            Stats inMasterTime = stats.shift(clockOffsets[slaveIndex]);
+            slaveStats.add(inMasterTime);
+            durations.add(inMasterTime.getDuration());
+            start = Math.min(start, inMasterTime.getIntervalBeginTime());
+         }
+         shifted.add(slaveStats);
+      }
+      if (durations.isEmpty()) {
+         return shifted;
+      }
+      Collections.sort(durations);
+      long period = Math.max(durations.get(durations.size() / 2), 1);
+      List<List<Stats>> aligned = new ArrayList<List<Stats>>(shifted.size());
+      for (List<Stats> slaveStats : shifted) {
+         List<Stats> alignedStats = new ArrayList<Stats>();
+         for (Stats stats : slaveStats) {
+            long middle = (stats.getIntervalBeginTime() + stats.getIntervalEndTime()) / 2;
+            int index = (int) ((middle - start) / period);
+            while (alignedStats.size() <= index) {
+               alignedStats.add(null);
+            }
+            Stats previous = alignedStats.get(index);
+            alignedStats.set(index, previous == null ? stats : previous.mergeWithNext(stats));
+         }
+         aligned.add(alignedStats);
+      }
+      return aligned;
+   }
+
    private String replaceExtension(String filename, String newExtension) {
       if (filename == null) {
          return null;
@@ -182,10 +238,26 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
             .format(val);
    }
 
+   /**
+    * @return the indexes of the slaves, in the order of the results; they have gaps if some slaves have left the
+    *         cluster
+    */
+   private List<Integer> getSlaveIndexes() {
+      @SuppressWarnings("unchecked")
+      List<Integer> slaveIndexes = (List<Integer>) masterState.get(BackgroundStats.SLAVE_INDEXES);
+      if (slaveIndexes == null) {
+         slaveIndexes = new ArrayList<Integer>();
+         for (int i = 0; i < masterState.getSlavesCountForCurrentStage(); i++) {
+            slaveIndexes.add(i);
+         }
+      }
+      return slaveIndexes;
+   }
+
    private List<String> getSlaveNames() {
       List<String> result = new ArrayList<String>();
-      for (int i = 0; i < masterState.getSlavesCountForCurrentStage(); i++) {
-         result.add("slave" + i);
+      for (int slaveIndex : getSlaveIndexes()) {
+         result.add("slave" + slaveIndex);
       }
       return result;
    }
@@ -205,7 +277,7 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
          for (int j = 0; j < results.size(); j++) {
             w.print(CSVChart.SEPARATOR);
             List<Stats> statList = results.get(j);
-            if (i < statList.size()) {
+            if (i < statList.size() && statList.get(i) != null) {
                w.print(getter.getStat(statList.get(i)));
             } else {
                w.print(CSVChart.NULL);
@@ -234,7 +306,8 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
          for (int j = 0; j < results.size(); j++) {
             w.print(CSVChart.SEPARATOR);
             List<Stats> statList = results.get(j);
-            if (i < statList.size() && statList.get(i).getCacheSize() != -1 && statList.get(i).isNodeUp()) {
+            if (i < statList.size() && statList.get(i) != null && statList.get(i).getCacheSize() != -1
+                  && statList.get(i).isNodeUp()) {
                w.print(statList.get(i).getCacheSize());
                row.add(statList.get(i));
             } else {
@@ -284,7 +357,7 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
          rowAll.clear();
          for (int j = 0; j < results.size(); j++) {
             List<Stats> statList = results.get(j);
-            if (i < statList.size()) {
+            if (i < statList.size() && statList.get(i) != null) {
                if (statList.get(i).isNodeUp()) {
                   row.add(statList.get(i));
                }
@@ -350,4 +423,12 @@ public class ReportBackgroundStatsStage extends AbstractMasterStage {
    public void setGenerateIntervalTimeData(boolean generateIntervalTimeData) {
       this.generateIntervalTimeData = generateIntervalTimeData;
    }
+
+   /**
+    * @param alignByTime if true (default), the intervals of the slaves are lined up by their time in the master's
+    *                    clock, otherwise by their order
+    */
+   public void setAlignByTime(boolean alignByTime) {
+      this.alignByTime = alignByTime;
+   }
 }
@@ -0,0 +1,169 @@
+package org.radargun.stages;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.radargun.reporting.CSVChart;
+import org.radargun.stressors.IntervalStats;
+
+/**
+ * Generates time series reports from the per-interval statistics of the last WebSessionBenchmark stage: throughput,
+ * 99th percentile latencies and failures of each slave for each interval, as CSV files and charts.
+ * <pre>
+ * - targetDir - where the reports are written. Defaults to 'reports'
+ * </pre>
+ */
+public class ReportIntervalStatsStage extends AbstractMasterStage {
+
+   private String targetDir = "reports";
+   private int chartWidth = 800;
+   private int chartHeight = 600;
+
+   public boolean execute() {
+      @SuppressWarnings("unchecked")
+      Map<Integer, List<IntervalStats>> results = (Map<Integer, List<IntervalStats>>) masterState.get(WebSessionBenchmarkStage.INTERVAL_STATS);
+      if (results == null) {
+         log.error("Could not find interval statistics on the master. Master's state is  " + masterState);
+         return false;
+      }
+      if (results.size() == 0) {
+         log.warn("Nothing to report!");
+         return false;
+      }
+      try {
+         File subdir = new File(targetDir, masterState.nameOfTheCurrentBenchmark() + "_"
+               + masterState.configNameOfTheCurrentBenchmark() + "_" + results.size() + "_intervals");
+         if (!subdir.exists() && !subdir.mkdirs()) {
+            log.error("Couldn't create directory " + subdir.getAbsolutePath());
+            return false;
+         }
+         List<Integer> slaveIndexes = new ArrayList<Integer>(results.keySet());
+         Collections.sort(slaveIndexes);
+         List<String> slaveNames = new ArrayList<String>();
+         for (Integer slaveIndex : slaveIndexes) {
+            slaveNames.add("slave" + slaveIndex);
+         }
+
+         File csvThroughput = new File(subdir, "throughput.csv");
+         File csvReadP99 = new File(subdir, "read-p99.csv");
+         File csvWriteP99 = new File(subdir, "write-p99.csv");
+         File csvFailures = new File(subdir, "failures.csv");
+
+         generateCsv(csvThroughput, results, slaveIndexes, slaveNames, true, new StatGetter() {
+            public double getStat(IntervalStats stats) {
+               return stats.getThroughput();
+            }
+         });
+         generateCsv(csvReadP99, results, slaveIndexes, slaveNames, false, new StatGetter() {
+            public double getStat(IntervalStats stats) {
+               return stats.getReadP99() / 1000000.0;
+            }
+         });
+         generateCsv(csvWriteP99, results, slaveIndexes, slaveNames, false, new StatGetter() {
+            public double getStat(IntervalStats stats) {
+               return stats.getWriteP99() / 1000000.0;
+            }
+         });
+         generateCsv(csvFailures, results, slaveIndexes, slaveNames, true, new StatGetter() {
+            public double getStat(IntervalStats stats) {
+               return stats.getFailures();
+            }
+         });
+
+         List<String> throughputColumns = new ArrayList<String>(slaveNames);
+         throughputColumns.add("Total");
+         CSVChart.writeCSVAsChart("Throughput over time", "Time (s)", "Throughput (ops/sec)",
+               csvThroughput.getAbsolutePath(), CSVChart.SEPARATOR, "Time", throughputColumns, chartWidth,
+               chartHeight, replaceExtension(csvThroughput.getAbsolutePath(), "png"));
+         CSVChart.writeCSVAsChart("GET 99th percentile latency over time", "Time (s)", "Latency (ms)",
+               csvReadP99.getAbsolutePath(), CSVChart.SEPARATOR, "Time", slaveNames, chartWidth,
+               chartHeight, replaceExtension(csvReadP99.getAbsolutePath(), "png"));
+         CSVChart.writeCSVAsChart("PUT 99th percentile latency over time", "Time (s)", "Latency (ms)",
+               csvWriteP99.getAbsolutePath(), CSVChart.SEPARATOR, "Time", slaveNames, chartWidth,
+               chartHeight, replaceExtension(csvWriteP99.getAbsolutePath(), "png"));
+         return true;
+      } catch (Exception e) {
+         log.error("Error while generating interval statistics reports", e);
+         return false;
+      }
+   }
+
+   /**
+    * Writes one row per interval and one column per slave. Time is the number of seconds since the start of the
+    * test, based on the length of the first interval.
+    */
+   private void generateCsv(File file, Map<Integer, List<IntervalStats>> results, List<Integer> slaveIndexes,
+                            List<String> slaveNames, boolean addTotal, StatGetter getter) throws Exception {
+      int maxResultSize = 0;
+      long intervalMillis = 0;
+      for (List<IntervalStats> slaveResults : results.values()) {
+         maxResultSize = Math.max(maxResultSize, slaveResults.size());
+         if (intervalMillis == 0 && !slaveResults.isEmpty()) {
+            intervalMillis = slaveResults.get(0).getDurationMillis();
+         }
+      }
+      PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+      w.print("Time");
+      for (String slaveName : slaveNames) {
+         w.print(CSVChart.SEPARATOR);
+         w.print(slaveName);
+      }
+      if (addTotal) {
+         w.print(CSVChart.SEPARATOR);
+         w.print("Total");
+      }
+      w.println();
+      for (int i = 0; i < maxResultSize; i++) {
+         w.print(ReportBackgroundStatsStage.NUMFORMAT.format(i * intervalMillis / 1000.0));
+         double total = 0;
+         for (Integer slaveIndex : slaveIndexes) {
+            w.print(CSVChart.SEPARATOR);
+            List<IntervalStats> slaveResults = results.get(slaveIndex);
+            if (i < slaveResults.size()) {
+               double stat = getter.getStat(slaveResults.get(i));
+               total += stat;
+               w.print(ReportBackgroundStatsStage.NUMFORMAT.format(stat));
+            } else {
+               w.print(CSVChart.NULL);
+            }
+         }
+         if (addTotal) {
+            w.print(CSVChart.SEPARATOR);
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(total));
+         }
+         w.println();
+      }
+      w.close();
+   }
+
+   private String replaceExtension(String filename, String newExtension) {
+      int dotIndex = filename.lastIndexOf(".");
+      if (dotIndex == -1) {
+         return filename + newExtension;
+      } else {
+         return filename.substring(0, dotIndex + 1) + newExtension;
+      }
+   }
+
+   private interface StatGetter {
+      double getStat(IntervalStats stats);
+   }
+
+   public void setTargetDir(String targetDir) {
+      this.targetDir = targetDir;
+   }
+
+   public void setChartHeight(int chartHeight) {
+      this.chartHeight = chartHeight;
+   }
+
+   public void setChartWidth(int chartWidth) {
+      this.chartWidth = chartWidth;
+   }
+}
@@ -0,0 +1,94 @@
+package org.radargun.stages;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.radargun.ClusterProgress;
+import org.radargun.reporting.CSVChart;
+
+/**
+ * Writes the cluster-wide progress that the slaves streamed to the master during the last stage reporting any (e.g.
+ * WebSessionBenchmark with progressInterval set): one row per progress report, as a CSV file and a throughput chart.
+ * <pre>
+ * - targetDir - where the reports are written. Defaults to 'reports'
+ * </pre>
+ */
+public class ReportProgressStage extends AbstractMasterStage {
+
+   private String targetDir = "reports";
+   private int chartWidth = 800;
+   private int chartHeight = 600;
+
+   public boolean execute() {
+      @SuppressWarnings("unchecked")
+      List<ClusterProgress.Row> rows = (List<ClusterProgress.Row>) masterState.get(ClusterProgress.PROGRESS);
+      if (rows == null || rows.isEmpty()) {
+         log.warn("No progress was reported to the master, nothing to report!");
+         return false;
+      }
+      try {
+         File subdir = new File(targetDir, masterState.nameOfTheCurrentBenchmark() + "_"
+               + masterState.configNameOfTheCurrentBenchmark() + "_" + rows.get(0).getSlaveCount() + "_progress");
+         if (!subdir.exists() && !subdir.mkdirs()) {
+            log.error("Couldn't create directory " + subdir.getAbsolutePath());
+            return false;
+         }
+         File csv = new File(subdir, "progress.csv");
+         PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(csv), "UTF-8"));
+         String[] columns = {"Time", "Stage", "SlavesReporting", "Throughput", "Operations", "Failures",
+                             "GetP99Millis", "GetMaxMillis", "PutP99Millis", "PutMaxMillis"};
+         for (int i = 0; i < columns.length; i++) {
+            if (i > 0) w.print(CSVChart.SEPARATOR);
+            w.print(columns[i]);
+         }
+         w.println();
+         for (ClusterProgress.Row row : rows) {
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(row.getElapsedMillis() / 1000.0));
+            w.print(CSVChart.SEPARATOR);
+            w.print(row.getStage());
+            w.print(CSVChart.SEPARATOR);
+            w.print(row.getSlavesReporting());
+            w.print(CSVChart.SEPARATOR);
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(row.getThroughput()));
+            w.print(CSVChart.SEPARATOR);
+            w.print(row.getOps());
+            w.print(CSVChart.SEPARATOR);
+            w.print(row.getFailures());
+            w.print(CSVChart.SEPARATOR);
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(row.getReadP99() / 1000000.0));
+            w.print(CSVChart.SEPARATOR);
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(row.getReadMax() / 1000000.0));
+            w.print(CSVChart.SEPARATOR);
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(row.getWriteP99() / 1000000.0));
+            w.print(CSVChart.SEPARATOR);
+            w.print(ReportBackgroundStatsStage.NUMFORMAT.format(row.getWriteMax() / 1000000.0));
+            w.println();
+         }
+         w.close();
+         String png = csv.getAbsolutePath().substring(0, csv.getAbsolutePath().length() - "csv".length()) + "png";
+         CSVChart.writeCSVAsChart("Cluster throughput over time", "Time (s)", "Throughput (ops/sec)",
+               csv.getAbsolutePath(), CSVChart.SEPARATOR, "Time", Arrays.asList("Throughput"), chartWidth,
+               chartHeight, png);
+         return true;
+      } catch (Exception e) {
+         log.error("Error while generating progress report", e);
+         return false;
+      }
+   }
+
+   public void setTargetDir(String targetDir) {
+      this.targetDir = targetDir;
+   }
+
+   public void setChartHeight(int chartHeight) {
+      this.chartHeight = chartHeight;
+   }
+
+   public void setChartWidth(int chartWidth) {
+      this.chartWidth = chartWidth;
+   }
+}
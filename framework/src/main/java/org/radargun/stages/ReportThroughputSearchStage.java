@@ -0,0 +1,83 @@
+package org.radargun.stages;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import org.radargun.utils.ThroughputSearch;
+import org.radargun.utils.Utils;
+
+/**
+ * Reports the result of the last ThroughputSearch stage, in the throughput_search subdirectory of targetDir (so that
+ * the files are not mistaken for benchmark results by GenerateChart). Each rate that was tried is written to
+ * &lt;product&gt;_&lt;config&gt;_&lt;size&gt;.csv, and a line with the maximum sustainable throughput and the knee of
+ * the throughput/latency curve is appended to summary.csv, which collects the results of all the products and
+ * cluster sizes.
+ * <pre>
+ * - targetDir - where the reports are written. Defaults to 'reports'
+ * - separator - column separator. Defaults to ','
+ * </pre>
+ */
+public class ReportThroughputSearchStage extends AbstractMasterStage {
+
+   private static final String SUBDIR = "throughput_search";
+   private static final String SUMMARY_FILE = "summary.csv";
+
+   private String targetDir = "reports";
+   private String separator = ",";
+
+   public boolean execute() {
+      ThroughputSearch search = (ThroughputSearch) masterState.get(ThroughputSearchStage.THROUGHPUT_SEARCH);
+      @SuppressWarnings("unchecked")
+      Map<Integer, Map<String, Object>> results = (Map<Integer, Map<String, Object>>) masterState.get("results");
+      if (search == null || results == null) {
+         log.error("Could not find the throughput search results on the master. Master's state is  " + masterState);
+         return false;
+      }
+      // don't report the same search again for the next cluster size if that one fails
+      masterState.remove(ThroughputSearchStage.THROUGHPUT_SEARCH);
+      try {
+         File parentDir = new File(targetDir, SUBDIR);
+         if (!parentDir.exists() && !parentDir.mkdirs()) {
+            log.warn("Issues creating parent dir " + parentDir);
+         }
+         String product = masterState.nameOfTheCurrentBenchmark();
+         String config = masterState.configNameOfTheCurrentBenchmark();
+         int clusterSize = results.size();
+
+         File stepsFile = Utils.createOrReplaceFile(parentDir, product + "_" + config + "_" + clusterSize + ".csv");
+         PrintWriter steps = new PrintWriter(new OutputStreamWriter(new FileOutputStream(stepsFile), "UTF-8"));
+         steps.println("TARGET_REQ_PER_SEC" + separator + "ACTUAL_REQ_PER_SEC" + separator + "LATENCY_NANOS" + separator + "WITHIN_SLO");
+         for (ThroughputSearch.Step step : search.getSteps()) {
+            steps.println(step.getTargetRate() + separator + step.getActualRate() + separator + step.getLatency() + separator + step.isWithinSlo());
+         }
+         steps.close();
+
+         File summaryFile = new File(parentDir, SUMMARY_FILE);
+         boolean newFile = !summaryFile.exists();
+         PrintWriter summary = new PrintWriter(new OutputStreamWriter(new FileOutputStream(summaryFile, true), "UTF-8"));
+         if (newFile) {
+            summary.println("PRODUCT" + separator + "CONFIG" + separator + "CLUSTER_SIZE" + separator + "MAX_SUSTAINABLE_REQ_PER_SEC"
+                                  + separator + "KNEE_REQ_PER_SEC" + separator + "KNEE_LATENCY_NANOS");
+         }
+         ThroughputSearch.Step knee = search.getKnee();
+         summary.println(product + separator + config + separator + clusterSize + separator + search.getMaxSustainableRate()
+                               + separator + (knee == null ? 0 : knee.getActualRate()) + separator + (knee == null ? 0 : knee.getLatency()));
+         summary.close();
+         return true;
+      } catch (Exception e) {
+         log.error("Error while generating throughput search reports", e);
+         return false;
+      }
+   }
+
+   public void setTargetDir(String targetDir) {
+      this.targetDir = targetDir;
+   }
+
+   public void setSeparator(String separator) {
+      this.separator = separator;
+   }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.radargun.DistStageAck;
 import org.radargun.stressors.BackgroundStats;
+import org.radargun.stressors.ValueSizeDistribution;
 
 /**
  * 
@@ -18,6 +19,7 @@ public class StartBackgroundStatsStage extends AbstractDistStage {
    private int gets = 2;
    private int numEntries = 1024;
    private int entrySize = 1024;
+   private String entrySizeDistribution;
    private int numThreads = 10;
    private int transactionSize = -1;
    private long delayBetweenRequests;
@@ -34,8 +36,11 @@ public class StartBackgroundStatsStage extends AbstractDistStage {
          BackgroundStats bgStats = (BackgroundStats) slaveState.get(BackgroundStats.NAME);
          if (bgStats == null) {
             bgStats = new BackgroundStats(puts, gets, numEntries, entrySize, numThreads, slaveState,
-                  delayBetweenRequests, getActiveSlaveCount(), getSlaveIndex(), statsIterationDuration,
+                  delayBetweenRequests, getActiveSlaveCount(), getSlavePosition(), statsIterationDuration,
                   transactionSize, loadDataForDeadSlaves);
+            if (entrySizeDistribution != null) {
+               bgStats.setEntrySizes(ValueSizeDistribution.parse(entrySizeDistribution));
+            }
             slaveState.put(BackgroundStats.NAME, bgStats);
          }
          if (startStressors) {
@@ -78,6 +83,13 @@ public class StartBackgroundStatsStage extends AbstractDistStage {
       this.entrySize = entrySize;
    }
 
+   /**
+    * Distribution of the entry sizes, e.g. 'uniform(200, 2m)', see {@link ValueSizeDistribution}. Overrides entrySize.
+    */
+   public void setEntrySizeDistribution(String entrySizeDistribution) {
+      this.entrySizeDistribution = entrySizeDistribution;
+   }
+
    public void setNumThreads(int numThreads) {
       this.numThreads = numThreads;
    }
@@ -117,7 +129,8 @@ public class StartBackgroundStatsStage extends AbstractDistStage {
    public String toString() {
       return "StartBackgroundStatsStage {puts=" + puts + ", gets=" + gets + ", startStats=" + startStats
             + ", startStressors=" + startStressors + ", numEntries=" + numEntries + ", entrySize=" + entrySize
-            + ", numThreads=" + numThreads + ", transactionSize=" + transactionSize + ", delayBetweenRequests="
+            + ", entrySizeDistribution=" + entrySizeDistribution + ", numThreads=" + numThreads
+            + ", transactionSize=" + transactionSize + ", delayBetweenRequests="
             + delayBetweenRequests + ", statsIterationDuration=" + statsIterationDuration + ", waitUntilLoaded="
             + waitUntilLoaded + ", loadDataForDeadSlaves=" + loadDataForDeadSlaves + ", " + super.toString();
    }
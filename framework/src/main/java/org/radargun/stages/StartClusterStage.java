@@ -1,16 +1,23 @@
 package org.radargun.stages;
 
-import java.net.URLClassLoader;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.radargun.CacheWrapper;
 import org.radargun.DistStageAck;
-import org.radargun.state.MasterState;
+import org.radargun.MembershipAware;
+import org.radargun.StartBarrier;
 import org.radargun.stressors.BackgroundStats;
 import org.radargun.utils.TypedProperties;
 import org.radargun.utils.Utils;
 
 /**
  * Stage that starts a CacheWrapper on each slave.
+ * <p/>
+ * With staggerSlaveStartup the slaves start in waves: the first slave alone, then one more, then two, four and so on.
+ * Each wave starts as soon as all the slaves of the previous waves see each other in the cluster, which the slaves
+ * agree on through the master's {@link StartBarrier}. Otherwise all the slaves start in parallel. Either way each slave
+ * waits until the whole cluster is formed, up to clusterFormationTimeout (3 minutes by default); wrappers that are
+ * {@link MembershipAware} wake it up on each view change, the others are polled.
  * 
  * @author Mircea.Markus@jboss.com
  */
@@ -18,12 +25,13 @@ public class StartClusterStage extends AbstractDistStage {
 
    private boolean performClusterSizeValidation = true;
    private boolean staggerSlaveStartup = true;
-   private long delayAfterFirstSlaveStarts = 5000;
-   private long delayBetweenStartingSlaves = 500;
+   private long clusterFormationTimeout = 180000;
    private Integer expectNumSlaves;
 
    private String config;
-   private final int TRY_COUNT = 180;
+
+   private static final long MIN_POLL_MILLIS = 10;
+   private static final long MAX_POLL_MILLIS = 1000;
 
    private TypedProperties confAttributes;
 
@@ -37,20 +45,29 @@ public class StartClusterStage extends AbstractDistStage {
          log.info("Wrapper already set on this slave, not starting it again.");
          return ack;
       }
+      int thisNodeIndex = getSlavePosition();
+      int numSlavesToStart = getActiveSlaveCount();
       if (slaves != null) {
          if (!slaves.contains(getSlaveIndex())) {
             log.trace("Start request not targeted for this slave, ignoring.");
             return ack;
-         } else {
-            staggerStartup(slaves.indexOf(getSlaveIndex()), slaves.size());
          }
-      } else {
-         staggerStartup(slaveIndex, getActiveSlaveCount());
+         thisNodeIndex = slaves.indexOf(getSlaveIndex());
+         numSlavesToStart = slaves.size();
       }
+      StartBarrier startBarrier = slaveState.getStartBarrier();
+      int numWaves = staggerSlaveStartup && startBarrier != null ? wave(numSlavesToStart - 1) + 1 : 1;
+      int thisWave = numWaves > 1 ? wave(thisNodeIndex) : 0;
+      log.info("Starting " + numSlavesToStart + " slaves in " + numWaves + " wave(s), this is the slave with index "
+            + thisNodeIndex + " in wave " + thisWave);
       log.info("Ack master's StartCluster stage. Local address is: " + slaveState.getLocalAddress()
             + ". This slave's index is: " + getSlaveIndex());
       CacheWrapper wrapper = null;
       try {
+         // the barrier of each wave is passed once the slaves of all the previous waves are in the cluster
+         for (int wave = 0; wave < thisWave; wave++) {
+            startBarrier.awaitStart();
+         }
          Object multicache = confAttributes.get("multiCache");
          String plugin =  multicache != null && multicache.equals("true") ? Utils.getCacheProviderProperty(productName, "org.radargun.wrapper.multicache") : Utils.getCacheWrapperFqnClass(productName);
          wrapper = (CacheWrapper) createInstance(plugin);
@@ -58,22 +75,29 @@ public class StartClusterStage extends AbstractDistStage {
          slaveState.setCacheWrapper(wrapper);
          if (performClusterSizeValidation) {
             int expectedNumberOfSlaves = expectNumSlaves == null ? getActiveSlaveCount() : expectNumSlaves;
-            for (int i = 0; i < TRY_COUNT; i++) {
-               int numMembers = wrapper.getNumMembers();
-               if (numMembers != expectedNumberOfSlaves) {
-                  String msg = "Number of members=" + numMembers + " is not the one expected: " + expectedNumberOfSlaves;
-                  log.info(msg);
-                  Thread.sleep(1000);
-                  if (i == TRY_COUNT - 1) {
-                     ack.setError(true);
-                     ack.setErrorMessage(msg);
-                     return ack;
-                  }
-               } else {
-                  log.info("Number of members is the one expected: " + wrapper.getNumMembers());
-                  break;
+            if (thisWave < numWaves - 1 && expectNumSlaves == null) {
+               int startedSlaves = Math.min(1 << thisWave, numSlavesToStart);
+               if (!awaitMembers(wrapper, startedSlaves, false)) {
+                  ack.setError(true);
+                  ack.setErrorMessage("Number of members=" + wrapper.getNumMembers() + " is less than the "
+                        + startedSlaves + " slaves started so far");
+                  return ack;
                }
             }
+            for (int wave = thisWave; wave < numWaves - 1; wave++) {
+               startBarrier.awaitStart();
+            }
+            if (!awaitMembers(wrapper, expectedNumberOfSlaves, true)) {
+               ack.setError(true);
+               ack.setErrorMessage("Number of members=" + wrapper.getNumMembers() + " is not the one expected: "
+                     + expectedNumberOfSlaves);
+               return ack;
+            }
+            log.info("Number of members is the one expected: " + wrapper.getNumMembers());
+         } else {
+            for (int wave = thisWave; wave < numWaves - 1; wave++) {
+               startBarrier.awaitStart();
+            }
          }
          BackgroundStats.afterCacheWrapperStart(slaveState);
       } catch (Exception e) {
@@ -102,11 +126,6 @@ public class StartClusterStage extends AbstractDistStage {
       this.performClusterSizeValidation = performCLusterSizeValidation;
    }
 
-   @Override
-   public void initOnMaster(MasterState masterState, int slaveIndex) {
-      super.initOnMaster(masterState, slaveIndex);
-   }
-
    @Override
    public String toString() {
       return "StartClusterStage {config=" + config + ", " + super.toString();
@@ -116,33 +135,81 @@ public class StartClusterStage extends AbstractDistStage {
       this.staggerSlaveStartup = staggerSlaveStartup;
    }
 
+   /**
+    * Ignored, each wave of slaves starts as soon as the previous ones are in the cluster.
+    */
+   @Deprecated
    public void setDelayAfterFirstSlaveStarts(long delayAfterFirstSlaveStarts) {
-      this.delayAfterFirstSlaveStarts = delayAfterFirstSlaveStarts;
    }
 
+   /**
+    * Ignored, each wave of slaves starts as soon as the previous ones are in the cluster.
+    */
+   @Deprecated
    public void setDelayBetweenStartingSlaves(long delayBetweenSlavesStarts) {
-      this.delayBetweenStartingSlaves = delayBetweenSlavesStarts;
    }
 
-   private void staggerStartup(int thisNodeIndex, int numSlavesToStart) {
-      if (!staggerSlaveStartup) {
-         if (log.isTraceEnabled()) {
-            log.trace("Not using slave startup staggering");
-         }
-         return;
-      }
-      if (thisNodeIndex == 0) {
-         log.info("Startup staggering, number of slaves to start is " + numSlavesToStart
-               + " This is the slave with index 0, not sleeping");
-         return;
+   public void setClusterFormationTimeout(String clusterFormationTimeout) {
+      this.clusterFormationTimeout = Utils.string2Millis(clusterFormationTimeout);
+   }
+
+   /**
+    * The waves double in size: slave 0 is alone in wave 0, slave 1 in wave 1, slaves 2-3 in wave 2, 4-7 in wave 3...
+    */
+   private static int wave(int thisNodeIndex) {
+      return 32 - Integer.numberOfLeadingZeros(thisNodeIndex);
+   }
+
+   /**
+    * Waits until the wrapper sees the expected number of members (or at least that many, unless exact), at most
+    * clusterFormationTimeout.
+    *
+    * @return false on timeout
+    */
+   private boolean awaitMembers(CacheWrapper wrapper, int expected, boolean exact) throws InterruptedException {
+      final AtomicInteger viewChanges = new AtomicInteger();
+      MembershipAware.MembershipListener listener = null;
+      if (wrapper instanceof MembershipAware) {
+         listener = new MembershipAware.MembershipListener() {
+            public void membershipChanged(int numMembers) {
+               synchronized (viewChanges) {
+                  viewChanges.incrementAndGet();
+                  viewChanges.notifyAll();
+               }
+            }
+         };
+         ((MembershipAware) wrapper).addMembershipListener(listener);
       }
-      long toSleep = delayAfterFirstSlaveStarts + thisNodeIndex * delayBetweenStartingSlaves;
-      log.info(" Startup staggering, starting " + numSlavesToStart + " slaves. This is the slave with index "
-            + thisNodeIndex + ". Sleeping for " + toSleep + " millis.");
       try {
-         Thread.sleep(toSleep);
-      } catch (InterruptedException e) {
-         throw new IllegalStateException("Should never happen");
+         long deadline = System.currentTimeMillis() + clusterFormationTimeout;
+         // also a safety net for the notifications, which may come before getNumMembers() returns the new view
+         long pollMillis = MIN_POLL_MILLIS;
+         int loggedMembers = -1;
+         while (true) {
+            int seenViewChanges = viewChanges.get();
+            int numMembers = wrapper.getNumMembers();
+            if (exact ? numMembers == expected : numMembers >= expected) {
+               return true;
+            }
+            if (numMembers != loggedMembers) {
+               log.info("Number of members=" + numMembers + ", waiting for " + expected);
+               loggedMembers = numMembers;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+               return false;
+            }
+            synchronized (viewChanges) {
+               if (viewChanges.get() == seenViewChanges) {
+                  viewChanges.wait(Math.min(remaining, pollMillis));
+               }
+            }
+            pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+         }
+      } finally {
+         if (listener != null) {
+            ((MembershipAware) wrapper).removeMembershipListener(listener);
+         }
       }
    }
 
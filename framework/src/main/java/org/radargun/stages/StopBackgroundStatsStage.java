@@ -42,14 +42,17 @@ public class StopBackgroundStatsStage extends AbstractDistStage {
    @Override
    public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
       List<Object> result = new ArrayList<Object>();
+      List<Integer> slaveIndexes = new ArrayList<Integer>();
       for (DistStageAck ack : acks) {
          DefaultDistStageAck dack = (DefaultDistStageAck) ack;
          result.add(dack.getPayload());
+         slaveIndexes.add(dack.getSlaveIndex());
          if (dack.isError()) {
             return false;
          }
       }
       masterState.put(BackgroundStats.NAME, result);
+      masterState.put(BackgroundStats.SLAVE_INDEXES, slaveIndexes);
       return true;
    }
 
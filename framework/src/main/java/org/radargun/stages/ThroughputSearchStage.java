@@ -0,0 +1,146 @@
+package org.radargun.stages;
+
+import java.util.List;
+import java.util.Map;
+
+import org.radargun.DistStageAck;
+import org.radargun.IterativeDistStage;
+import org.radargun.state.MasterState;
+import org.radargun.utils.ThroughputSearch;
+
+/**
+ * Runs the web session benchmark at increasing cluster-wide request rates, looking for the highest rate at which
+ * the latency objective is still met. The rate is doubled until the objective is breached, then a binary search
+ * narrows down the maximum sustainable rate. A rate is considered sustained if the slowest slave's percentile latency
+ * (the worse of GET and PUT) is within sloLatencyMillis, and the cluster achieved at least minThroughputPercentage of
+ * the target.
+ * <p/>
+ * All the WebSessionBenchmark attributes are supported; targetRequestsPerSec is set by the search. Each rate is run
+ * for the configured duration (or numberOfRequests), so setting a duration is recommended. The search is done
+ * separately for each cluster size. The steps and the results are stored in the master state for
+ * {@link ReportThroughputSearchStage}; the 'results' of the last step are available to the other report stages.
+ * <pre>
+ * - initialRequestsPerSec: the first rate tried, for the whole cluster. Defaults to 1000
+ * - maxRequestsPerSec: the rate is not raised above this. No limit by default
+ * - sloLatencyMillis: the latency objective, in milliseconds. Defaults to 5
+ * - sloPercentile: 50, 90, 99, 99.9 or 100 (maximum). Defaults to 99
+ * - minThroughputPercentage: percentage of the target rate that must be achieved. Defaults to 95
+ * - searchPrecision: the search stops when the interval between the highest good and the lowest bad rate is less
+ *   than this percentage of the bad one. Defaults to 5
+ * - maxIterations: maximum number of rates tried. Defaults to 15
+ * </pre>
+ */
+public class ThroughputSearchStage extends WebSessionBenchmarkStage implements IterativeDistStage {
+
+   /**
+    * Key of the {@link ThroughputSearch} in the master state.
+    */
+   public static final String THROUGHPUT_SEARCH = "THROUGHPUT_SEARCH";
+
+   private double initialRequestsPerSec = 1000;
+   private double maxRequestsPerSec = -1;
+   private double sloLatencyMillis = 5;
+   private double sloPercentile = 99;
+   private double minThroughputPercentage = 95;
+   private double searchPrecision = 5;
+   private int maxIterations = 15;
+
+   private transient ThroughputSearch search;
+
+   @Override
+   public void initOnMaster(MasterState masterState) {
+      super.initOnMaster(masterState);
+      if (search == null) {
+         setTargetRequestsPerSec(initialRequestsPerSec);
+      }
+   }
+
+   @Override
+   public boolean processAckOnMaster(List<DistStageAck> acks, MasterState masterState) {
+      if (!super.processAckOnMaster(acks, masterState)) {
+         return false;
+      }
+      if (search == null) {
+         search = new ThroughputSearch(initialRequestsPerSec, maxRequestsPerSec, searchPrecision / 100, maxIterations);
+      }
+      @SuppressWarnings("unchecked")
+      Map<Integer, Map<String, Object>> results = (Map<Integer, Map<String, Object>>) masterState.get("results");
+      String statistic = percentileStatistic();
+      double actualRate = 0;
+      long latency = 0;
+      for (Map<String, Object> slaveResult : results.values()) {
+         actualRate += Double.parseDouble(String.valueOf(slaveResult.get("ACTUAL_REQ_PER_SEC")));
+         latency = Math.max(latency, Long.parseLong(String.valueOf(slaveResult.get("READ_" + statistic + "_NANOS"))));
+         latency = Math.max(latency, Long.parseLong(String.valueOf(slaveResult.get("WRITE_" + statistic + "_NANOS"))));
+      }
+      double target = search.getCurrentRate();
+      boolean withinSlo = latency <= sloLatencyMillis * 1000000 && actualRate >= target * minThroughputPercentage / 100;
+      log.info("Target " + target + " requests per second: achieved " + actualRate + " with " + statistic +
+                     " latency " + latency / 1000000.0 + " ms, " + (withinSlo ? "within" : "breaching") + " the objective");
+      if (search.record(actualRate, latency, withinSlo)) {
+         setTargetRequestsPerSec(search.getCurrentRate());
+      } else {
+         ThroughputSearch.Step knee = search.getKnee();
+         log.info("Maximum sustainable throughput is " + search.getMaxSustainableRate() + " requests per second, " +
+                        "the knee of the throughput/latency curve is at " + (knee == null ? null : knee.getActualRate()));
+         masterState.put(THROUGHPUT_SEARCH, search);
+      }
+      return true;
+   }
+
+   @Override
+   public boolean hasNextIteration() {
+      return search != null && !search.isFinished();
+   }
+
+   private String percentileStatistic() {
+      if (sloPercentile == 50) return "P50";
+      if (sloPercentile == 90) return "P90";
+      if (sloPercentile == 99) return "P99";
+      if (sloPercentile == 99.9) return "P999";
+      if (sloPercentile == 100) return "MAX";
+      throw new IllegalArgumentException("sloPercentile must be one of 50, 90, 99, 99.9 and 100: " + sloPercentile);
+   }
+
+   public void setInitialRequestsPerSec(double initialRequestsPerSec) {
+      this.initialRequestsPerSec = initialRequestsPerSec;
+   }
+
+   public void setMaxRequestsPerSec(double maxRequestsPerSec) {
+      this.maxRequestsPerSec = maxRequestsPerSec;
+   }
+
+   public void setSloLatencyMillis(double sloLatencyMillis) {
+      this.sloLatencyMillis = sloLatencyMillis;
+   }
+
+   public void setSloPercentile(double sloPercentile) {
+      this.sloPercentile = sloPercentile;
+      percentileStatistic(); // validates the value
+   }
+
+   public void setMinThroughputPercentage(double minThroughputPercentage) {
+      this.minThroughputPercentage = minThroughputPercentage;
+   }
+
+   public void setSearchPrecision(double searchPrecision) {
+      this.searchPrecision = searchPrecision;
+   }
+
+   public void setMaxIterations(int maxIterations) {
+      this.maxIterations = maxIterations;
+   }
+
+   @Override
+   public String toString() {
+      return "ThroughputSearchStage {" +
+            "initialRequestsPerSec=" + initialRequestsPerSec +
+            ", maxRequestsPerSec=" + maxRequestsPerSec +
+            ", sloLatencyMillis=" + sloLatencyMillis +
+            ", sloPercentile=" + sloPercentile +
+            ", minThroughputPercentage=" + minThroughputPercentage +
+            ", searchPrecision=" + searchPrecision +
+            ", maxIterations=" + maxIterations +
+            ", " + super.toString();
+   }
+}
@@ -21,6 +21,7 @@ import org.radargun.stressors.TpccStressor;
  *       - numOfThreads : the number of stressor threads that will work on each slave.
  *       - perThreadSimulTime : total time (in seconds) of simulation for each stressor thread.
  *       - arrivalRate : if the value is greater than 0.0, the "open system" mode is active and the parameter represents the arrival rate (in transactions per second) of a job (a transaction to be executed) to the system; otherwise the "closed system" mode is active: this means that each thread generates and executes a new transaction in an iteration as soon as it has completed the previous iteration.
+ *       - targetTransactionsPerSec : in the "closed system" mode, if greater than 0.0, the number of transactions per second the whole cluster should execute; the threads wait for their turn instead of starting a new transaction as soon as the previous one has completed.
  *       - paymentWeight : percentage of Payment transactions.
  *       - orderStatusWeight : percentage of Order Status transactions.
  * </pre>
@@ -48,6 +49,11 @@ public class TpccBenchmarkStage extends AbstractDistStage {
     * average arrival rate of the transactions to the system
     */
    private double arrivalRate = 0.0D;
+
+   /**
+    * transactions per second for the whole cluster in the "closed system" mode, 0.0 means no pacing
+    */
+   private double targetTransactionsPerSec = 0.0D;
    
    /**
     * percentage of Payment transactions
@@ -78,6 +84,7 @@ public class TpccBenchmarkStage extends AbstractDistStage {
       tpccStressor.setNumOfThreads(this.numOfThreads);
       tpccStressor.setPerThreadSimulTime(this.perThreadSimulTime);
       tpccStressor.setArrivalRate(this.arrivalRate);
+      tpccStressor.setTargetTransactionsPerSec(this.targetTransactionsPerSec);
       tpccStressor.setPaymentWeight(this.paymentWeight);
       tpccStressor.setOrderStatusWeight(this.orderStatusWeight);
 
@@ -138,6 +145,10 @@ public class TpccBenchmarkStage extends AbstractDistStage {
       this.arrivalRate = arrivalRate;
    }
 
+   public void setTargetTransactionsPerSec(double targetTransactionsPerSec) {
+      this.targetTransactionsPerSec = targetTransactionsPerSec;
+   }
+
    public void setPaymentWeight(double paymentWeight) {
       this.paymentWeight = paymentWeight;
    }
@@ -154,6 +165,7 @@ public class TpccBenchmarkStage extends AbstractDistStage {
             ", numOfThreads=" + numOfThreads +
             ", perThreadSimulTime=" + perThreadSimulTime +
             ", arrivalRate=" + arrivalRate +
+            ", targetTransactionsPerSec=" + targetTransactionsPerSec +
             ", paymentWeight=" + paymentWeight +
             ", orderStatusWeight=" + orderStatusWeight +
             ", cacheWrapper=" + cacheWrapper +
@@ -63,7 +63,7 @@ public class TpccPopulationStage extends AbstractDistStage{
    private void populate(CacheWrapper wrapper) {
       TpccPopulationStressor populationStressor = new TpccPopulationStressor();
       populationStressor.setNumWarehouses(numWarehouses);
-      populationStressor.setSlaveIndex(getSlaveIndex());
+      populationStressor.setSlaveIndex(getSlavePosition());
       populationStressor.setNumSlaves(getActiveSlaveCount());
       populationStressor.setCLastMask(this.cLastMask);
       populationStressor.setOlIdMask(this.olIdMask);
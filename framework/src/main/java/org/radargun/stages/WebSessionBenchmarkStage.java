@@ -3,11 +3,14 @@ package org.radargun.stages;
 import org.radargun.CacheWrapper;
 import org.radargun.DistStageAck;
 import org.radargun.state.MasterState;
+import org.radargun.stressors.IntervalStats;
 import org.radargun.stressors.PutGetStressor;
 import org.radargun.stressors.StringKeyGenerator;
+import org.radargun.stressors.StringValueGenerator;
 import org.radargun.utils.Utils;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +25,12 @@ import static org.radargun.utils.Utils.numberFormat;
 public class WebSessionBenchmarkStage extends AbstractDistStage {
 
    private static final String SIZE_INFO = "SIZE_INFO";
+
+   /**
+    * Key of the per-interval statistics in the ack payload, and of the map slave index -> list of
+    * {@link IntervalStats} in the master state.
+    */
+   public static final String INTERVAL_STATS = "INTERVAL_STATS";
    private int opsCountStatusLog = 5000;
 
    public static final String SESSION_PREFIX = "SESSION";
@@ -60,6 +69,119 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
 
    protected CacheWrapper cacheWrapper;
 
+   /**
+    * How the keys are selected for each operation: uniform (default), zipfian, hotspot, latest, or the name of a class
+    * implementing {@link org.radargun.stressors.KeySelector}.
+    */
+   private String keyDistribution = "uniform";
+
+   /**
+    * Skew of the zipfian and latest key distributions, between 0 and 1 (exclusive).
+    */
+   private double zipfianTheta = 0.99;
+
+   /**
+    * For the hotspot key distribution: hotspotOpsPercentage of the operations go to hotspotKeysPercentage of the keys.
+    */
+   private double hotspotOpsPercentage = 80;
+   private double hotspotKeysPercentage = 20;
+
+   /**
+    * Percentage of operations that go to a keyspace shared by all the threads on all the slaves. Use it to benchmark
+    * write contention. 0 (default) means that each thread only accesses its own keys.
+    */
+   private int sharedKeysPercentage = 0;
+
+   /**
+    * Number of keys in the shared keyspace. With synchronizedStart, each slave writes only its slice of the keys
+    * before the load starts; otherwise each slave writes all of them.
+    */
+   private int numberOfSharedKeys = 100;
+
+   /**
+    * Number of entries read or written by each operation, using getAll/putAll if bigger than 1.
+    */
+   private int batchSize = 1;
+
+   /**
+    * Maximum number of requests each stressor thread keeps in flight, using the asynchronous API of the wrapper.
+    * 1 (default) means synchronous operations.
+    */
+   private int maxOutstandingRequests = 1;
+
+   /**
+    * Number of simulated clients (e.g. web sessions) on each slave, run by the numOfThreads stressor threads. Each
+    * client waits for thinkTime between receiving a response and sending the next request. Not set by default, in
+    * which case each thread acts as a single client without think time. Can't be used with maxOutstandingRequests.
+    */
+   private int numOfClients = -1;
+
+   private long thinkTimeMillis = 0;
+
+   /**
+    * Length of the intervals for which throughput and latencies are recorded, see ReportIntervalStats. 0 disables
+    * the per-interval statistics.
+    */
+   private long statsIntervalMillis = 1000;
+
+   private transient List<IntervalStats> intervalStats;
+
+   /**
+    * How often the statistics of the running stage are streamed to the master, which logs a cluster-wide summary and
+    * keeps it for ReportProgress. 0 disables the progress reports.
+    */
+   private long progressIntervalMillis = 10000;
+
+   /**
+    * If true, the slaves wait for each other after initialising the keys and start the load at the same time, so that
+    * the intervals of all the slaves cover the same periods.
+    */
+   private boolean synchronizedStart = true;
+
+   /**
+    * If true, the statistics recorded before the throughput becomes steady are discarded as warm-up. Steady state is
+    * reached once the coefficient of variation of the throughput of the last steadyStateWindow intervals is below
+    * steadyStateMaxCv.
+    */
+   private boolean detectSteadyState = false;
+   private int steadyStateWindow = 10;
+   private double steadyStateMaxCv = 0.05;
+
+   /**
+    * If positive and a duration is set, the test is stopped once the 95% confidence interval of the mean throughput
+    * after reaching steady state is narrower than this percentage of the mean.
+    */
+   private double targetConfidenceInterval = -1;
+
+   private String valueGeneratorClass = StringValueGenerator.class.getName();
+
+   /**
+    * Number of distinct values generated by each stressor thread before the test starts.
+    */
+   private int numberOfValues = 100;
+
+   /**
+    * If true, each write gets a copy of a generated value with a few bytes changed, so that consecutive writes differ.
+    * This allocates a new value for each write.
+    */
+   private boolean mutateValues = false;
+
+   /**
+    * If false, keys are generated from their index on each operation instead of being kept in a per-thread list.
+    */
+   private boolean poolKeys = true;
+
+   /**
+    * Distribution of the value sizes, e.g. 'lognormal(4k, 1.5, 200, 2m)'. If not set, all the values have
+    * sizeOfAnAttribute bytes.
+    */
+   private String valueSizeDistribution;
+
+   /**
+    * Percentage (0 - 100) of each value that is redundant, for testing products that compress the values.
+    */
+   private double valueCompressibility = 0;
+
    private boolean useTransactions = false;
 
    private boolean commitTransactions = true;
@@ -68,10 +190,35 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
 
    private long durationMillis = -1;
 
+   /**
+    * Number of requests per second for the whole cluster, divided evenly between the active slaves. If set, the
+    * stressor issues requests at this fixed rate instead of running in a closed loop. Negative values mean disabled.
+    */
+   private double targetRequestsPerSec = -1;
+
+   /**
+    * With targetRequestsPerSec, 'thread' (default) gives each stressor thread its own schedule, 'node' makes the
+    * threads of a slave share one.
+    */
+   private String rateLimiterScope = "thread";
+
+   /**
+    * With targetRequestsPerSec, how many missed requests may be sent in a burst after falling behind schedule.
+    * Negative (default) keeps the precise schedule.
+    */
+   private int rateLimiterBurst = -1;
+
+   @Override
+   protected long getDefaultStageTimeoutMillis() {
+      return durationMillis > 0 ? durationMillis + DEFAULT_STAGE_TIMEOUT_MILLIS : DEFAULT_STAGE_TIMEOUT_MILLIS;
+   }
+
    protected Map<String, String> doWork() {
       log.info("Starting "+getClass().getSimpleName()+": " + this);
       PutGetStressor putGetStressor = new PutGetStressor();
       putGetStressor.setNodeIndex(getSlaveIndex());
+      putGetStressor.setNodePosition(getSlavePosition());
+      putGetStressor.setNumNodes(getActiveSlaveCount());
       putGetStressor.setNumberOfAttributes(numberOfAttributes);
       putGetStressor.setNumberOfRequests(numberOfRequests);
       putGetStressor.setNumOfThreads(numOfThreads);
@@ -79,11 +226,44 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
       putGetStressor.setSizeOfAnAttribute(sizeOfAnAttribute);
       putGetStressor.setWritePercentage(writePercentage);
       putGetStressor.setKeyGeneratorClass(keyGeneratorClass);
+      putGetStressor.setKeyDistribution(keyDistribution);
+      putGetStressor.setZipfianTheta(zipfianTheta);
+      putGetStressor.setHotspotOpsPercentage(hotspotOpsPercentage);
+      putGetStressor.setHotspotKeysPercentage(hotspotKeysPercentage);
+      putGetStressor.setSharedKeysPercentage(sharedKeysPercentage);
+      putGetStressor.setNumberOfSharedKeys(numberOfSharedKeys);
+      putGetStressor.setBatchSize(batchSize);
+      putGetStressor.setMaxOutstandingRequests(maxOutstandingRequests);
+      putGetStressor.setNumOfClients(numOfClients);
+      putGetStressor.setThinkTimeMillis(thinkTimeMillis);
+      putGetStressor.setStatsIntervalMillis(statsIntervalMillis);
+      putGetStressor.setProgressIntervalMillis(progressIntervalMillis);
+      putGetStressor.setProgressListener(slaveState.getProgressListener());
+      if (synchronizedStart) {
+         putGetStressor.setStartBarrier(slaveState.getStartBarrier());
+      }
+      putGetStressor.setDetectSteadyState(detectSteadyState);
+      putGetStressor.setSteadyStateWindow(steadyStateWindow);
+      putGetStressor.setSteadyStateMaxCv(steadyStateMaxCv);
+      putGetStressor.setTargetConfidenceInterval(targetConfidenceInterval);
+      putGetStressor.setValueGeneratorClass(valueGeneratorClass);
+      putGetStressor.setNumberOfValues(numberOfValues);
+      putGetStressor.setMutateValues(mutateValues);
+      putGetStressor.setPoolKeys(poolKeys);
+      putGetStressor.setValueSizeDistribution(valueSizeDistribution);
+      putGetStressor.setValueCompressibility(valueCompressibility);
       putGetStressor.setUseTransactions(useTransactions);
       putGetStressor.setCommitTransactions(commitTransactions);
       putGetStressor.setTransactionSize(transactionSize);
       putGetStressor.setDurationMillis(durationMillis);
-      return putGetStressor.stress(cacheWrapper);
+      if (targetRequestsPerSec > 0) {
+         putGetStressor.setTargetRequestsPerSec(targetRequestsPerSec / getActiveSlaveCount());
+      }
+      putGetStressor.setRateLimiterScope(rateLimiterScope);
+      putGetStressor.setRateLimiterBurst(rateLimiterBurst);
+      Map<String, String> results = putGetStressor.stress(cacheWrapper);
+      intervalStats = putGetStressor.getIntervalStats();
+      return results;
    }
    
    public DistStageAck executeOnSlave() {
@@ -99,7 +279,11 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
          String sizeInfo = generateSizeInfo();
          log.info(sizeInfo);
          results.put(SIZE_INFO, sizeInfo);
-         result.setPayload(results);
+         Map<String, Object> payload = new LinkedHashMap<String, Object>(results);
+         if (intervalStats != null) {
+            payload.put(INTERVAL_STATS, intervalStats);
+         }
+         result.setPayload(payload);
          return result;
       } catch (Exception e) {
          log.warn("Exception while initializing the test", e);
@@ -121,6 +305,8 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
       boolean success = true;
       Map<Integer, Map<String, Object>> results = new HashMap<Integer, Map<String, Object>>();
       masterState.put("results", results);
+      Map<Integer, List<IntervalStats>> intervalResults = new HashMap<Integer, List<IntervalStats>>();
+      masterState.put(INTERVAL_STATS, intervalResults);
       for (DistStageAck ack : acks) {
          DefaultDistStageAck wAck = (DefaultDistStageAck) ack;
          if (wAck.isError()) {
@@ -138,6 +324,10 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
                throw new IllegalStateException("Requests per second should be present!");
             }
             logForDistributionCounting(benchResult);
+            List<IntervalStats> slaveIntervals = (List<IntervalStats>) benchResult.remove(INTERVAL_STATS);
+            if (slaveIntervals != null) {
+               intervalResults.put(ack.getSlaveIndex(), slaveIntervals);
+            }
             log.info("Slave #" + ack.getSlaveIndex() + ": " + numberFormat(parseDouble(reqPerSes.toString())) + " requests per second.");
          } else {
             log.trace("No report received from slave: " + ack.getSlaveIndex());
@@ -189,6 +379,190 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
       this.keyGeneratorClass = keyGeneratorClass;
    }
 
+   public String getKeyDistribution() {
+      return keyDistribution;
+   }
+
+   public void setKeyDistribution(String keyDistribution) {
+      this.keyDistribution = keyDistribution;
+   }
+
+   public double getZipfianTheta() {
+      return zipfianTheta;
+   }
+
+   public void setZipfianTheta(double zipfianTheta) {
+      this.zipfianTheta = zipfianTheta;
+   }
+
+   public double getHotspotOpsPercentage() {
+      return hotspotOpsPercentage;
+   }
+
+   public void setHotspotOpsPercentage(double hotspotOpsPercentage) {
+      this.hotspotOpsPercentage = hotspotOpsPercentage;
+   }
+
+   public double getHotspotKeysPercentage() {
+      return hotspotKeysPercentage;
+   }
+
+   public void setHotspotKeysPercentage(double hotspotKeysPercentage) {
+      this.hotspotKeysPercentage = hotspotKeysPercentage;
+   }
+
+   public int getSharedKeysPercentage() {
+      return sharedKeysPercentage;
+   }
+
+   public void setSharedKeysPercentage(int sharedKeysPercentage) {
+      this.sharedKeysPercentage = sharedKeysPercentage;
+   }
+
+   public int getNumberOfSharedKeys() {
+      return numberOfSharedKeys;
+   }
+
+   public void setNumberOfSharedKeys(int numberOfSharedKeys) {
+      this.numberOfSharedKeys = numberOfSharedKeys;
+   }
+
+   public int getBatchSize() {
+      return batchSize;
+   }
+
+   public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+   }
+
+   public int getMaxOutstandingRequests() {
+      return maxOutstandingRequests;
+   }
+
+   public void setMaxOutstandingRequests(int maxOutstandingRequests) {
+      this.maxOutstandingRequests = maxOutstandingRequests;
+   }
+
+   public int getNumOfClients() {
+      return numOfClients;
+   }
+
+   public void setNumOfClients(int numOfClients) {
+      this.numOfClients = numOfClients;
+   }
+
+   public long getThinkTimeMillis() {
+      return thinkTimeMillis;
+   }
+
+   public void setThinkTime(String thinkTime) {
+      this.thinkTimeMillis = Utils.string2Millis(thinkTime);
+   }
+
+   public long getStatsIntervalMillis() {
+      return statsIntervalMillis;
+   }
+
+   public void setStatsInterval(String statsInterval) {
+      this.statsIntervalMillis = Utils.string2Millis(statsInterval);
+   }
+
+   public long getProgressIntervalMillis() {
+      return progressIntervalMillis;
+   }
+
+   public void setProgressInterval(String progressInterval) {
+      this.progressIntervalMillis = Utils.string2Millis(progressInterval);
+   }
+
+   public boolean isSynchronizedStart() {
+      return synchronizedStart;
+   }
+
+   public void setSynchronizedStart(boolean synchronizedStart) {
+      this.synchronizedStart = synchronizedStart;
+   }
+
+   public boolean isDetectSteadyState() {
+      return detectSteadyState;
+   }
+
+   public void setDetectSteadyState(boolean detectSteadyState) {
+      this.detectSteadyState = detectSteadyState;
+   }
+
+   public int getSteadyStateWindow() {
+      return steadyStateWindow;
+   }
+
+   public void setSteadyStateWindow(int steadyStateWindow) {
+      this.steadyStateWindow = steadyStateWindow;
+   }
+
+   public double getSteadyStateMaxCv() {
+      return steadyStateMaxCv;
+   }
+
+   public void setSteadyStateMaxCv(double steadyStateMaxCv) {
+      this.steadyStateMaxCv = steadyStateMaxCv;
+   }
+
+   public double getTargetConfidenceInterval() {
+      return targetConfidenceInterval;
+   }
+
+   public void setTargetConfidenceInterval(double targetConfidenceInterval) {
+      this.targetConfidenceInterval = targetConfidenceInterval;
+   }
+
+   public String getValueGeneratorClass() {
+      return valueGeneratorClass;
+   }
+
+   public void setValueGeneratorClass(String valueGeneratorClass) {
+      this.valueGeneratorClass = valueGeneratorClass;
+   }
+
+   public int getNumberOfValues() {
+      return numberOfValues;
+   }
+
+   public void setNumberOfValues(int numberOfValues) {
+      this.numberOfValues = numberOfValues;
+   }
+
+   public boolean isMutateValues() {
+      return mutateValues;
+   }
+
+   public void setMutateValues(boolean mutateValues) {
+      this.mutateValues = mutateValues;
+   }
+
+   public boolean isPoolKeys() {
+      return poolKeys;
+   }
+
+   public void setPoolKeys(boolean poolKeys) {
+      this.poolKeys = poolKeys;
+   }
+
+   public String getValueSizeDistribution() {
+      return valueSizeDistribution;
+   }
+
+   public void setValueSizeDistribution(String valueSizeDistribution) {
+      this.valueSizeDistribution = valueSizeDistribution;
+   }
+
+   public double getValueCompressibility() {
+      return valueCompressibility;
+   }
+
+   public void setValueCompressibility(double valueCompressibility) {
+      this.valueCompressibility = valueCompressibility;
+   }
+
    public int getTransactionSize() {
       return transactionSize;
    }
@@ -221,6 +595,30 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
       this.durationMillis = Utils.string2Millis(duration);
    }
 
+   public double getTargetRequestsPerSec() {
+      return targetRequestsPerSec;
+   }
+
+   public void setTargetRequestsPerSec(double targetRequestsPerSec) {
+      this.targetRequestsPerSec = targetRequestsPerSec;
+   }
+
+   public String getRateLimiterScope() {
+      return rateLimiterScope;
+   }
+
+   public void setRateLimiterScope(String rateLimiterScope) {
+      this.rateLimiterScope = rateLimiterScope;
+   }
+
+   public int getRateLimiterBurst() {
+      return rateLimiterBurst;
+   }
+
+   public void setRateLimiterBurst(int rateLimiterBurst) {
+      this.rateLimiterBurst = rateLimiterBurst;
+   }
+
    @Override
    public String toString() {
       return "WebSessionBenchmarkStage {" +
@@ -228,6 +626,26 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
             ", numberOfRequests=" + numberOfRequests +
             ", numberOfAttributes=" + numberOfAttributes +
             ", sizeOfAnAttribute=" + sizeOfAnAttribute +
+            ", keyDistribution=" + keyDistribution +
+            ", sharedKeysPercentage=" + sharedKeysPercentage +
+            ", numberOfSharedKeys=" + numberOfSharedKeys +
+            ", batchSize=" + batchSize +
+            ", maxOutstandingRequests=" + maxOutstandingRequests +
+            ", numOfClients=" + numOfClients +
+            ", thinkTimeMillis=" + thinkTimeMillis +
+            ", statsIntervalMillis=" + statsIntervalMillis +
+            ", progressIntervalMillis=" + progressIntervalMillis +
+            ", synchronizedStart=" + synchronizedStart +
+            ", detectSteadyState=" + detectSteadyState +
+            ", steadyStateWindow=" + steadyStateWindow +
+            ", steadyStateMaxCv=" + steadyStateMaxCv +
+            ", targetConfidenceInterval=" + targetConfidenceInterval +
+            ", valueGeneratorClass=" + valueGeneratorClass +
+            ", numberOfValues=" + numberOfValues +
+            ", mutateValues=" + mutateValues +
+            ", poolKeys=" + poolKeys +
+            ", valueSizeDistribution=" + valueSizeDistribution +
+            ", valueCompressibility=" + valueCompressibility +
             ", writePercentage=" + writePercentage +
             ", numOfThreads=" + numOfThreads +
             ", reportNanos=" + reportNanos +
@@ -236,6 +654,9 @@ public class WebSessionBenchmarkStage extends AbstractDistStage {
             ", commitTransactions=" + commitTransactions +
             ", transactionSize=" + transactionSize +
             ", durationMillis=" + durationMillis+
+            ", targetRequestsPerSec=" + targetRequestsPerSec +
+            ", rateLimiterScope=" + rateLimiterScope +
+            ", rateLimiterBurst=" + rateLimiterBurst +
             ", " + super.toString();
    }
 }
@@ -4,6 +4,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.radargun.DistStage;
 import org.radargun.DistStageAck;
+import org.radargun.IterativeDistStage;
 import org.radargun.MasterStage;
 import org.radargun.Stage;
 import org.radargun.config.FixedSizeBenchmarkConfig;
@@ -13,7 +14,9 @@ import org.radargun.utils.Utils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * State residing on the server, passed to each stage before execution.
@@ -29,6 +32,8 @@ public class MasterState extends StateBase {
    private FixedSizeBenchmarkConfig currentBenchmark;
    private long startTime = System.currentTimeMillis();
    private DistStage currentDistStage;
+   private boolean repeatCurrentDistStage;
+   private Map<Integer, Long> clockOffsets = new HashMap<Integer, Long>();
 
    public MasterState(MasterConfig config) {
       this.config = config;
@@ -44,6 +49,10 @@ public class MasterState extends StateBase {
    }
 
    public DistStage getNextDistStageToProcess() {
+      if (repeatCurrentDistStage) {
+         repeatCurrentDistStage = false;
+         return currentDistStage;
+      }
       while (currentBenchmark.hasNextStage()) {
          Stage stage = currentBenchmark.nextStage();
          if (stage instanceof DistStage) {
@@ -85,7 +94,13 @@ public class MasterState extends StateBase {
          }
       });
       boolean stageOk = currentDistStage.processAckOnMaster(acks, this);
-      if (stageOk) return true;
+      if (stageOk) {
+         if (currentDistStage instanceof IterativeDistStage && ((IterativeDistStage) currentDistStage).hasNextIteration()) {
+            log.info("Stage " + currentDistStage.getClass().getSimpleName() + " needs another iteration");
+            repeatCurrentDistStage = true;
+         }
+         return true;
+      }
       if (!currentDistStage.isExitBenchmarkOnSlaveFailure()) {
          log.warn("Execution error for current benchmark, skipping rest of the stages");
          currentBenchmark.errorOnCurrentBenchmark();
@@ -113,6 +128,28 @@ public class MasterState extends StateBase {
       }
    }
 
+   /**
+    * @param offsetMillis estimated difference between the master's clock and the slave's clock
+    */
+   public void setClockOffset(int slaveIndex, long offsetMillis) {
+      clockOffsets.put(slaveIndex, offsetMillis);
+   }
+
+   /**
+    * @return estimated difference between the master's clock and the slave's clock, 0 if unknown
+    */
+   public long getClockOffset(int slaveIndex) {
+      Long offset = clockOffsets.get(slaveIndex);
+      return offset == null ? 0 : offset;
+   }
+
+   /**
+    * Converts a time reported by a slave (its System.currentTimeMillis()) to the master's clock.
+    */
+   public long toMasterTime(int slaveIndex, long slaveMillis) {
+      return slaveMillis + getClockOffset(slaveIndex);
+   }
+
    public String nameOfTheCurrentBenchmark() {
       String prodName = currentBenchmark.getProductName();
       if (prodName == null) {
@@ -1,6 +1,8 @@
 package org.radargun.state;
 
 import org.radargun.CacheWrapper;
+import org.radargun.ProgressListener;
+import org.radargun.StartBarrier;
 
 import java.net.InetAddress;
 
@@ -14,6 +16,8 @@ public class SlaveState extends StateBase {
    private InetAddress masterAddress;
    private InetAddress localAddress;
    private CacheWrapper cacheWrapper;
+   private ProgressListener progressListener;
+   private StartBarrier startBarrier;
 
    public InetAddress getMasterAddress() {
       return masterAddress;
@@ -38,4 +42,26 @@ public class SlaveState extends StateBase {
    public CacheWrapper getCacheWrapper() {
       return cacheWrapper;
    }
+
+   /**
+    * @return the listener stages should report their progress to, or null if nobody listens
+    */
+   public ProgressListener getProgressListener() {
+      return progressListener;
+   }
+
+   public void setProgressListener(ProgressListener progressListener) {
+      this.progressListener = progressListener;
+   }
+
+   /**
+    * @return the barrier synchronizing the start of the load with the other slaves, or null if not connected
+    */
+   public StartBarrier getStartBarrier() {
+      return startBarrier;
+   }
+
+   public void setStartBarrier(StartBarrier startBarrier) {
+      this.startBarrier = startBarrier;
+   }
 }
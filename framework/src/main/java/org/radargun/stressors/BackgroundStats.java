@@ -1,5 +1,6 @@
 package org.radargun.stressors;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -9,7 +10,11 @@ import java.util.Random;
 
 import org.apache.log4j.Logger;
 import org.radargun.CacheWrapper;
+import org.radargun.protocol.BinaryExternalizer;
+import org.radargun.protocol.BinaryInput;
+import org.radargun.protocol.BinaryOutput;
 import org.radargun.state.SlaveState;
+import org.radargun.utils.RateLimiter;
 
 /**
  * 
@@ -26,6 +31,10 @@ public class BackgroundStats {
     * instance and to MasterState to retrieve results.
     */
    public static final String NAME = "BackgroundStats";
+   /**
+    * Key of the indexes of the slaves the statistics under {@link #NAME} come from, in the master's state.
+    */
+   public static final String SLAVE_INDEXES = NAME + ".slaveIndexes";
 
    private static Logger log = Logger.getLogger(BackgroundStats.class);
    private static Random r = new Random();
@@ -49,6 +58,7 @@ public class BackgroundStats {
    private boolean loaded = false;
    private int transactionSize;
    private List<Integer> loadDataForDeadSlaves;
+   private ValueSizeDistribution entrySizes;
 
    public BackgroundStats(int puts, int gets, int numEntries, int entrySize, int numThreads, SlaveState slaveState,
          long delayBetweenRequests, int numSlaves, int slaveIndex, long statsIteration, int transactionSize,
@@ -66,6 +76,14 @@ public class BackgroundStats {
       this.statsIteration = statsIteration;
       this.transactionSize = transactionSize;
       this.loadDataForDeadSlaves = loadDataForDeadSlaves;
+      this.entrySizes = ValueSizeDistribution.fixed(entrySize);
+   }
+
+   /**
+    * Overrides the fixed entrySize given to the constructor.
+    */
+   public void setEntrySizes(ValueSizeDistribution entrySizes) {
+      this.entrySizes = entrySizes;
    }
 
    /**
@@ -312,7 +330,7 @@ public class BackgroundStats {
          log.trace("Loading key range [" + keyRangeStart + ", " + keyRangeEnd + "]");
          for (currentKey = keyRangeStart; currentKey < keyRangeEnd; currentKey++) {
             try {
-               cacheWrapper.put(NAME, key(currentKey), generateRandomString(entrySize));
+               cacheWrapper.put(NAME, key(currentKey), generateRandomString(entrySizes.nextSize(r)));
             } catch (Exception e) {
                log.error("Error while loading data", e);
             }
@@ -329,7 +347,7 @@ public class BackgroundStats {
                      + deadKeyRangeStart + ", " + deadKeyRangeEnd + "]");
                for (currentKey = deadKeyRangeStart; currentKey < deadKeyRangeEnd; currentKey++) {
                   try {
-                     cacheWrapper.put(NAME, key(currentKey), generateRandomString(entrySize));
+                     cacheWrapper.put(NAME, key(currentKey), generateRandomString(entrySizes.nextSize(r)));
                   } catch (Exception e) {
                      log.error("Error while loading data", e);
                   }
@@ -346,9 +364,15 @@ public class BackgroundStats {
             if (!loaded) {
                loadData();
             }
+            // requests are sent every delayBetweenRequests regardless of their response time; after a stall the
+            // missed requests are dropped instead of being sent in a burst
+            RateLimiter rateLimiter = delayBetweenRequests > 0
+                  ? new RateLimiter(1000.0 / delayBetweenRequests, 0, System.nanoTime()) : null;
             while (!isInterrupted() && !terminate) {
+               if (rateLimiter != null) {
+                  rateLimiter.acquire();
+               }
                makeRequest();
-               sleep(delayBetweenRequests);
             }
          } catch (InterruptedException e) {
             log.trace("Stressor interrupted.");
@@ -389,7 +413,7 @@ public class BackgroundStats {
                isPut = true;
                reqDescription = "PUT(" + key + ")";
                resetLastOpTime();
-               cacheWrapper.put(NAME, key, generateRandomString(entrySize));
+               cacheWrapper.put(NAME, key, generateRandomString(entrySizes.nextSize(r)));
                threadStats.registerRequest(lastOpTime(), isPut, false);
                remainingPuts--;
             } else {
@@ -555,6 +579,34 @@ public class BackgroundStats {
          return result;
       }
 
+      /**
+       * @return copy of this snapshot with the interval moved by offsetMillis, e.g. to the master's clock
+       */
+      public synchronized Stats shift(long offsetMillis) {
+         Stats result = copy();
+         result.nodeUp = nodeUp;
+         result.cacheSize = cacheSize;
+         result.intervalBeginTime += offsetMillis;
+         result.intervalEndTime += offsetMillis;
+         return result;
+      }
+
+      /**
+       * @return snapshot covering this interval and the next one, e.g. when both fall into the same reporting period;
+       *         a node that was down in one of the intervals contributes nothing to it
+       */
+      public synchronized Stats mergeWithNext(Stats next) {
+         if (!next.isNodeUp()) {
+            return this;
+         } else if (!nodeUp) {
+            return next;
+         }
+         Stats result = copy();
+         result.merge(next);
+         result.cacheSize = next.getCacheSize();
+         return result;
+      }
+
       public synchronized Stats copy() {
          Stats result = new Stats();
          fillCopy(result);
@@ -623,6 +675,46 @@ public class BackgroundStats {
          }
       }
 
+      /**
+       * Binary form used by {@link org.radargun.protocol.BinaryCodec}.
+       */
+      public static class Externalizer implements BinaryExternalizer<Stats> {
+         public void writeObject(BinaryOutput output, Stats stats) {
+            output.writeBoolean(stats.nodeUp);
+            output.writeBoolean(stats.snapshot);
+            output.writeVarLong(stats.requestsPut);
+            output.writeSignedVarLong(stats.maxResponseTimePut);
+            output.writeVarLong(stats.responseTimeSumPut);
+            output.writeVarLong(stats.requestsGet);
+            output.writeSignedVarLong(stats.maxResponseTimeGet);
+            output.writeVarLong(stats.responseTimeSumGet);
+            output.writeVarLong(stats.requestsNullGet);
+            output.writeVarLong(stats.intervalBeginTime);
+            output.writeVarLong(stats.intervalEndTime);
+            output.writeVarLong(stats.errorsPut);
+            output.writeVarLong(stats.errorsGet);
+            output.writeSignedVarLong(stats.cacheSize);
+         }
+
+         public Stats readObject(BinaryInput input) throws IOException {
+            Stats stats = new Stats(input.readBoolean());
+            stats.snapshot = input.readBoolean();
+            stats.requestsPut = input.readVarLong();
+            stats.maxResponseTimePut = input.readSignedVarLong();
+            stats.responseTimeSumPut = input.readVarLong();
+            stats.requestsGet = input.readVarLong();
+            stats.maxResponseTimeGet = input.readSignedVarLong();
+            stats.responseTimeSumGet = input.readVarLong();
+            stats.requestsNullGet = input.readVarLong();
+            stats.intervalBeginTime = input.readVarLong();
+            stats.intervalEndTime = input.readVarLong();
+            stats.errorsPut = input.readVarLong();
+            stats.errorsGet = input.readVarLong();
+            stats.cacheSize = (int) input.readSignedVarLong();
+            return stats;
+         }
+      }
+
       protected void ensureNotSnapshot() {
          if (snapshot) {
             throw new RuntimeException("this operation cannot be performed on snapshot");
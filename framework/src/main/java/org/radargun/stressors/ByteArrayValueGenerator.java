@@ -0,0 +1,63 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Returns random byte arrays from a pool built on init. If mutateValues is set, each call returns a copy of a pooled
+ * array with a few bytes changed. The pooled arrays are never changed in place: the cache may still reference them,
+ * because an asynchronous put is in flight or because it stores the array itself instead of a serialized copy (e.g.
+ * local caches). The copy costs an allocation per write.
+ * <p/>
+ * For compressible values, the first compressibility percent of each 64-byte block repeats a fixed pattern and the
+ * rest is random, so the redundancy is spread over the whole value and visible to compressors with small windows.
+ */
+public class ByteArrayValueGenerator implements ValueGenerator {
+
+   static final int BLOCK_SIZE = 64;
+   private static final byte[] PATTERN = "RadarGun-".getBytes();
+   private static final int MUTATED_BYTES = 8;
+
+   private byte[][] values;
+   private boolean mutateValues;
+
+   @Override
+   public void init(ValueSizeDistribution valueSizes, int numberOfValues, boolean mutateValues, double compressibility, Random random) {
+      this.mutateValues = mutateValues;
+      int redundantBytes = redundantBytesPerBlock(compressibility);
+      values = new byte[Math.max(1, numberOfValues)][];
+      for (int i = 0; i < values.length; i++) {
+         byte[] value = new byte[valueSizes.nextSize(random)];
+         random.nextBytes(value);
+         for (int j = 0; j < value.length; j++) {
+            if (j % BLOCK_SIZE < redundantBytes) {
+               value[j] = PATTERN[j % PATTERN.length];
+            }
+         }
+         values[i] = value;
+      }
+   }
+
+   @Override
+   public Object nextValue(Random random) {
+      byte[] value = values[random.nextInt(values.length)];
+      if (mutateValues && value.length > 0) {
+         value = value.clone();
+         for (int i = 0; i < MUTATED_BYTES; i++) {
+            value[random.nextInt(value.length)] = (byte) random.nextInt();
+         }
+      }
+      return value;
+   }
+
+   @Override
+   public int sizeOf(Object value) {
+      return value instanceof byte[] ? ((byte[]) value).length : 0;
+   }
+
+   static int redundantBytesPerBlock(double compressibility) {
+      if (compressibility < 0 || compressibility > 100) {
+         throw new IllegalArgumentException("Compressibility must be between 0 and 100: " + compressibility);
+      }
+      return (int) Math.round(BLOCK_SIZE * compressibility / 100);
+   }
+}
@@ -0,0 +1,57 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Sends hotOpsPercentage of the operations to a hot set made of the first hotKeysPercentage of the keys. The remaining
+ * operations go to the other keys. Keys are selected uniformly within both sets.
+ */
+public class HotspotKeySelector implements KeySelector {
+
+   private double hotOpsPercentage = 80;
+   private double hotKeysPercentage = 20;
+
+   private int numberOfKeys;
+   private int hotKeys;
+
+   @Override
+   public void init(int numberOfKeys, Random random) {
+      if (hotOpsPercentage < 0 || hotOpsPercentage > 100 || hotKeysPercentage < 0 || hotKeysPercentage > 100) {
+         throw new IllegalArgumentException("Hotspot percentages must be between 0 and 100: " + this);
+      }
+      this.numberOfKeys = numberOfKeys;
+      hotKeys = Math.max(1, Math.min(numberOfKeys, (int) (numberOfKeys * hotKeysPercentage / 100)));
+   }
+
+   @Override
+   public int nextKeyIndex(boolean write, Random random) {
+      if (hotKeys == numberOfKeys || random.nextDouble() * 100 < hotOpsPercentage) {
+         return random.nextInt(hotKeys);
+      }
+      return hotKeys + random.nextInt(numberOfKeys - hotKeys);
+   }
+
+   public double getHotOpsPercentage() {
+      return hotOpsPercentage;
+   }
+
+   public void setHotOpsPercentage(double hotOpsPercentage) {
+      this.hotOpsPercentage = hotOpsPercentage;
+   }
+
+   public double getHotKeysPercentage() {
+      return hotKeysPercentage;
+   }
+
+   public void setHotKeysPercentage(double hotKeysPercentage) {
+      this.hotKeysPercentage = hotKeysPercentage;
+   }
+
+   @Override
+   public String toString() {
+      return "HotspotKeySelector{" +
+            "hotOpsPercentage=" + hotOpsPercentage +
+            ", hotKeysPercentage=" + hotKeysPercentage +
+            '}';
+   }
+}
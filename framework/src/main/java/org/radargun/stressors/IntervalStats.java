@@ -0,0 +1,136 @@
+package org.radargun.stressors;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.radargun.protocol.BinaryExternalizer;
+import org.radargun.protocol.BinaryInput;
+import org.radargun.protocol.BinaryOutput;
+
+/**
+ * Statistics of the operations executed by {@link PutGetStressor} on one node during one interval (one second by
+ * default). Latencies are in nanoseconds.
+ */
+public class IntervalStats implements Serializable {
+
+   private static final long serialVersionUID = -4256437894316352571L;
+
+   private final long timestamp;
+   private final long durationMillis;
+   private final long reads;
+   private final long writes;
+   private final long failures;
+   private final long readP50;
+   private final long readP99;
+   private final long readMax;
+   private final long writeP50;
+   private final long writeP99;
+   private final long writeMax;
+
+   public IntervalStats(long timestamp, long durationMillis, long reads, long writes, long failures, long readP50,
+                        long readP99, long readMax, long writeP50, long writeP99, long writeMax) {
+      this.timestamp = timestamp;
+      this.durationMillis = durationMillis;
+      this.reads = reads;
+      this.writes = writes;
+      this.failures = failures;
+      this.readP50 = readP50;
+      this.readP99 = readP99;
+      this.readMax = readMax;
+      this.writeP50 = writeP50;
+      this.writeP99 = writeP99;
+      this.writeMax = writeMax;
+   }
+
+   /**
+    * @return the time the interval started at, as returned by System.currentTimeMillis()
+    */
+   public long getTimestamp() {
+      return timestamp;
+   }
+
+   public long getDurationMillis() {
+      return durationMillis;
+   }
+
+   public long getReads() {
+      return reads;
+   }
+
+   public long getWrites() {
+      return writes;
+   }
+
+   public long getFailures() {
+      return failures;
+   }
+
+   /**
+    * @return operations per second
+    */
+   public double getThroughput() {
+      return durationMillis == 0 ? 0 : (reads + writes) * 1000.0 / durationMillis;
+   }
+
+   public long getReadP50() {
+      return readP50;
+   }
+
+   public long getReadP99() {
+      return readP99;
+   }
+
+   public long getReadMax() {
+      return readMax;
+   }
+
+   public long getWriteP50() {
+      return writeP50;
+   }
+
+   public long getWriteP99() {
+      return writeP99;
+   }
+
+   public long getWriteMax() {
+      return writeMax;
+   }
+
+   @Override
+   public String toString() {
+      return "IntervalStats{" +
+            "timestamp=" + timestamp +
+            ", durationMillis=" + durationMillis +
+            ", reads=" + reads +
+            ", writes=" + writes +
+            ", failures=" + failures +
+            ", readP99=" + readP99 +
+            ", writeP99=" + writeP99 +
+            '}';
+   }
+
+   /**
+    * Binary form used by {@link org.radargun.protocol.BinaryCodec}.
+    */
+   public static class Externalizer implements BinaryExternalizer<IntervalStats> {
+      public void writeObject(BinaryOutput output, IntervalStats stats) {
+         output.writeVarLong(stats.timestamp);
+         output.writeVarLong(stats.durationMillis);
+         output.writeVarLong(stats.reads);
+         output.writeVarLong(stats.writes);
+         output.writeVarLong(stats.failures);
+         output.writeVarLong(stats.readP50);
+         output.writeVarLong(stats.readP99);
+         output.writeVarLong(stats.readMax);
+         output.writeVarLong(stats.writeP50);
+         output.writeVarLong(stats.writeP99);
+         output.writeVarLong(stats.writeMax);
+      }
+
+      public IntervalStats readObject(BinaryInput input) throws IOException {
+         return new IntervalStats(input.readVarLong(), input.readVarLong(), input.readVarLong(), input.readVarLong(),
+                                  input.readVarLong(), input.readVarLong(), input.readVarLong(), input.readVarLong(),
+                                  input.readVarLong(), input.readVarLong(), input.readVarLong());
+      }
+   }
+}
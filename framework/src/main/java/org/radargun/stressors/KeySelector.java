@@ -0,0 +1,26 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Decides which of the keys generated by the {@link KeyGenerator} is used by the next operation of
+ * {@link PutGetStressor}. Implementations configured by class name must have an default/no-arg public constructor.
+ * <p/>
+ * {@link #nextKeyIndex(boolean, Random)} is called for each operation, so it should run in constant time and must not
+ * allocate.
+ * <p/>
+ * Concurrency: a separate instance is created for each stressor thread, so implementations don't need to be thread safe.
+ */
+public interface KeySelector {
+
+   /**
+    * Called once, before the stressor thread starts.
+    */
+   void init(int numberOfKeys, Random random);
+
+   /**
+    * @param write true if the key is going to be written, false if it's going to be read
+    * @return index of the key, between 0 (inclusive) and numberOfKeys (exclusive)
+    */
+   int nextKeyIndex(boolean write, Random random);
+}
@@ -0,0 +1,34 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Models recency: writes go to the keys one after another (like sessions being created) and reads prefer the most
+ * recently written keys. The distance from the last written key follows a Zipfian distribution.
+ */
+public class LatestKeySelector extends ZipfianKeySelector {
+
+   private int numberOfKeys;
+   private int latest;
+
+   public LatestKeySelector() {
+      setScrambled(false);
+   }
+
+   @Override
+   public void init(int numberOfKeys, Random random) {
+      super.init(numberOfKeys, random);
+      this.numberOfKeys = numberOfKeys;
+      latest = numberOfKeys - 1;
+   }
+
+   @Override
+   public int nextKeyIndex(boolean write, Random random) {
+      if (write) {
+         latest = latest == numberOfKeys - 1 ? 0 : latest + 1;
+         return latest;
+      }
+      int index = latest - nextRank(random);
+      return index < 0 ? index + numberOfKeys : index;
+   }
+}
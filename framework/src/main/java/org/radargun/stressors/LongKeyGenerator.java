@@ -0,0 +1,26 @@
+package org.radargun.stressors;
+
+/**
+ * Generates {@link Long} keys: the node index, the thread index and the key index are packed into 16, 16 and 32 bits
+ * of a single long. Such a key takes a fraction of the memory of a String key, hashes without walking characters and
+ * is marshalled in a few bytes by most of the products. Node and thread indexes are truncated to 16 bits (so -1,
+ * used for the shared keys, becomes 0xFFFF).
+ */
+public class LongKeyGenerator implements KeyGenerator {
+
+   private static final long LOCAL_NODE = 0xFFFEL;
+
+   @Override
+   public Object generateKey(int nodeIndex, int threadIndex, int keyIndex) {
+      return pack(nodeIndex & 0xFFFFL, threadIndex, keyIndex);
+   }
+
+   @Override
+   public Object generateKey(int threadIndex, int keyIndex) {
+      return pack(LOCAL_NODE, threadIndex, keyIndex);
+   }
+
+   private static long pack(long node, int threadIndex, int keyIndex) {
+      return (node << 48) | ((threadIndex & 0xFFFFL) << 32) | (keyIndex & 0xFFFFFFFFL);
+   }
+}
@@ -3,19 +3,42 @@ package org.radargun.stressors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.radargun.CacheWrapper;
+import org.radargun.ProgressListener;
+import org.radargun.StartBarrier;
+import org.radargun.utils.AsyncOperations;
+import org.radargun.utils.BulkOperations;
+import org.radargun.utils.LatencyHistogram;
+import org.radargun.utils.RateLimiter;
 import org.radargun.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * On multiple threads executes put and get operations against the CacheWrapper, and returns the result as an Map.
+ * Besides the average throughput, the result contains the latency percentiles (p50, p90, p99, p99.9 and max, in
+ * nanoseconds) of reads, writes and transaction commits.
+ * <p/>
+ * By default each thread runs in a closed loop: the next operation is issued as soon as the previous one returns. If
+ * {@link #setTargetRequestsPerSec(double)} is set, operations are instead issued at a fixed arrival rate: every
+ * operation has an intended start time and its latency is measured from that time, not from the moment it was actually
+ * issued. A stall of the cache therefore shows up in the latencies of all the operations that should have been executed
+ * meanwhile (i.e. the results are corrected for coordinated omission).
  *
  * @author Mircea.Markus@jboss.com
  */
@@ -23,6 +46,8 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
 
    private static final Log log = LogFactory.getLog(PutGetStressor.class);
 
+   private static final String SHARED_BUCKET = "shared";
+
    private int opsCountStatusLog = 5000;
 
    /**
@@ -50,6 +75,25 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
     */
    private long durationMillis = -1;
 
+   /**
+    * Number of requests per second this node should issue, evenly spread across the threads. Negative values mean
+    * no rate is enforced and each thread runs in a closed loop.
+    */
+   private double targetRequestsPerSec = -1;
+
+   /**
+    * With targetRequestsPerSec, 'thread' (default) gives each thread its own share of the rate, 'node' makes all the
+    * threads take turns on a single schedule, so the node rate is kept even if some threads are slower than others.
+    */
+   private String rateLimiterScope = "thread";
+
+   /**
+    * With targetRequestsPerSec, the number of requests missed while the threads were behind schedule that can be
+    * sent in a burst to catch up (token bucket). Negative (default) keeps the precise schedule: all the missed requests
+    * are sent and their latency counts the time they should have been waiting to be sent.
+    */
+   private int rateLimiterBurst = -1;
+
 
    /**
     * the number of threads that will work on this cache wrapper.
@@ -61,28 +105,184 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
     */
    private int nodeIndex = -1;
 
+   /**
+    * Position of this node among the nodes running the stressor, from 0 to numNodes - 1; it differs from nodeIndex
+    * when some nodes have left the cluster. Each node loads its slice of the shared keyspace.
+    */
+   private int nodePosition = 0;
+
+   private int numNodes = 1;
+
    private int transactionSize = 1;
 
    private boolean useTransactions = false;
 
    private boolean commitTransactions = true;
 
-   private AtomicInteger txCount = new AtomicInteger(0);
-
    private String keyGeneratorClass = StringKeyGenerator.class.getName();
 
    private KeyGenerator keyGenerator;
 
+   /**
+    * How the keys are selected for each operation: uniform, zipfian, hotspot, latest, or the name of a class
+    * implementing {@link KeySelector}.
+    */
+   private String keyDistribution = "uniform";
+
+   /**
+    * Skew of the zipfian and latest distributions, between 0 and 1 (exclusive).
+    */
+   private double zipfianTheta = 0.99;
+
+   /**
+    * Percentage of operations going to the hot keys when the hotspot distribution is used.
+    */
+   private double hotspotOpsPercentage = 80;
+
+   /**
+    * Percentage of keys that are hot when the hotspot distribution is used.
+    */
+   private double hotspotKeysPercentage = 20;
+
+   /**
+    * Percentage of operations that go to the keyspace shared by all the threads on all the nodes, instead of the
+    * keys owned by the thread. 0 (default) means that threads never access the same entries.
+    */
+   private int sharedKeysPercentage = 0;
+
+   /**
+    * Number of keys in the shared keyspace.
+    */
+   private int numberOfSharedKeys = 100;
+
+   /**
+    * Number of entries read or written by each operation. If bigger than 1, the entries are accessed through
+    * getAll/putAll and the read/write counts and throughput are per entry, while latencies are per operation. The
+    * number of operations is reported separately, and targetRequestsPerSec is in operations.
+    */
+   private int batchSize = 1;
+
+   /**
+    * Maximum number of requests each thread keeps in flight, using the asynchronous operations of the wrapper. 1 means
+    * that the operations are synchronous. Can't be combined with transactions or batches.
+    */
+   private int maxOutstandingRequests = 1;
+
+   /**
+    * Length of the intervals for which the throughput and latencies are recorded, see {@link #getIntervalStats()}.
+    * 0 disables the per-interval statistics.
+    */
+   private long statsIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+   /**
+    * How often the statistics of the running test are passed to the progress listener, if there is one. 0 disables
+    * the progress reports. Requires the per-interval statistics to be enabled.
+    */
+   private long progressIntervalNanos = TimeUnit.SECONDS.toNanos(10);
+
+   private ProgressListener progressListener;
+
+   private StartBarrier startBarrier;
+
+   /**
+    * If true, the throughput of each interval is watched while the test runs. Once the coefficient of variation of the
+    * last steadyStateWindow intervals drops below steadyStateMaxCv, the statistics recorded so far are discarded as
+    * warm-up. Requires the per-interval statistics to be enabled.
+    */
+   private boolean detectSteadyState = false;
+
+   private int steadyStateWindow = 10;
+
+   private double steadyStateMaxCv = 0.05;
+
+   /**
+    * If positive, a duration based test is stopped once the 95% confidence interval of the mean throughput after
+    * reaching steady state is narrower than this percentage of the mean (e.g. 1 for +-1%).
+    */
+   private double targetConfidenceInterval = -1;
+
+   /**
+    * Number of simulated clients on this node, multiplexed over the numOfThreads stressor threads. Each client sends
+    * a request, waits for the response and then for thinkTime before sending the next one. If not set, each thread
+    * is a single client without think time.
+    */
+   private int numOfClients = -1;
+
+   private long thinkTimeNanos = 0;
+
+   private String valueGeneratorClass = StringValueGenerator.class.getName();
+
+   /**
+    * Distribution of the value sizes, e.g. 'lognormal(4k, 1.5, 200, 2m)', see {@link ValueSizeDistribution}. If not
+    * set, all the values have sizeOfValue bytes. As the values are generated up front, numberOfValues should be big
+    * enough for the tail of the distribution to be represented.
+    */
+   private String valueSizeDistribution;
+
+   /**
+    * Percentage (0 - 100) of each value that is redundant, for testing products that compress the values. 0 (default)
+    * means random content.
+    */
+   private double valueCompressibility = 0;
+
+   /**
+    * Number of distinct values each stressor thread writes. Values are generated before the test starts.
+    */
+   private int numberOfValues = 100;
+
+   /**
+    * If true, each write gets a copy of a pooled value with a few bytes changed, so that consecutive writes differ.
+    */
+   private boolean mutateValues = false;
+
+   /**
+    * If true (default), each stressor thread generates its keys once and keeps them in a list. If false, keys are
+    * generated from their index each time they are used, so no key is retained between operations: the memory
+    * needed on the stressor side doesn't grow with numberOfKeys, at the cost of a short-lived key allocation per
+    * operation. Best combined with a cheap key generator such as {@link LongKeyGenerator}.
+    */
+   private boolean poolKeys = true;
 
    private CacheWrapper cacheWrapper;
-   private static final Random r = new Random();
    private volatile long startNanos;
    private volatile CountDownLatch startPoint;
+   private volatile long scheduleStartNanos;
+   private volatile long scheduleStartMillis;
+   private volatile long runDurationNanos;
+   private volatile long measurementStartNanos;
+   private volatile long measuredDurationNanos;
+   private volatile int resetEpoch;
+   private volatile boolean stopRequested;
+   private volatile SteadyStateDetector steadyStateDetector;
    private volatile StressorCompletion completion;
+   private volatile RateLimiter nodeRateLimiter;
+   private List<Object> sharedKeys;
+   private ValueSizeDistribution valueSizes;
+   private volatile List<IntervalStats> intervalStats;
+   private volatile boolean reportProgress;
 
 
    public Map<String, String> stress(CacheWrapper wrapper) {
       this.cacheWrapper = wrapper;
+      if (isAsync() && (useTransactions || batchSize > 1)) {
+         throw new IllegalStateException("maxOutstandingRequests can't be used together with transactions or batches");
+      }
+      if (isOpenLoop() && isClientMode()) {
+         throw new IllegalStateException("targetRequestsPerSec and numOfClients can't be used together");
+      }
+      if (isAsync() && isClientMode()) {
+         // a client sends its next request only after the response to the previous one
+         throw new IllegalStateException("maxOutstandingRequests and numOfClients can't be used together");
+      }
+      if (!"thread".equalsIgnoreCase(rateLimiterScope) && !"node".equalsIgnoreCase(rateLimiterScope)) {
+         throw new IllegalArgumentException("rateLimiterScope must be 'thread' or 'node': " + rateLimiterScope);
+      }
+      valueSizes = valueSizeDistribution == null ? ValueSizeDistribution.fixed(sizeOfValue)
+            : ValueSizeDistribution.parse(valueSizeDistribution);
+      stopRequested = false;
+      steadyStateDetector = null;
+      nodeRateLimiter = null;
+      reportProgress = progressListener != null && progressIntervalNanos > 0 && statsIntervalNanos > 0;
       startNanos = System.nanoTime();
       log.info("Executing: " + this.toString());
       if (durationMillis > 0) {
@@ -97,6 +297,9 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       } catch (Exception e) {
          throw new RuntimeException(e);
       }
+      if (statsIntervalNanos > 0) {
+         intervalStats = mergeIntervals(stressors);
+      }
       return processResults(stressors);
    }
 
@@ -110,19 +313,49 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       long transactionDuration = 0;
       int reads = 0;
       int writes = 0;
+      long readOps = 0;
+      long writeOps = 0;
+      long txCount = 0;
       int failures = 0;
+      long missedSchedule = 0;
+      long lockTimeouts = 0;
+      long writeSkews = 0;
+      long txRollbacks = 0;
+      long maxScheduleLag = 0;
       long readsDurations = 0;
       long writesDurations = 0;
+      long bytesRead = 0;
+      long bytesWritten = 0;
+      LatencyHistogram readLatencies = new LatencyHistogram();
+      LatencyHistogram writeLatencies = new LatencyHistogram();
+      LatencyHistogram commitLatencies = new LatencyHistogram();
+      LatencyHistogram sharedReadLatencies = new LatencyHistogram();
+      LatencyHistogram sharedWriteLatencies = new LatencyHistogram();
 
       for (Stressor stressor : stressors) {
          duration += stressor.totalDuration();
          readsDurations += stressor.readDuration;
          writesDurations += stressor.writeDuration;
          transactionDuration += stressor.getTransactionsDuration();
+         readLatencies.merge(stressor.readLatencies);
+         writeLatencies.merge(stressor.writeLatencies);
+         commitLatencies.merge(stressor.commitLatencies);
+         sharedReadLatencies.merge(stressor.sharedReadLatencies);
+         sharedWriteLatencies.merge(stressor.sharedWriteLatencies);
 
          reads += stressor.reads;
          writes += stressor.writes;
+         readOps += stressor.readOps;
+         writeOps += stressor.writeOps;
+         txCount += stressor.txCount;
          failures += stressor.nrFailures;
+         missedSchedule += stressor.missedSchedule;
+         maxScheduleLag = Math.max(maxScheduleLag, stressor.maxScheduleLag);
+         lockTimeouts += stressor.lockTimeouts;
+         writeSkews += stressor.writeSkews;
+         txRollbacks += stressor.txRollbacks;
+         bytesRead += stressor.bytesRead;
+         bytesWritten += stressor.bytesWritten;
       }
 
       Map<String, String> results = new LinkedHashMap<String, String>();
@@ -133,19 +366,122 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       results.put("WRITES_PER_SEC", str(writes / ((writesDurations / numOfThreads) / 1000000000.0)));
       results.put("READ_COUNT", str(reads));
       results.put("WRITE_COUNT", str(writes));
+      if (batchSize > 1) {
+         results.put("OPS_PER_SEC", str((readOps + writeOps) / ((duration / numOfThreads) / 1000000000.0)));
+         results.put("READ_OPS", str(readOps));
+         results.put("WRITE_OPS", str(writeOps));
+      }
       results.put("FAILURES", str(failures));
       if (useTransactions) {
-         double txPerSec = txCount.get() / ((transactionDuration / numOfThreads) / 1000.0);
+         double txPerSec = txCount / ((transactionDuration / numOfThreads) / 1000.0);
          results.put("TX_PER_SEC", str(txPerSec));
       }
+      addPercentiles(results, "READ", readLatencies);
+      addPercentiles(results, "WRITE", writeLatencies);
+      if (useTransactions) {
+         addPercentiles(results, "TX_COMMIT", commitLatencies);
+      }
+      if (isOpenLoop()) {
+         results.put("TARGET_REQ_PER_SEC", str(targetRequestsPerSec));
+      }
+      if (isClientMode()) {
+         results.put("CLIENTS", str(numOfClients));
+      }
+      if (isScheduled()) {
+         // the schedule is in operations, whatever the batch size
+         long ops = readOps + writeOps;
+         results.put("ACTUAL_REQ_PER_SEC", str(ops / (measuredDurationNanos / 1000000000.0)));
+         if (batchSize > 1) {
+            results.put("ACTUAL_ENTRIES_PER_SEC", str((reads + writes) / (measuredDurationNanos / 1000000000.0)));
+         }
+         results.put("MISSED_SCHEDULE_PERCENTAGE", str(ops == 0 ? 0 : 100.0 * missedSchedule / ops));
+         results.put("MAX_SCHEDULE_LAG_NANOS", str(maxScheduleLag));
+      }
+      if (isSharedKeyspace()) {
+         addPercentiles(results, "SHARED_READ", sharedReadLatencies);
+         addPercentiles(results, "SHARED_WRITE", sharedWriteLatencies);
+      }
+      if (steadyStateDetector != null) {
+         boolean steady = steadyStateDetector.isSteady();
+         results.put("STEADY_STATE_REACHED", str(steady));
+         results.put("WARMUP_MILLIS", str(steady ? TimeUnit.NANOSECONDS.toMillis(measurementStartNanos - scheduleStartNanos) : -1));
+         results.put("THROUGHPUT_CI_PERCENTAGE", str(100 * steadyStateDetector.getRelativeConfidenceInterval()));
+         results.put("STOPPED_EARLY", str(stopRequested));
+      }
+      results.put("LOCK_TIMEOUTS", str(lockTimeouts));
+      results.put("WRITE_SKEWS", str(writeSkews));
+      if (useTransactions) {
+         results.put("TX_ROLLBACKS", str(txRollbacks));
+      }
+      results.put("READ_BYTES_PER_SEC", str(bytesRead / ((readsDurations / numOfThreads) / 1000000000.0)));
+      results.put("WRITE_BYTES_PER_SEC", str(bytesWritten / ((writesDurations / numOfThreads) / 1000000000.0)));
       log.info("Finished generating report. Nr of failed operations on this node is: " + failures +
                      ". Test duration is: " + Utils.getNanosDurationString(System.nanoTime() - startNanos));
       return results;
    }
 
+   /**
+    * Merges the intervals recorded by the stressor threads. Intervals in which no thread did anything are reported
+    * with zero operations.
+    */
+   private List<IntervalStats> mergeIntervals(List<Stressor> stressors) {
+      int intervalCount = (int) ((runDurationNanos + statsIntervalNanos - 1) / statsIntervalNanos);
+      long[] reads = new long[intervalCount];
+      long[] writes = new long[intervalCount];
+      long[] failures = new long[intervalCount];
+      LatencyHistogram[] readLatencies = new LatencyHistogram[intervalCount];
+      LatencyHistogram[] writeLatencies = new LatencyHistogram[intervalCount];
+      for (Stressor stressor : stressors) {
+         for (IntervalRecord record : stressor.intervalRecords) {
+            int index = (int) Math.min(record.index, intervalCount - 1);
+            reads[index] += record.reads;
+            writes[index] += record.writes;
+            failures[index] += record.failures;
+            if (readLatencies[index] == null) {
+               readLatencies[index] = new LatencyHistogram();
+               writeLatencies[index] = new LatencyHistogram();
+            }
+            readLatencies[index].mergeSparseArray(record.readLatencies);
+            writeLatencies[index].mergeSparseArray(record.writeLatencies);
+         }
+      }
+      LatencyHistogram empty = new LatencyHistogram();
+      long intervalMillis = TimeUnit.NANOSECONDS.toMillis(statsIntervalNanos);
+      long runMillis = TimeUnit.NANOSECONDS.toMillis(runDurationNanos);
+      List<IntervalStats> result = new ArrayList<IntervalStats>(intervalCount);
+      for (int i = 0; i < intervalCount; i++) {
+         LatencyHistogram read = readLatencies[i] == null ? empty : readLatencies[i];
+         LatencyHistogram write = writeLatencies[i] == null ? empty : writeLatencies[i];
+         long duration = Math.min(intervalMillis, runMillis - i * intervalMillis);
+         result.add(new IntervalStats(scheduleStartMillis + i * intervalMillis, Math.max(duration, 1), reads[i],
+                                      writes[i], failures[i], read.getValueAtPercentile(50),
+                                      read.getValueAtPercentile(99), read.getMax(), write.getValueAtPercentile(50),
+                                      write.getValueAtPercentile(99), write.getMax()));
+      }
+      return result;
+   }
+
+   /**
+    * @return statistics of each interval of the last {@link #stress(CacheWrapper)} run, or null if disabled
+    */
+   public List<IntervalStats> getIntervalStats() {
+      return intervalStats;
+   }
+
+   private void addPercentiles(Map<String, String> results, String prefix, LatencyHistogram latencies) {
+      results.put(prefix + "_P50_NANOS", str(latencies.getValueAtPercentile(50)));
+      results.put(prefix + "_P90_NANOS", str(latencies.getValueAtPercentile(90)));
+      results.put(prefix + "_P99_NANOS", str(latencies.getValueAtPercentile(99)));
+      results.put(prefix + "_P999_NANOS", str(latencies.getValueAtPercentile(99.9)));
+      results.put(prefix + "_MAX_NANOS", str(latencies.getMax()));
+   }
+
    private List<Stressor> executeOperations() throws Exception {
       List<Stressor> stressors = new ArrayList<Stressor>(numOfThreads);
       startPoint = new CountDownLatch(1);
+      if (isSharedKeyspace()) {
+         initialiseSharedKeys();
+      }
       for (int threadIndex = 0; threadIndex < numOfThreads; threadIndex++) {
          Stressor stressor = new Stressor(threadIndex);
          stressor.initialiseKeys();
@@ -153,32 +489,230 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
          stressor.start();
       }
       log.info("Cache wrapper info is: " + cacheWrapper.getInfo());
+      if (startBarrier != null) {
+         try {
+            awaitClusterStart();
+         } catch (Exception e) {
+            // let the stressor threads finish without doing anything
+            stopRequested = true;
+            startPoint.countDown();
+            throw e;
+         }
+      } else {
+         scheduleStartMillis = System.currentTimeMillis();
+         scheduleStartNanos = System.nanoTime();
+      }
+      measurementStartNanos = scheduleStartNanos;
+      if (isOpenLoop() && "node".equalsIgnoreCase(rateLimiterScope)) {
+         nodeRateLimiter = new RateLimiter(targetRequestsPerSec, rateLimiterBurst, scheduleStartNanos);
+      }
+      // the time spent initialising the keys and waiting for the other slaves doesn't count into the duration
+      completion.start(scheduleStartNanos);
       startPoint.countDown();
       log.info("Started " + stressors.size() + " stressor threads.");
+      SteadyStateCollector collector = null;
+      if (detectSteadyState && statsIntervalNanos > 0) {
+         collector = new SteadyStateCollector(stressors);
+         collector.start();
+      }
+      ProgressReporter reporter = null;
+      if (reportProgress) {
+         reporter = new ProgressReporter(stressors);
+         reporter.start();
+      }
       for (Stressor stressor : stressors) {
          stressor.join();
       }
+      long end = System.nanoTime();
+      runDurationNanos = end - scheduleStartNanos;
+      measuredDurationNanos = end - measurementStartNanos;
+      if (collector != null) {
+         collector.interrupt();
+         collector.join();
+      }
+      if (reporter != null) {
+         reporter.interrupt();
+         reporter.join();
+      }
       return stressors;
    }
 
+   /**
+    * Waits for the other slaves and then until the common start time. The intervals are counted from the common start
+    * time, converted to this node's clock, so that the same interval covers the same period on all the nodes and its
+    * timestamp, in the master's clock, is the same too.
+    */
+   private void awaitClusterStart() throws InterruptedException {
+      long masterStartMillis = startBarrier.awaitStart();
+      long delayMillis = masterStartMillis - startBarrier.getClockOffset() - System.currentTimeMillis();
+      scheduleStartNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      scheduleStartMillis = masterStartMillis;
+      if (delayMillis < 0) {
+         log.warn("The start time was received " + (-delayMillis) + " ms late, the other slaves have already started");
+      }
+      long remaining;
+      while ((remaining = scheduleStartNanos - System.nanoTime()) > 0) {
+         LockSupport.parkNanos(remaining);
+      }
+   }
+
+   private KeySelector createKeySelector() {
+      if ("uniform".equalsIgnoreCase(keyDistribution)) {
+         return new UniformKeySelector();
+      } else if ("zipfian".equalsIgnoreCase(keyDistribution)) {
+         ZipfianKeySelector selector = new ZipfianKeySelector();
+         selector.setTheta(zipfianTheta);
+         return selector;
+      } else if ("latest".equalsIgnoreCase(keyDistribution)) {
+         LatestKeySelector selector = new LatestKeySelector();
+         selector.setTheta(zipfianTheta);
+         return selector;
+      } else if ("hotspot".equalsIgnoreCase(keyDistribution)) {
+         HotspotKeySelector selector = new HotspotKeySelector();
+         selector.setHotOpsPercentage(hotspotOpsPercentage);
+         selector.setHotKeysPercentage(hotspotKeysPercentage);
+         return selector;
+      }
+      return (KeySelector) Utils.instantiate(keyDistribution);
+   }
+
+   /**
+    * The shared keys are generated with -1 as node and thread index, so they're the same on all the nodes.
+    */
+   private Object generateSharedKey(int keyIndex) {
+      if (isLocalBenchmark()) {
+         return getKeyGenerator().generateKey(-1, keyIndex);
+      } else {
+         return getKeyGenerator().generateKey(-1, -1, keyIndex);
+      }
+   }
+
+   /**
+    * Each node writes only its slice of the shared keys, so that the shared keyspace is loaded once whatever the size
+    * of the cluster. The load starts once all the nodes are past the start barrier, i.e. once all the slices are
+    * written; without the barrier, a node can't tell when the others are done, so each node writes all the keys.
+    */
+   private void initialiseSharedKeys() {
+      sharedKeys = poolKeys ? new ArrayList<Object>(numberOfSharedKeys) : null;
+      ValueGenerator valueGenerator = (ValueGenerator) Utils.instantiate(valueGeneratorClass);
+      Random random = new Random();
+      valueGenerator.init(valueSizes, 1, false, valueCompressibility, random);
+      boolean sliced = startBarrier != null && !isLocalBenchmark() && numNodes > 1;
+      int loaded = 0;
+      int failed = 0;
+      for (int keyIndex = 0; keyIndex < numberOfSharedKeys; keyIndex++) {
+         Object key = generateSharedKey(keyIndex);
+         if (poolKeys) {
+            sharedKeys.add(key);
+         }
+         if (sliced && keyIndex % numNodes != nodePosition) {
+            continue;
+         }
+         try {
+            cacheWrapper.put(SHARED_BUCKET, key, valueGenerator.nextValue(random));
+            loaded++;
+         } catch (Throwable e) {
+            log.warn("Error while initializing the shared key " + key, e);
+            failed++;
+         }
+      }
+      if (failed > 0) {
+         // no other node writes these keys
+         throw new IllegalStateException("Could not initialize " + failed + " of the shared keys");
+      }
+      log.info("Initialized " + loaded + " of the " + numberOfSharedKeys + " shared keys");
+   }
+
+   private boolean isSharedKeyspace() {
+      return sharedKeysPercentage > 0;
+   }
+
    private boolean isLocalBenchmark() {
       return nodeIndex == -1;
    }
 
+   private boolean isAsync() {
+      return maxOutstandingRequests > 1;
+   }
+
+   private boolean isOpenLoop() {
+      return targetRequestsPerSec > 0;
+   }
+
+   private boolean isClientMode() {
+      return numOfClients > 0;
+   }
+
+   /**
+    * In open loop and client mode, each operation has an intended start time and its latency is measured from it.
+    */
+   private boolean isScheduled() {
+      return isOpenLoop() || isClientMode();
+   }
+
    protected class Stressor extends Thread {
 
-      private ArrayList<Object> pooledKeys = new ArrayList<Object>(numberOfKeys);
+      private ArrayList<Object> pooledKeys = new ArrayList<Object>(poolKeys ? numberOfKeys : 0);
+      private final Random r = new Random();
+      private final ValueGenerator valueGenerator = (ValueGenerator) Utils.instantiate(valueGeneratorClass);
+      private final KeySelector keySelector = createKeySelector();
+      private final KeySelector sharedKeySelector = isSharedKeyspace() ? createKeySelector() : null;
 
       private int threadIndex;
       private int nrFailures;
       private long readDuration = 0;
       private long writeDuration = 0;
       private long transactionDuration = 0;
+      // entries, and operations which access batchSize entries each
       private long reads;
       private long writes;
+      private long readOps;
+      private long writeOps;
+      private long bytesRead;
+      private long bytesWritten;
+      private final LatencyHistogram readLatencies = new LatencyHistogram();
+      private final LatencyHistogram writeLatencies = new LatencyHistogram();
+      private final LatencyHistogram commitLatencies = new LatencyHistogram();
+      private final LatencyHistogram sharedReadLatencies = new LatencyHistogram();
+      private final LatencyHistogram sharedWriteLatencies = new LatencyHistogram();
+      private final Set<Object> batchKeys = new HashSet<Object>();
+      private final Map<Object, Object> batchEntries = new HashMap<Object, Object>();
+      private long lockTimeouts;
+
+      // number of operations since the start, written only by this thread and read by the SteadyStateCollector
+      private final AtomicLong completedOps = new AtomicLong();
+
+      // per-interval statistics, the closed intervals are kept in a compact form
+      private final List<IntervalRecord> intervalRecords = new ArrayList<IntervalRecord>();
+      private final LatencyHistogram intervalReadLatencies = statsIntervalNanos > 0 ? new LatencyHistogram() : null;
+      private final LatencyHistogram intervalWriteLatencies = statsIntervalNanos > 0 ? new LatencyHistogram() : null;
+      private long currentInterval;
+      private long intervalReads;
+      private long intervalWrites;
+      private long intervalFailures;
+      // closed intervals not yet passed to the ProgressReporter, null if the progress is not reported
+      private final Queue<IntervalRecord> publishedIntervals = reportProgress ? new ConcurrentLinkedQueue<IntervalRecord>() : null;
+
+      // used in async mode only: ring buffer of the requests in flight, oldest at outstandingHead
+      private final Future<?>[] outstanding = new Future<?>[Math.max(1, maxOutstandingRequests)];
+      private final long[] outstandingStart = new long[outstanding.length];
+      private final boolean[] outstandingWrite = new boolean[outstanding.length];
+      private final boolean[] outstandingShared = new boolean[outstanding.length];
+      private final int[] outstandingBytes = new int[outstanding.length];
+      private int outstandingHead;
+      private int outstandingCount;
+      private long writeSkews;
+      private long txCount;
+      private long txRollbacks;
       private final String bucketId;
       boolean txNotCompleted = false;
 
+      // used in open loop mode only
+      private long intervalNanos;
+      private long intendedStartNanos;
+      private long missedSchedule;
+      private long maxScheduleLag;
+
       public Stressor(int threadIndex) {
          super("Stressor-" + threadIndex);
          this.threadIndex = threadIndex;
@@ -196,9 +730,7 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
 
       private void runInternal() {
          int readPercentage = 100 - writePercentage;
-         Random r = new Random();
-         int randomAction;
-         int randomKeyInt;
+         boolean write;
          try {
             startPoint.await();
             log.trace("Starting thread: " + getName());
@@ -206,29 +738,96 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
             log.warn(e);
          }
 
+         RateLimiter rateLimiter = null;
+         if (isOpenLoop()) {
+            intervalNanos = (long) (numOfThreads * 1000000000.0 / targetRequestsPerSec);
+            if (nodeRateLimiter != null) {
+               rateLimiter = nodeRateLimiter;
+            } else {
+               // spread the threads evenly over the interval so that they don't fire at the same time
+               rateLimiter = new RateLimiter(targetRequestsPerSec / numOfThreads, rateLimiterBurst,
+                                             scheduleStartNanos + threadIndex * (intervalNanos / numOfThreads));
+            }
+         }
+         PriorityQueue<Client> clients = null;
+         if (isClientMode()) {
+            clients = createClients();
+         }
+
          int i = 0;
-         while (completion.moreToRun()) {
-            randomAction = r.nextInt(100);
-            randomKeyInt = r.nextInt(numberOfKeys - 1);
-            Object key = getKey(randomKeyInt);
+         int seenResetEpoch = 0;
+         while (!stopRequested && completion.moreToRun()) {
+            if (seenResetEpoch != resetEpoch) {
+               seenResetEpoch = resetEpoch;
+               resetStatistics();
+            }
+            Client client = null;
+            if (rateLimiter != null) {
+               intendedStartNanos = rateLimiter.acquire();
+               recordScheduleLag(System.nanoTime() - intendedStartNanos);
+            } else if (clients != null) {
+               client = clients.poll();
+               intendedStartNanos = client.nextStartNanos;
+               recordScheduleLag(RateLimiter.parkUntil(intendedStartNanos));
+            }
+            write = r.nextInt(100) >= readPercentage;
+            boolean shared = isSharedKeyspace() && r.nextInt(100) < sharedKeysPercentage;
             Object result = null;
 
-            if (randomAction < readPercentage) {
-               result = doRead(key, i);
+            if (isAsync()) {
+               doAsync(write, shared);
+            } else if (!write) {
+               result = doRead(shared, i);
             } else {
-               String payload = generateRandomString(sizeOfValue);
-               doWrite(key, payload, i);
+               doWrite(shared, i);
+            }
+
+            if (client != null) {
+               client.nextStartNanos = System.nanoTime() + thinkTimeNanos;
+               clients.offer(client);
             }
 
             i++;
             completion.logProgress(i, result, threadIndex);
          }
 
+         while (outstandingCount > 0) {
+            completeOldest();
+         }
+         if (intervalReadLatencies != null) {
+            flushInterval();
+         }
+
          if (txNotCompleted) {
             long start = System.nanoTime();
-            completeTransaction(-1, true);
-            transactionDuration += System.nanoTime() - start;
+            commitTx(-1, true);
+            long txEndTime = System.nanoTime() - start;
+            transactionDuration += txEndTime;
+            commitLatencies.record(txEndTime);
+         }
+      }
+
+      /**
+       * Creates the clients run by this thread. Their first requests are spread randomly over the think time.
+       */
+      private PriorityQueue<Client> createClients() {
+         int clientCount = numOfClients / numOfThreads + (threadIndex < numOfClients % numOfThreads ? 1 : 0);
+         PriorityQueue<Client> clients = new PriorityQueue<Client>(Math.max(1, clientCount));
+         for (int c = 0; c < clientCount; c++) {
+            clients.add(new Client(scheduleStartNanos + (long) (r.nextDouble() * thinkTimeNanos)));
          }
+         // an operation that starts later than the average time between two requests of this thread is a miss
+         intervalNanos = thinkTimeNanos / Math.max(1, clientCount);
+         return clients;
+      }
+
+      /**
+       * If the thread was behind schedule, the operation is started immediately but its latency is still measured from
+       * the intended start.
+       */
+      private void recordScheduleLag(long lag) {
+         if (lag > intervalNanos) missedSchedule++;
+         if (lag > maxScheduleLag) maxScheduleLag = lag;
       }
 
       private long startTx(int iteration) {
@@ -247,52 +846,307 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
          long start = System.nanoTime();
          //if we commit the transaction add the time needed for transaction commit as well
          long txEndTime = 0;
-         if (completeTransaction(iteration, false)) {
+         if (commitTx(iteration, false)) {
             txEndTime = System.nanoTime() - start;
             txNotCompleted = false;
             transactionDuration += txEndTime;
+            commitLatencies.record(txEndTime);
          }
          return txEndTime;
       }
 
-      private Object doRead(Object key, int iteration) {
+      /**
+       * A failed commit ends the transaction as well, so it is counted as a rollback instead of stopping the stressor.
+       */
+      private boolean commitTx(int iteration, boolean force) {
+         try {
+            if (completeTransaction(iteration, force)) {
+               txCount++;
+               return true;
+            }
+            return false;
+         } catch (Exception e) {
+            txRollbacks++;
+            recordFailure(e);
+            return true;
+         }
+      }
+
+      /**
+       * Lock timeouts and write skews are expected under contention, so they're only counted and logged on debug.
+       * As the exception types differ between products, they're recognized by the class name or the message of the
+       * exception or of one of its causes.
+       */
+      private void recordFailure(Exception e) {
+         nrFailures++;
+         intervalFailures++;
+         for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getClass().getSimpleName().contains("Timeout")) {
+               lockTimeouts++;
+               if (log.isDebugEnabled()) log.debug("Lock timeout", e);
+               return;
+            }
+            if (t.getMessage() != null && t.getMessage().toLowerCase().contains("write skew")) {
+               writeSkews++;
+               if (log.isDebugEnabled()) log.debug("Write skew", e);
+               return;
+            }
+         }
+         log.warn(e);
+      }
+
+      private Object nextKey(boolean write, boolean shared) {
+         if (shared) {
+            int keyIndex = sharedKeySelector.nextKeyIndex(write, r);
+            return poolKeys ? sharedKeys.get(keyIndex) : generateSharedKey(keyIndex);
+         }
+         return getKey(keySelector.nextKeyIndex(write, r));
+      }
+
+      private Object doRead(boolean shared, int iteration) {
+         String bucket = shared ? SHARED_BUCKET : bucketId;
+         Object key = null;
+         if (batchSize > 1) {
+            batchKeys.clear();
+            for (int k = 0; k < batchSize; k++) {
+               batchKeys.add(nextKey(false, shared));
+            }
+         } else {
+            key = nextKey(false, shared);
+         }
          long txOverhead = 0;
          if (useTransactions) txOverhead = startTx(iteration);
 
          Object result = null;
          long start = System.nanoTime();
          try {
-            result = cacheWrapper.get(bucketId, key);
+            if (batchSize > 1) {
+               result = BulkOperations.getAll(cacheWrapper, bucket, batchKeys);
+            } else {
+               result = cacheWrapper.get(bucket, key);
+            }
          } catch (Exception e) {
-            log.warn(e);
-            nrFailures++;
+            recordFailure(e);
          }
-         long operationDuration = System.nanoTime() - start;
+         long end = System.nanoTime();
+         bytesRead += sizeOf(result);
+         long operationDuration = end - start;
+         long latency = isScheduled() ? end - intendedStartNanos : operationDuration;
+         recordRead(latency, shared, end, batchSize > 1 ? batchKeys.size() : 1);
 
          if (useTransactions) txOverhead += endTx(iteration, operationDuration);
          readDuration += operationDuration;
          if (useTransactions) readDuration += txOverhead;
-         reads++;
          return result;
       }
 
-      private void doWrite(Object key, Object payload, int iteration) {
+      private void doWrite(boolean shared, int iteration) {
+         String bucket = shared ? SHARED_BUCKET : bucketId;
+         Object key = null;
+         Object payload = null;
+         if (batchSize > 1) {
+            batchEntries.clear();
+            for (int k = 0; k < batchSize; k++) {
+               batchEntries.put(nextKey(true, shared), valueGenerator.nextValue(r));
+            }
+         } else {
+            key = nextKey(true, shared);
+            payload = valueGenerator.nextValue(r);
+         }
+         int payloadBytes = batchSize > 1 ? sizeOf(batchEntries) : valueGenerator.sizeOf(payload);
          long txOverhead = 0;
          if (useTransactions) txOverhead = startTx(iteration);
 
          long start = System.nanoTime();
          try {
-            cacheWrapper.put(bucketId, key, payload);
+            if (batchSize > 1) {
+               BulkOperations.putAll(cacheWrapper, bucket, batchEntries);
+            } else {
+               cacheWrapper.put(bucket, key, payload);
+            }
+            bytesWritten += payloadBytes;
          } catch (Exception e) {
-            log.warn(e);
-            nrFailures++;
+            recordFailure(e);
          }
-         long operationDuration = System.nanoTime() - start;
+         long end = System.nanoTime();
+         long operationDuration = end - start;
+         long latency = isScheduled() ? end - intendedStartNanos : operationDuration;
+         recordWrite(latency, shared, end, batchSize > 1 ? batchEntries.size() : 1);
 
          if (useTransactions) txOverhead += endTx(iteration, operationDuration);
          writeDuration += operationDuration;
          if (useTransactions) writeDuration += txOverhead;
-         writes++;
+      }
+
+      /**
+       * Issues the request without waiting for its response. If there are already maxOutstandingRequests in flight,
+       * the oldest one is waited for first. Responses are collected in order, so the latency of a request that
+       * completes before an older one is only recorded once the older one has completed. The time the thread spends
+       * issuing requests and waiting for responses is counted as the read/write duration.
+       */
+      private void doAsync(boolean write, boolean shared) {
+         if (outstandingCount == outstanding.length) {
+            completeOldest();
+         }
+         String bucket = shared ? SHARED_BUCKET : bucketId;
+         Object key = nextKey(write, shared);
+         Object payload = write ? valueGenerator.nextValue(r) : null;
+
+         long start = System.nanoTime();
+         Future<?> future;
+         try {
+            if (write) {
+               future = AsyncOperations.putAsync(cacheWrapper, bucket, key, payload);
+            } else {
+               future = AsyncOperations.getAsync(cacheWrapper, bucket, key);
+            }
+         } catch (Exception e) {
+            recordFailure(e);
+            future = null;
+         }
+         long issueDuration = System.nanoTime() - start;
+         if (write) {
+            writeDuration += issueDuration;
+         } else {
+            readDuration += issueDuration;
+         }
+         if (future == null) return;
+
+         int slot = (outstandingHead + outstandingCount) % outstanding.length;
+         outstanding[slot] = future;
+         outstandingStart[slot] = isScheduled() ? intendedStartNanos : start;
+         outstandingWrite[slot] = write;
+         outstandingShared[slot] = shared;
+         outstandingBytes[slot] = write ? valueGenerator.sizeOf(payload) : 0;
+         outstandingCount++;
+
+         while (outstandingCount > 0 && outstanding[outstandingHead].isDone()) {
+            completeOldest();
+         }
+      }
+
+      private void completeOldest() {
+         int slot = outstandingHead;
+         Future<?> future = outstanding[slot];
+         outstanding[slot] = null;
+         outstandingHead = (outstandingHead + 1) % outstanding.length;
+         outstandingCount--;
+
+         long waitStart = System.nanoTime();
+         Object result = null;
+         try {
+            result = future.get();
+            if (outstandingWrite[slot]) bytesWritten += outstandingBytes[slot];
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recordFailure(e);
+         } catch (Exception e) {
+            recordFailure(e);
+         }
+         long end = System.nanoTime();
+         long latency = end - outstandingStart[slot];
+         if (outstandingWrite[slot]) {
+            writeDuration += end - waitStart;
+            recordWrite(latency, outstandingShared[slot], end, 1);
+         } else {
+            readDuration += end - waitStart;
+            bytesRead += sizeOf(result);
+            recordRead(latency, outstandingShared[slot], end, 1);
+         }
+      }
+
+      /**
+       * Discards everything recorded so far except for the per-interval statistics, called once steady state is
+       * reached.
+       */
+      private void resetStatistics() {
+         nrFailures = 0;
+         readDuration = 0;
+         writeDuration = 0;
+         transactionDuration = 0;
+         reads = 0;
+         writes = 0;
+         readOps = 0;
+         writeOps = 0;
+         bytesRead = 0;
+         bytesWritten = 0;
+         readLatencies.reset();
+         writeLatencies.reset();
+         commitLatencies.reset();
+         sharedReadLatencies.reset();
+         sharedWriteLatencies.reset();
+         missedSchedule = 0;
+         maxScheduleLag = 0;
+         lockTimeouts = 0;
+         writeSkews = 0;
+         txCount = 0;
+         txRollbacks = 0;
+      }
+
+      /**
+       * @return size of a value (or of all the values of a map returned by a bulk operation) in bytes
+       */
+      private int sizeOf(Object value) {
+         if (value instanceof Map) {
+            int size = 0;
+            for (Object v : ((Map<?, ?>) value).values()) {
+               size += valueGenerator.sizeOf(v);
+            }
+            return size;
+         }
+         return valueGenerator.sizeOf(value);
+      }
+
+      private void recordRead(long latency, boolean shared, long end, int entries) {
+         readLatencies.record(latency);
+         if (shared) sharedReadLatencies.record(latency);
+         reads += entries;
+         readOps++;
+         completedOps.lazySet(completedOps.get() + 1);
+         if (intervalReadLatencies != null) {
+            rollInterval(end);
+            intervalReadLatencies.record(latency);
+            intervalReads += entries;
+         }
+      }
+
+      private void recordWrite(long latency, boolean shared, long end, int entries) {
+         writeLatencies.record(latency);
+         if (shared) sharedWriteLatencies.record(latency);
+         writes += entries;
+         writeOps++;
+         completedOps.lazySet(completedOps.get() + 1);
+         if (intervalWriteLatencies != null) {
+            rollInterval(end);
+            intervalWriteLatencies.record(latency);
+            intervalWrites += entries;
+         }
+      }
+
+      /**
+       * Closes the current interval if the given time belongs to a later one.
+       */
+      private void rollInterval(long nowNanos) {
+         long interval = (nowNanos - scheduleStartNanos) / statsIntervalNanos;
+         if (interval != currentInterval) {
+            flushInterval();
+            currentInterval = interval;
+         }
+      }
+
+      private void flushInterval() {
+         if (intervalReads + intervalWrites + intervalFailures == 0) return;
+         IntervalRecord record = new IntervalRecord(currentInterval, intervalReads, intervalWrites, intervalFailures,
+                                                    intervalReadLatencies.toSparseArray(), intervalWriteLatencies.toSparseArray());
+         intervalRecords.add(record);
+         if (publishedIntervals != null) {
+            publishedIntervals.add(record);
+         }
+         intervalReads = 0;
+         intervalWrites = 0;
+         intervalFailures = 0;
+         intervalReadLatencies.reset();
+         intervalWriteLatencies.reset();
       }
 
       public long totalDuration() {
@@ -300,16 +1154,18 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       }
 
       public void initialiseKeys() {
+         valueGenerator.init(valueSizes, numberOfValues, mutateValues, valueCompressibility, r);
+         keySelector.init(numberOfKeys, r);
+         if (sharedKeySelector != null) {
+            sharedKeySelector.init(numberOfSharedKeys, r);
+         }
          for (int keyIndex = 0; keyIndex < numberOfKeys; keyIndex++) {
             try {
-               Object key;
-               if (isLocalBenchmark()) {
-                  key = getKeyGenerator().generateKey(threadIndex, keyIndex);
-               } else {
-                  key = getKeyGenerator().generateKey(nodeIndex, threadIndex, keyIndex);
+               Object key = generateKey(keyIndex);
+               if (poolKeys) {
+                  pooledKeys.add(key);
                }
-               pooledKeys.add(key);
-               cacheWrapper.put(this.bucketId, key, generateRandomString(sizeOfValue));
+               cacheWrapper.put(this.bucketId, key, valueGenerator.nextValue(r));
             } catch (Throwable e) {
                log.warn("Error while initializing the session: ", e);
             }
@@ -317,7 +1173,15 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       }
 
       public Object getKey(int keyIndex) {
-         return pooledKeys.get(keyIndex);
+         return poolKeys ? pooledKeys.get(keyIndex) : generateKey(keyIndex);
+      }
+
+      private Object generateKey(int keyIndex) {
+         if (isLocalBenchmark()) {
+            return getKeyGenerator().generateKey(threadIndex, keyIndex);
+         } else {
+            return getKeyGenerator().generateKey(nodeIndex, threadIndex, keyIndex);
+         }
       }
 
       public long getTransactionsDuration() {
@@ -333,15 +1197,9 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       return false;
    }
 
-   private boolean completeTransaction(int i, boolean force) {
+   private boolean completeTransaction(int i, boolean force) throws Exception {
       if ((((i + 1) % transactionSize) == 0) || force) {
-         try {
-            cacheWrapper.endTransaction(commitTransactions);
-         } catch (Exception e) {
-            log.error("Issues committing the transaction", e);
-            throw new RuntimeException(e);
-         }
-         txCount.incrementAndGet();
+         cacheWrapper.endTransaction(commitTransactions);
          return true;
       }
       return false;
@@ -383,13 +1241,6 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       this.sizeOfValue = sizeOfValue;
    }
 
-   private static String generateRandomString(int size) {
-      // each char is 2 bytes
-      StringBuilder sb = new StringBuilder();
-      for (int i = 0; i < size / 2; i++) sb.append((char) (64 + r.nextInt(26)));
-      return sb.toString();
-   }
-
    public int getNodeIndex() {
       return nodeIndex;
    }
@@ -398,6 +1249,22 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       this.nodeIndex = nodeIndex;
    }
 
+   public int getNodePosition() {
+      return nodePosition;
+   }
+
+   public void setNodePosition(int nodePosition) {
+      this.nodePosition = nodePosition;
+   }
+
+   public int getNumNodes() {
+      return numNodes;
+   }
+
+   public void setNumNodes(int numNodes) {
+      this.numNodes = numNodes;
+   }
+
    public String getKeyGeneratorClass() {
       return keyGeneratorClass;
    }
@@ -416,6 +1283,208 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       return keyGenerator;
    }
 
+   public String getKeyDistribution() {
+      return keyDistribution;
+   }
+
+   public void setKeyDistribution(String keyDistribution) {
+      this.keyDistribution = keyDistribution;
+   }
+
+   public double getZipfianTheta() {
+      return zipfianTheta;
+   }
+
+   public void setZipfianTheta(double zipfianTheta) {
+      this.zipfianTheta = zipfianTheta;
+   }
+
+   public double getHotspotOpsPercentage() {
+      return hotspotOpsPercentage;
+   }
+
+   public void setHotspotOpsPercentage(double hotspotOpsPercentage) {
+      this.hotspotOpsPercentage = hotspotOpsPercentage;
+   }
+
+   public double getHotspotKeysPercentage() {
+      return hotspotKeysPercentage;
+   }
+
+   public void setHotspotKeysPercentage(double hotspotKeysPercentage) {
+      this.hotspotKeysPercentage = hotspotKeysPercentage;
+   }
+
+   public int getSharedKeysPercentage() {
+      return sharedKeysPercentage;
+   }
+
+   public void setSharedKeysPercentage(int sharedKeysPercentage) {
+      this.sharedKeysPercentage = sharedKeysPercentage;
+   }
+
+   public int getNumberOfSharedKeys() {
+      return numberOfSharedKeys;
+   }
+
+   public void setNumberOfSharedKeys(int numberOfSharedKeys) {
+      this.numberOfSharedKeys = numberOfSharedKeys;
+   }
+
+   public int getBatchSize() {
+      return batchSize;
+   }
+
+   public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+   }
+
+   public int getMaxOutstandingRequests() {
+      return maxOutstandingRequests;
+   }
+
+   public void setMaxOutstandingRequests(int maxOutstandingRequests) {
+      this.maxOutstandingRequests = maxOutstandingRequests;
+   }
+
+   public int getNumOfClients() {
+      return numOfClients;
+   }
+
+   public void setNumOfClients(int numOfClients) {
+      this.numOfClients = numOfClients;
+   }
+
+   public long getThinkTimeMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(thinkTimeNanos);
+   }
+
+   public void setThinkTimeMillis(long thinkTimeMillis) {
+      this.thinkTimeNanos = TimeUnit.MILLISECONDS.toNanos(thinkTimeMillis);
+   }
+
+   public void setThinkTime(String thinkTime) {
+      setThinkTimeMillis(Utils.string2Millis(thinkTime));
+   }
+
+   public long getStatsIntervalMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(statsIntervalNanos);
+   }
+
+   public void setStatsIntervalMillis(long statsIntervalMillis) {
+      this.statsIntervalNanos = TimeUnit.MILLISECONDS.toNanos(statsIntervalMillis);
+   }
+
+   public long getProgressIntervalMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(progressIntervalNanos);
+   }
+
+   public void setProgressIntervalMillis(long progressIntervalMillis) {
+      this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+   }
+
+   public ProgressListener getProgressListener() {
+      return progressListener;
+   }
+
+   /**
+    * @param progressListener receives the statistics of the running test every progressIntervalMillis, may be null
+    */
+   public void setProgressListener(ProgressListener progressListener) {
+      this.progressListener = progressListener;
+   }
+
+   public StartBarrier getStartBarrier() {
+      return startBarrier;
+   }
+
+   /**
+    * @param startBarrier if set, the load starts once all the slaves are ready, at the same time on all of them
+    */
+   public void setStartBarrier(StartBarrier startBarrier) {
+      this.startBarrier = startBarrier;
+   }
+
+   public boolean isDetectSteadyState() {
+      return detectSteadyState;
+   }
+
+   public void setDetectSteadyState(boolean detectSteadyState) {
+      this.detectSteadyState = detectSteadyState;
+   }
+
+   public int getSteadyStateWindow() {
+      return steadyStateWindow;
+   }
+
+   public void setSteadyStateWindow(int steadyStateWindow) {
+      this.steadyStateWindow = steadyStateWindow;
+   }
+
+   public double getSteadyStateMaxCv() {
+      return steadyStateMaxCv;
+   }
+
+   public void setSteadyStateMaxCv(double steadyStateMaxCv) {
+      this.steadyStateMaxCv = steadyStateMaxCv;
+   }
+
+   public double getTargetConfidenceInterval() {
+      return targetConfidenceInterval;
+   }
+
+   public void setTargetConfidenceInterval(double targetConfidenceInterval) {
+      this.targetConfidenceInterval = targetConfidenceInterval;
+   }
+
+   public String getValueGeneratorClass() {
+      return valueGeneratorClass;
+   }
+
+   public void setValueGeneratorClass(String valueGeneratorClass) {
+      this.valueGeneratorClass = valueGeneratorClass;
+   }
+
+   public int getNumberOfValues() {
+      return numberOfValues;
+   }
+
+   public void setNumberOfValues(int numberOfValues) {
+      this.numberOfValues = numberOfValues;
+   }
+
+   public boolean isMutateValues() {
+      return mutateValues;
+   }
+
+   public void setMutateValues(boolean mutateValues) {
+      this.mutateValues = mutateValues;
+   }
+
+   public String getValueSizeDistribution() {
+      return valueSizeDistribution;
+   }
+
+   public void setValueSizeDistribution(String valueSizeDistribution) {
+      this.valueSizeDistribution = valueSizeDistribution;
+   }
+
+   public double getValueCompressibility() {
+      return valueCompressibility;
+   }
+
+   public void setValueCompressibility(double valueCompressibility) {
+      this.valueCompressibility = valueCompressibility;
+   }
+
+   public boolean isPoolKeys() {
+      return poolKeys;
+   }
+
+   public void setPoolKeys(boolean poolKeys) {
+      this.poolKeys = poolKeys;
+   }
+
    public int getTransactionSize() {
       return transactionSize;
    }
@@ -452,9 +1521,194 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       this.durationMillis = Utils.string2Millis(duration);
    }
 
+   public String getRateLimiterScope() {
+      return rateLimiterScope;
+   }
+
+   public void setRateLimiterScope(String rateLimiterScope) {
+      this.rateLimiterScope = rateLimiterScope;
+   }
+
+   public int getRateLimiterBurst() {
+      return rateLimiterBurst;
+   }
+
+   public void setRateLimiterBurst(int rateLimiterBurst) {
+      this.rateLimiterBurst = rateLimiterBurst;
+   }
+
+   public double getTargetRequestsPerSec() {
+      return targetRequestsPerSec;
+   }
+
+   public void setTargetRequestsPerSec(double targetRequestsPerSec) {
+      this.targetRequestsPerSec = targetRequestsPerSec;
+   }
+
+
+   /**
+    * Samples the throughput of all the stressor threads once per interval and feeds it to the steady state detector.
+    * When steady state is reached the stressor threads are asked to reset their statistics, and when the confidence
+    * interval is narrow enough a duration based test is stopped.
+    */
+   private class SteadyStateCollector extends Thread {
+      private final List<Stressor> stressors;
+
+      private SteadyStateCollector(List<Stressor> stressors) {
+         super("SteadyStateCollector");
+         setDaemon(true);
+         this.stressors = stressors;
+         steadyStateDetector = new SteadyStateDetector(steadyStateWindow, steadyStateMaxCv);
+      }
+
+      @Override
+      public void run() {
+         long nextSample = scheduleStartNanos + statsIntervalNanos;
+         long lastOps = 0;
+         while (!isInterrupted()) {
+            long remaining = nextSample - System.nanoTime();
+            if (remaining > 0) {
+               LockSupport.parkNanos(remaining);
+               continue;
+            }
+            long ops = 0;
+            for (Stressor stressor : stressors) {
+               ops += stressor.completedOps.get();
+            }
+            double throughput = (ops - lastOps) * 1000000000.0 / statsIntervalNanos;
+            lastOps = ops;
+            nextSample += statsIntervalNanos;
+
+            if (steadyStateDetector.addSample(throughput)) {
+               measurementStartNanos = System.nanoTime();
+               // each stressor thread resets all its statistics itself when it sees the new epoch
+               resetEpoch++;
+               log.info("Steady state reached after " + Utils.getNanosDurationString(measurementStartNanos - scheduleStartNanos) +
+                              ", throughput is " + throughput + " ops/sec. Discarding the statistics recorded so far.");
+            } else if (steadyStateDetector.isSteady() && targetConfidenceInterval > 0 && durationMillis > 0
+                  && steadyStateDetector.getSteadySamples() >= steadyStateWindow
+                  && 100 * steadyStateDetector.getRelativeConfidenceInterval() <= targetConfidenceInterval) {
+               log.info("Mean throughput " + steadyStateDetector.getSteadyMean() + " ops/sec is known with +-" +
+                              100 * steadyStateDetector.getRelativeConfidenceInterval() + "% confidence interval, stopping the test.");
+               stopRequested = true;
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Periodically collects the intervals closed by the stressor threads and passes their sum to the progress listener.
+    * As the threads close their intervals lazily, a report may miss the last interval of an idle thread; it is included
+    * in a later report.
+    */
+   private class ProgressReporter extends Thread {
+      private final List<Stressor> stressors;
+
+      private ProgressReporter(List<Stressor> stressors) {
+         super("ProgressReporter");
+         setDaemon(true);
+         this.stressors = stressors;
+      }
+
+      @Override
+      public void run() {
+         long lastReportMillis = scheduleStartMillis;
+         long nextReport = scheduleStartNanos + progressIntervalNanos;
+         while (!isInterrupted()) {
+            long remaining = nextReport - System.nanoTime();
+            if (remaining > 0) {
+               LockSupport.parkNanos(remaining);
+               continue;
+            }
+            nextReport += progressIntervalNanos;
+            lastReportMillis = report(lastReportMillis);
+         }
+         // the stressors have finished, report the rest
+         report(lastReportMillis);
+      }
+
+      private long report(long periodStartMillis) {
+         long reads = 0;
+         long writes = 0;
+         long failures = 0;
+         LatencyHistogram readLatencies = new LatencyHistogram();
+         LatencyHistogram writeLatencies = new LatencyHistogram();
+         for (Stressor stressor : stressors) {
+            IntervalRecord record;
+            while ((record = stressor.publishedIntervals.poll()) != null) {
+               reads += record.reads;
+               writes += record.writes;
+               failures += record.failures;
+               readLatencies.mergeSparseArray(record.readLatencies);
+               writeLatencies.mergeSparseArray(record.writeLatencies);
+            }
+         }
+         // in the same clock as scheduleStartMillis
+         long now = scheduleStartMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduleStartNanos);
+         IntervalStats progress = new IntervalStats(periodStartMillis, Math.max(now - periodStartMillis, 1), reads, writes,
+                                                    failures, readLatencies.getValueAtPercentile(50),
+                                                    readLatencies.getValueAtPercentile(99), readLatencies.getMax(),
+                                                    writeLatencies.getValueAtPercentile(50),
+                                                    writeLatencies.getValueAtPercentile(99), writeLatencies.getMax());
+         try {
+            progressListener.progressUpdated(progress);
+         } catch (RuntimeException e) {
+            log.warn("Failed to report the progress " + progress, e);
+         }
+         return now;
+      }
+   }
+
+   /**
+    * Statistics of one interval recorded by one stressor thread.
+    */
+   private static class IntervalRecord {
+      private final long index;
+      private final long reads;
+      private final long writes;
+      private final long failures;
+      private final long[] readLatencies;
+      private final long[] writeLatencies;
+
+      private IntervalRecord(long index, long reads, long writes, long failures, long[] readLatencies, long[] writeLatencies) {
+         this.index = index;
+         this.reads = reads;
+         this.writes = writes;
+         this.failures = failures;
+         this.readLatencies = readLatencies;
+         this.writeLatencies = writeLatencies;
+      }
+   }
+
+   /**
+    * Simulated client, e.g. a web session. Each stressor thread runs many clients, always serving the one whose next
+    * request is due first. After each request the client waits for thinkTime before sending the next one.
+    */
+   private static class Client implements Comparable<Client> {
+      private long nextStartNanos;
+
+      private Client(long nextStartNanos) {
+         this.nextStartNanos = nextStartNanos;
+      }
+
+      @Override
+      public int compareTo(Client other) {
+         return nextStartNanos < other.nextStartNanos ? -1 : (nextStartNanos == other.nextStartNanos ? 0 : 1);
+      }
+   }
 
    abstract class StressorCompletion {
- 
+
+      protected volatile long startNanos;
+
+      /**
+       * Called before the stressor threads are released, with the time the load starts at.
+       */
+      void start(long startNanos) {
+         this.startNanos = startNanos;
+      }
+
       abstract boolean moreToRun();
 
       public void logProgress(int i, Object result, int threadIndex) {
@@ -510,7 +1764,15 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
       
       TimeStressorCompletion(long durationMillis) {
          this.durationMillis = durationMillis;
-         startTime = nowMillis();
+      }
+
+      /**
+       * The duration is counted from the common start time, so that all the slaves stop at the same time too.
+       */
+      @Override
+      void start(long startNanos) {
+         super.start(startNanos);
+         startTime = TimeUnit.NANOSECONDS.toMillis(startNanos);
       }
 
       @Override
@@ -556,14 +1818,38 @@ public class PutGetStressor extends AbstractCacheWrapperStressor {
             ", numberOfRequests=" + numberOfRequests +
             ", numberOfKeys=" + numberOfKeys +
             ", sizeOfValue=" + sizeOfValue +
+            ", keyDistribution=" + keyDistribution +
+            ", sharedKeysPercentage=" + sharedKeysPercentage +
+            ", numberOfSharedKeys=" + numberOfSharedKeys +
+            ", batchSize=" + batchSize +
+            ", maxOutstandingRequests=" + maxOutstandingRequests +
+            ", numOfClients=" + numOfClients +
+            ", thinkTimeNanos=" + thinkTimeNanos +
+            ", statsIntervalNanos=" + statsIntervalNanos +
+            ", progressIntervalNanos=" + progressIntervalNanos +
+            ", detectSteadyState=" + detectSteadyState +
+            ", steadyStateWindow=" + steadyStateWindow +
+            ", steadyStateMaxCv=" + steadyStateMaxCv +
+            ", targetConfidenceInterval=" + targetConfidenceInterval +
+            ", valueGeneratorClass=" + valueGeneratorClass +
+            ", numberOfValues=" + numberOfValues +
+            ", mutateValues=" + mutateValues +
+            ", poolKeys=" + poolKeys +
+            ", valueSizeDistribution=" + valueSizeDistribution +
+            ", valueCompressibility=" + valueCompressibility +
             ", writePercentage=" + writePercentage +
             ", numOfThreads=" + numOfThreads +
             ", cacheWrapper=" + cacheWrapper +
             ", nodeIndex=" + nodeIndex +
+            ", nodePosition=" + nodePosition +
+            ", numNodes=" + numNodes +
             ", useTransactions=" + useTransactions +
             ", transactionSize=" + transactionSize +
             ", commitTransactions=" + commitTransactions +
             ", durationMillis=" + durationMillis +
+            ", targetRequestsPerSec=" + targetRequestsPerSec +
+            ", rateLimiterScope=" + rateLimiterScope +
+            ", rateLimiterBurst=" + rateLimiterBurst +
             "}";
    }
 }
@@ -0,0 +1,97 @@
+package org.radargun.stressors;
+
+/**
+ * Decides when a series of throughput samples (one per interval) has reached a steady state: the coefficient of
+ * variation (standard deviation / mean) of the last windowSize samples is below maxCv. Once steady, it keeps track of
+ * the mean of the following samples and of its 95% confidence interval.
+ * <p/>
+ * The confidence interval assumes the samples are independent, which is only approximately true for consecutive
+ * intervals of a benchmark, so it should be used as a stopping criterion rather than as a precise error bound.
+ * <p/>
+ * Concurrency: not thread safe.
+ */
+public class SteadyStateDetector {
+
+   private static final double Z_95 = 1.96;
+
+   private final double[] window;
+   private final double maxCv;
+   private int windowCount;
+   private int windowPos;
+   private boolean steady;
+
+   // running mean and variance of the samples added after reaching steady state (Welford's algorithm)
+   private long steadySamples;
+   private double steadyMean;
+   private double steadyM2;
+
+   public SteadyStateDetector(int windowSize, double maxCv) {
+      if (windowSize < 2) throw new IllegalArgumentException("The window must have at least 2 samples");
+      this.window = new double[windowSize];
+      this.maxCv = maxCv;
+   }
+
+   /**
+    * @return true if steady state has been reached with this sample
+    */
+   public boolean addSample(double value) {
+      if (steady) {
+         steadySamples++;
+         double delta = value - steadyMean;
+         steadyMean += delta / steadySamples;
+         steadyM2 += delta * (value - steadyMean);
+         return false;
+      }
+      window[windowPos] = value;
+      windowPos = (windowPos + 1) % window.length;
+      if (windowCount < window.length) windowCount++;
+      if (windowCount == window.length && getWindowCv() <= maxCv) {
+         steady = true;
+         return true;
+      }
+      return false;
+   }
+
+   public boolean isSteady() {
+      return steady;
+   }
+
+   /**
+    * @return coefficient of variation of the samples in the window, or NaN if the window is not full yet
+    */
+   public double getWindowCv() {
+      if (windowCount < window.length) return Double.NaN;
+      double sum = 0;
+      for (double value : window) {
+         sum += value;
+      }
+      double mean = sum / window.length;
+      if (mean == 0) return Double.NaN;
+      double squares = 0;
+      for (double value : window) {
+         squares += (value - mean) * (value - mean);
+      }
+      return Math.sqrt(squares / (window.length - 1)) / mean;
+   }
+
+   /**
+    * @return number of samples added after reaching steady state
+    */
+   public long getSteadySamples() {
+      return steadySamples;
+   }
+
+   public double getSteadyMean() {
+      return steadyMean;
+   }
+
+   /**
+    * @return half width of the 95% confidence interval of the mean of the samples after reaching steady state,
+    * relative to that mean, or NaN if there are less than 2 such samples
+    */
+   public double getRelativeConfidenceInterval() {
+      if (steadySamples < 2 || steadyMean == 0) return Double.NaN;
+      double stdDev = Math.sqrt(steadyM2 / (steadySamples - 1));
+      return Z_95 * stdDev / Math.sqrt(steadySamples) / steadyMean;
+   }
+}
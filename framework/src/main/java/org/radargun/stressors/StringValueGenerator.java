@@ -0,0 +1,42 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Returns random strings from a pool built on init. As each char is 2 bytes, the strings have size / 2 chars. Strings
+ * are immutable, so mutateValues is ignored. The chars are random upper case letters, so even with 0 compressibility
+ * the strings are somewhat compressible; compressibility adds a repeated pattern as in {@link ByteArrayValueGenerator}.
+ */
+public class StringValueGenerator implements ValueGenerator {
+
+   private static final String PATTERN = "RadarGun-";
+
+   private String[] values;
+
+   @Override
+   public void init(ValueSizeDistribution valueSizes, int numberOfValues, boolean mutateValues, double compressibility, Random random) {
+      int redundantChars = ByteArrayValueGenerator.redundantBytesPerBlock(compressibility);
+      values = new String[Math.max(1, numberOfValues)];
+      for (int i = 0; i < values.length; i++) {
+         char[] chars = new char[valueSizes.nextSize(random) / 2];
+         for (int j = 0; j < chars.length; j++) {
+            if (j % ByteArrayValueGenerator.BLOCK_SIZE < redundantChars) {
+               chars[j] = PATTERN.charAt(j % PATTERN.length());
+            } else {
+               chars[j] = (char) (64 + random.nextInt(26));
+            }
+         }
+         values[i] = new String(chars);
+      }
+   }
+
+   @Override
+   public Object nextValue(Random random) {
+      return values[random.nextInt(values.length)];
+   }
+
+   @Override
+   public int sizeOf(Object value) {
+      return value instanceof String ? 2 * ((String) value).length() : 0;
+   }
+}
@@ -10,6 +10,7 @@ import org.radargun.tpcc.transaction.NewOrderTransaction;
 import org.radargun.tpcc.transaction.OrderStatusTransaction;
 import org.radargun.tpcc.transaction.PaymentTransaction;
 import org.radargun.tpcc.transaction.TpccTransaction;
+import org.radargun.utils.RateLimiter;
 import org.radargun.utils.Utils;
 
 import java.util.ArrayList;
@@ -58,6 +59,12 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
     */
    private double arrivalRate = 0.0D;
 
+   /**
+    * in the "closed system" mode, the number of transactions per second for the whole cluster, divided evenly between
+    * the nodes; the threads of a node take turns on a single schedule. 0 means no pacing.
+    */
+   private double targetTransactionsPerSec = 0.0D;
+
    /**
     * percentage of Payment transactions
     */
@@ -76,6 +83,7 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
    private BlockingQueue<RequestType> queue;
    private AtomicLong countJobs;
    private Producer[] producers;
+   private volatile RateLimiter rateLimiter;
 
 
    public Map<String, String> stress(CacheWrapper wrapper) {
@@ -374,6 +382,9 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
          stressor.start();
       }
       log.info("Cache wrapper info is: " + cacheWrapper.getInfo());
+      if (this.arrivalRate == 0.0 && this.targetTransactionsPerSec > 0.0) {
+         rateLimiter = new RateLimiter(targetTransactionsPerSec / Math.max(1, numSlaves), -1, System.nanoTime());
+      }
       startPoint.countDown();
       for (Stressor stressor : stressors) {
          stressor.join();
@@ -462,6 +473,7 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
          long commit_start = 0L;
          long endInQueueTime = 0L;
+         long scheduledStart = 0L;
 
 
          TpccTransaction transaction;
@@ -510,7 +522,9 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
                   log.error("»»»»»»»THREAD INTERRUPTED WHILE TRYING GETTING AN OBJECT FROM THE QUEUE«««««««");
                }
             } else {
-
+               if (rateLimiter != null) {
+                  scheduledStart = rateLimiter.acquire();
+               }
                transaction = terminal.choiceTransaction();
             }
             isReadOnly = transaction.isReadOnly();
@@ -587,7 +601,8 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
 
             if (this.arrivalRate == 0.0) {  //Closed system
-               start = startService;
+               // when paced, the time the transaction was behind schedule is counted too
+               start = rateLimiter != null ? scheduledStart : startService;
             }
 
             if (!isReadOnly) {
@@ -663,22 +678,22 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
       public void run() {
 
-         long time;
+         // the arrivals are scheduled from the previous arrival time rather than from the time the previous job
+         // was queued, so that the rate doesn't drift
+         long nextArrival = System.nanoTime();
 
          while (completedThread.get() != numOfThreads) {
 
             try {
 
 
-               queue.add(new RequestType(System.nanoTime(), this.transaction_type));
+               queue.add(new RequestType(nextArrival, this.transaction_type));
                countJobs.incrementAndGet();
 
 
-               time = (long) (exp(this.producerRate));
+               nextArrival += (long) (exp(this.producerRate) * 1000000L);
 
-               Thread.sleep(time);
-            } catch (InterruptedException i) {
-               log.error("»»»»»»INTERRUPTED_EXCEPTION«««««««", i);
+               RateLimiter.parkUntil(nextArrival);
             } catch (IllegalStateException il) {
                log.error("»»»»»»»IllegalStateException«««««««««", il);
 
@@ -736,6 +751,10 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
 
    }
 
+   public void setTargetTransactionsPerSec(double targetTransactionsPerSec) {
+      this.targetTransactionsPerSec = targetTransactionsPerSec;
+   }
+
    public void setPaymentWeight(double paymentWeight) {
       this.paymentWeight = paymentWeight;
    }
@@ -749,6 +768,7 @@ public class TpccStressor extends AbstractCacheWrapperStressor {
       return "TpccStressor{" +
             ", perThreadSimulTime=" + perThreadSimulTime +
             ", arrivalRate=" + arrivalRate +
+            ", targetTransactionsPerSec=" + targetTransactionsPerSec +
             ", paymentWeight=" + paymentWeight +
             ", orderStatusWeight=" + orderStatusWeight +
             ", numOfThreads=" + numOfThreads +
@@ -0,0 +1,21 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * All keys are selected with the same probability.
+ */
+public class UniformKeySelector implements KeySelector {
+
+   private int numberOfKeys;
+
+   @Override
+   public void init(int numberOfKeys, Random random) {
+      this.numberOfKeys = numberOfKeys;
+   }
+
+   @Override
+   public int nextKeyIndex(boolean write, Random random) {
+      return random.nextInt(numberOfKeys);
+   }
+}
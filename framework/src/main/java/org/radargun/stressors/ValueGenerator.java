@@ -0,0 +1,38 @@
+package org.radargun.stressors;
+
+import java.util.Random;
+
+/**
+ * Used for generating the values written by {@link PutGetStressor}. All implementations must have an default/no-arg
+ * public constructor.
+ * <p/>
+ * Implementations are expected to build their payloads up front in
+ * {@link #init(ValueSizeDistribution, int, boolean, double, Random)} so that {@link #nextValue(Random)} doesn't
+ * allocate and the measured throughput isn't affected by the load generator's GC.
+ * <p/>
+ * Concurrency: a separate instance is created for each stressor thread, so implementations don't need to be thread safe.
+ */
+public interface ValueGenerator {
+
+   /**
+    * Called once, before the stressor thread starts.
+    *
+    * @param valueSizes        the size of each of the generated values, in bytes, is taken from this distribution
+    * @param numberOfValues    the number of distinct values this instance should return
+    * @param mutateValues      if true, consecutive writes of the same pooled value should differ. A value must not be
+    *                          changed once returned, as the cache may keep a reference to it
+    * @param compressibility   percentage (0 - 100) of each value that should be redundant, so that products
+    *                          compressing the values get roughly a 100 / (100 - compressibility) ratio. Implementations
+    *                          that can't control this may ignore it.
+    * @param random            the random generator owned by the stressor thread
+    */
+   void init(ValueSizeDistribution valueSizes, int numberOfValues, boolean mutateValues, double compressibility, Random random);
+
+   Object nextValue(Random random);
+
+   /**
+    * @return the size in bytes of a value returned by this generator (and possibly read back from the cache), or 0 if
+    * the value isn't of the type this generator creates
+    */
+   int sizeOf(Object value);
+}
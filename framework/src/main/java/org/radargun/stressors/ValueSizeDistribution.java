@@ -0,0 +1,256 @@
+package org.radargun.stressors;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.radargun.utils.Utils;
+
+/**
+ * Size of the values written by the stressors. Created from a specification string by {@link #parse(String)}; sizes
+ * may use the suffixes understood by {@link Utils#string2Bytes(String)}:
+ * <pre>
+ * - fixed(size): always the same size
+ * - uniform(min, max): uniformly distributed between min and max (both inclusive)
+ * - normal(mean, stdDev[, min, max]): normal distribution clamped to [min, max], by default mean +- 4 stdDev
+ * - lognormal(median, sigma[, min, max]): median * e^(sigma * N(0, 1)) clamped to [min, max], by default
+ *   median * e^(+-4 sigma). Usually the closest match to real payloads: most values are small, with a long tail.
+ * - histogram(file): one 'size weight' pair per line, lines starting with # are ignored. Each size is picked with
+ *   a probability proportional to its weight.
+ * </pre>
+ * e.g. lognormal(4k, 1.5, 200, 2m).
+ * <p/>
+ * Concurrency: {@link #nextSize(Random)} doesn't change the state of the instance, so it can be shared by threads.
+ */
+public abstract class ValueSizeDistribution {
+
+   /**
+    * @return the size of the next value, in bytes
+    */
+   public abstract int nextSize(Random random);
+
+   public static ValueSizeDistribution fixed(int size) {
+      return new Fixed(size);
+   }
+
+   public static ValueSizeDistribution parse(String specification) {
+      String spec = specification.trim();
+      int open = spec.indexOf('(');
+      if (open <= 0 || !spec.endsWith(")")) {
+         throw new IllegalArgumentException("Cannot parse value size distribution '" + specification +
+                                                  "', expected e.g. 'uniform(200, 2m)'");
+      }
+      String name = spec.substring(0, open).trim();
+      String[] args = spec.substring(open + 1, spec.length() - 1).split(",");
+      for (int i = 0; i < args.length; i++) {
+         args[i] = args[i].trim();
+      }
+      if ("fixed".equalsIgnoreCase(name)) {
+         checkArguments(specification, args, 1, 1);
+         return new Fixed(size(args[0]));
+      } else if ("uniform".equalsIgnoreCase(name)) {
+         checkArguments(specification, args, 2, 2);
+         return new Uniform(size(args[0]), size(args[1]));
+      } else if ("normal".equalsIgnoreCase(name)) {
+         checkArguments(specification, args, 2, 4);
+         double mean = size(args[0]);
+         double stdDev = size(args[1]);
+         int min = args.length > 2 ? size(args[2]) : (int) Math.max(0, mean - 4 * stdDev);
+         int max = args.length > 3 ? size(args[3]) : (int) Math.min(Integer.MAX_VALUE, mean + 4 * stdDev);
+         return new Normal(mean, stdDev, min, max);
+      } else if ("lognormal".equalsIgnoreCase(name)) {
+         checkArguments(specification, args, 2, 4);
+         double median = size(args[0]);
+         double sigma = Double.parseDouble(args[1]);
+         int min = args.length > 2 ? size(args[2]) : (int) (median * Math.exp(-4 * sigma));
+         int max = args.length > 3 ? size(args[3]) : (int) Math.min(Integer.MAX_VALUE, median * Math.exp(4 * sigma));
+         return new LogNormal(median, sigma, min, max);
+      } else if ("histogram".equalsIgnoreCase(name)) {
+         checkArguments(specification, args, 1, 1);
+         return Histogram.load(args[0]);
+      }
+      throw new IllegalArgumentException("Unknown value size distribution '" + name +
+                                               "', supported are fixed, uniform, normal, lognormal and histogram");
+   }
+
+   private static void checkArguments(String specification, String[] args, int min, int max) {
+      if (args.length < min || args.length > max || args[0].length() == 0) {
+         throw new IllegalArgumentException("Wrong number of arguments in value size distribution '" + specification + "'");
+      }
+   }
+
+   private static int size(String size) {
+      long bytes = Utils.string2Bytes(size);
+      if (bytes < 0 || bytes > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("Value size out of range: " + size);
+      }
+      return (int) bytes;
+   }
+
+   private static int clamp(double size, int min, int max) {
+      return (int) Math.max(min, Math.min(max, Math.round(size)));
+   }
+
+   private static class Fixed extends ValueSizeDistribution {
+      private final int size;
+
+      private Fixed(int size) {
+         this.size = size;
+      }
+
+      @Override
+      public int nextSize(Random random) {
+         return size;
+      }
+
+      @Override
+      public String toString() {
+         return "fixed(" + size + ")";
+      }
+   }
+
+   private static class Uniform extends ValueSizeDistribution {
+      private final int min;
+      private final int max;
+
+      private Uniform(int min, int max) {
+         if (min > max) throw new IllegalArgumentException("min > max in uniform(" + min + ", " + max + ")");
+         this.min = min;
+         this.max = max;
+      }
+
+      @Override
+      public int nextSize(Random random) {
+         return min + (int) (random.nextDouble() * (max - min + 1L));
+      }
+
+      @Override
+      public String toString() {
+         return "uniform(" + min + ", " + max + ")";
+      }
+   }
+
+   private static class Normal extends ValueSizeDistribution {
+      private final double mean;
+      private final double stdDev;
+      private final int min;
+      private final int max;
+
+      private Normal(double mean, double stdDev, int min, int max) {
+         this.mean = mean;
+         this.stdDev = stdDev;
+         this.min = min;
+         this.max = max;
+      }
+
+      @Override
+      public int nextSize(Random random) {
+         return clamp(mean + stdDev * random.nextGaussian(), min, max);
+      }
+
+      @Override
+      public String toString() {
+         return "normal(" + mean + ", " + stdDev + ", " + min + ", " + max + ")";
+      }
+   }
+
+   private static class LogNormal extends ValueSizeDistribution {
+      private final double median;
+      private final double sigma;
+      private final int min;
+      private final int max;
+
+      private LogNormal(double median, double sigma, int min, int max) {
+         this.median = median;
+         this.sigma = sigma;
+         this.min = min;
+         this.max = max;
+      }
+
+      @Override
+      public int nextSize(Random random) {
+         return clamp(median * Math.exp(sigma * random.nextGaussian()), min, max);
+      }
+
+      @Override
+      public String toString() {
+         return "lognormal(" + median + ", " + sigma + ", " + min + ", " + max + ")";
+      }
+   }
+
+   private static class Histogram extends ValueSizeDistribution {
+      private final String file;
+      private final int[] sizes;
+      private final double[] cumulativeWeights;
+
+      private Histogram(String file, int[] sizes, double[] cumulativeWeights) {
+         this.file = file;
+         this.sizes = sizes;
+         this.cumulativeWeights = cumulativeWeights;
+      }
+
+      private static Histogram load(String file) {
+         List<Integer> sizes = new ArrayList<Integer>();
+         List<Double> weights = new ArrayList<Double>();
+         try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+               String line;
+               while ((line = reader.readLine()) != null) {
+                  line = line.trim();
+                  if (line.length() == 0 || line.startsWith("#")) continue;
+                  String[] columns = line.split("[\\s,;]+");
+                  if (columns.length != 2) {
+                     throw new IllegalArgumentException("Expected 'size weight' but found '" + line + "' in " + file);
+                  }
+                  sizes.add(size(columns[0]));
+                  weights.add(Double.parseDouble(columns[1]));
+               }
+            } finally {
+               reader.close();
+            }
+         } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read value size histogram " + file, e);
+         }
+         if (sizes.isEmpty()) {
+            throw new IllegalArgumentException("Value size histogram " + file + " is empty");
+         }
+         int[] sizeArray = new int[sizes.size()];
+         double[] cumulative = new double[sizes.size()];
+         double total = 0;
+         for (int i = 0; i < sizeArray.length; i++) {
+            sizeArray[i] = sizes.get(i);
+            total += weights.get(i);
+            cumulative[i] = total;
+         }
+         if (total <= 0) {
+            throw new IllegalArgumentException("Value size histogram " + file + " has no positive weight");
+         }
+         return new Histogram(file, sizeArray, cumulative);
+      }
+
+      @Override
+      public int nextSize(Random random) {
+         double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+         // the first size whose cumulative weight is above the point
+         int low = 0, high = sizes.length - 1;
+         while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] > point) {
+               high = middle;
+            } else {
+               low = middle + 1;
+            }
+         }
+         return sizes[low];
+      }
+
+      @Override
+      public String toString() {
+         return "histogram(" + file + ")";
+      }
+   }
+}
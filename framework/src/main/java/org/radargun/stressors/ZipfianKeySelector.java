@@ -0,0 +1,108 @@
+package org.radargun.stressors;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Selects keys following a Zipfian distribution: the key with rank i is selected with a probability proportional to
+ * 1 / i^theta. The higher theta, the more skewed the access; 0.99 is the value commonly used by YCSB. Sampling uses the
+ * algorithm from Gray et al., "Quickly Generating Billion-Record Synthetic Databases", which is O(1) per key once the
+ * zeta constant has been computed. The constant only depends on the number of keys and theta, so it is computed once
+ * and shared by all the stressor threads.
+ * <p/>
+ * When scrambled (the default) the ranks are mapped to key indexes by an FNV-1a hash of the rank modulo the number of
+ * keys, like in YCSB's ScrambledZipfianGenerator, so the popular keys are spread over the whole key space instead of
+ * being the first ones. The hash doesn't depend on the thread, so all the stressor threads agree on which keys are hot.
+ * A few ranks collide on the same key, which slightly changes the distribution but needs no memory.
+ */
+public class ZipfianKeySelector implements KeySelector {
+
+   private static final long FNV_OFFSET_BASIS_64 = 0xCBF29CE484222325L;
+   private static final long FNV_PRIME_64 = 1099511628211L;
+
+   // {zeta(n), zeta(2)} by "n:theta"
+   private static final Map<String, double[]> ZETAS = new HashMap<String, double[]>();
+
+   private double theta = 0.99;
+   private boolean scrambled = true;
+
+   private int numberOfKeys;
+   private double zetaN;
+   private double alpha;
+   private double eta;
+   private double halfPowTheta;
+
+   @Override
+   public void init(int numberOfKeys, Random random) {
+      if (theta <= 0 || theta >= 1) {
+         throw new IllegalArgumentException("Zipfian theta must be between 0 and 1 (exclusive), was " + theta);
+      }
+      this.numberOfKeys = numberOfKeys;
+      double[] zetas = zetas(numberOfKeys, theta);
+      zetaN = zetas[0];
+      double zeta2 = zetas[1];
+      halfPowTheta = Math.pow(0.5, theta);
+      alpha = 1 / (1 - theta);
+      eta = (1 - Math.pow(2.0 / numberOfKeys, 1 - theta)) / (1 - zeta2 / zetaN);
+   }
+
+   private static synchronized double[] zetas(int numberOfKeys, double theta) {
+      String key = numberOfKeys + ":" + theta;
+      double[] zetas = ZETAS.get(key);
+      if (zetas == null) {
+         zetas = new double[2];
+         for (int i = 1; i <= numberOfKeys; i++) {
+            zetas[0] += 1 / Math.pow(i, theta);
+            if (i == 2) zetas[1] = zetas[0];
+         }
+         ZETAS.put(key, zetas);
+      }
+      return zetas;
+   }
+
+   @Override
+   public int nextKeyIndex(boolean write, Random random) {
+      int rank = nextRank(random);
+      return scrambled ? scramble(rank) : rank;
+   }
+
+   private int scramble(int rank) {
+      long hash = FNV_OFFSET_BASIS_64;
+      long value = rank;
+      for (int i = 0; i < 8; i++) {
+         hash ^= value & 0xFF;
+         hash *= FNV_PRIME_64;
+         value >>>= 8;
+      }
+      return (int) ((hash & Long.MAX_VALUE) % numberOfKeys);
+   }
+
+   /**
+    * @return rank of the selected key, 0 being the most popular one
+    */
+   protected int nextRank(Random random) {
+      double u = random.nextDouble();
+      double uz = u * zetaN;
+      if (uz < 1) return 0;
+      if (uz < 1 + halfPowTheta) return Math.min(1, numberOfKeys - 1);
+      int rank = (int) (numberOfKeys * Math.pow(eta * u - eta + 1, alpha));
+      return Math.min(rank, numberOfKeys - 1);
+   }
+
+   public double getTheta() {
+      return theta;
+   }
+
+   public void setTheta(double theta) {
+      this.theta = theta;
+   }
+
+   public boolean isScrambled() {
+      return scrambled;
+   }
+
+   public void setScrambled(boolean scrambled) {
+      this.scrambled = scrambled;
+   }
+}
@@ -0,0 +1,28 @@
+package org.radargun.utils;
+
+import org.radargun.AsyncOperationsCapable;
+import org.radargun.CacheWrapper;
+
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous operations on any {@link CacheWrapper}. Wrappers implementing {@link AsyncOperationsCapable} are
+ * invoked directly, the others are invoked synchronously and an already completed future is returned.
+ */
+public class AsyncOperations {
+
+   public static Future<?> putAsync(CacheWrapper wrapper, String bucket, Object key, Object value) throws Exception {
+      if (wrapper instanceof AsyncOperationsCapable) {
+         return ((AsyncOperationsCapable) wrapper).putAsync(bucket, key, value);
+      }
+      wrapper.put(bucket, key, value);
+      return new CompletedFuture<Object>(null);
+   }
+
+   public static Future<?> getAsync(CacheWrapper wrapper, String bucket, Object key) throws Exception {
+      if (wrapper instanceof AsyncOperationsCapable) {
+         return ((AsyncOperationsCapable) wrapper).getAsync(bucket, key);
+      }
+      return new CompletedFuture<Object>(wrapper.get(bucket, key));
+   }
+}
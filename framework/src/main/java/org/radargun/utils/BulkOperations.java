@@ -0,0 +1,36 @@
+package org.radargun.utils;
+
+import org.radargun.BulkOperationsCapable;
+import org.radargun.CacheWrapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk operations on any {@link CacheWrapper}. Wrappers implementing {@link BulkOperationsCapable} are invoked
+ * directly, the others are invoked once for each entry.
+ */
+public class BulkOperations {
+
+   public static void putAll(CacheWrapper wrapper, String bucket, Map<Object, Object> entries) throws Exception {
+      if (wrapper instanceof BulkOperationsCapable) {
+         ((BulkOperationsCapable) wrapper).putAll(bucket, entries);
+      } else {
+         for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            wrapper.put(bucket, entry.getKey(), entry.getValue());
+         }
+      }
+   }
+
+   public static Map<Object, Object> getAll(CacheWrapper wrapper, String bucket, Set<Object> keys) throws Exception {
+      if (wrapper instanceof BulkOperationsCapable) {
+         return ((BulkOperationsCapable) wrapper).getAll(bucket, keys);
+      }
+      Map<Object, Object> result = new HashMap<Object, Object>(keys.size() * 2);
+      for (Object key : keys) {
+         result.put(key, wrapper.get(bucket, key));
+      }
+      return result;
+   }
+}
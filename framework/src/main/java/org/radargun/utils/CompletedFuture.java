@@ -0,0 +1,36 @@
+package org.radargun.utils;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Future of an operation that has already been completed, e.g. because it was executed synchronously.
+ */
+public class CompletedFuture<T> implements Future<T> {
+
+   private final T value;
+
+   public CompletedFuture(T value) {
+      this.value = value;
+   }
+
+   public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+   }
+
+   public boolean isCancelled() {
+      return false;
+   }
+
+   public boolean isDone() {
+      return true;
+   }
+
+   public T get() {
+      return value;
+   }
+
+   public T get(long timeout, TimeUnit unit) {
+      return value;
+   }
+}
@@ -0,0 +1,208 @@
+package org.radargun.utils;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.radargun.protocol.BinaryExternalizer;
+import org.radargun.protocol.BinaryInput;
+import org.radargun.protocol.BinaryOutput;
+
+/**
+ * Fixed-memory, log-bucketed latency histogram (similar to HdrHistogram). Values are recorded in nanoseconds. Each
+ * power-of-two range is split into 128 linear sub-buckets, so a value reported by {@link #getValueAtPercentile(double)}
+ * is within 1% of the recorded one. Recording never allocates.
+ * <p/>
+ * Concurrency: this class is not thread safe. Each stressor thread records into its own instance and the instances
+ * are {@link #merge(LatencyHistogram) merged} once the threads are finished.
+ */
+public class LatencyHistogram implements Serializable {
+
+   private static final long serialVersionUID = 2473542380947315112L;
+
+   /**
+    * Values bigger than this (one hour) are counted in the last bucket. {@link #getMax()} is always exact.
+    */
+   public static final long MAX_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+
+   private static final int SUB_BUCKET_BITS = 8;
+   private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+   private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+   private static final int BUCKET_COUNT = indexFor(MAX_TRACKABLE_VALUE) + 1;
+
+   private final long[] counts = new long[BUCKET_COUNT];
+   private long totalCount;
+   private long totalValue;
+   private long min = Long.MAX_VALUE;
+   private long max;
+
+   public void record(long value) {
+      if (value < 0) value = 0;
+      counts[indexFor(Math.min(value, MAX_TRACKABLE_VALUE))]++;
+      totalCount++;
+      totalValue += value;
+      if (value < min) min = value;
+      if (value > max) max = value;
+   }
+
+   /**
+    * Adds all the values recorded in other to this histogram. other is left unchanged.
+    */
+   public void merge(LatencyHistogram other) {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         counts[i] += other.counts[i];
+      }
+      totalCount += other.totalCount;
+      totalValue += other.totalValue;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+   }
+
+   public void reset() {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         counts[i] = 0;
+      }
+      totalCount = 0;
+      totalValue = 0;
+      min = Long.MAX_VALUE;
+      max = 0;
+   }
+
+   /**
+    * @return the content of this histogram as [min, max, totalValue, index, count, index, count...], keeping only the
+    * non-empty buckets, so that many short-lived histograms (e.g. one per second) can be kept in little memory. The
+    * array can be added to another histogram with {@link #mergeSparseArray(long[])}.
+    */
+   public long[] toSparseArray() {
+      int nonEmpty = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         if (counts[i] != 0) nonEmpty++;
+      }
+      long[] sparse = new long[3 + 2 * nonEmpty];
+      sparse[0] = min;
+      sparse[1] = max;
+      sparse[2] = totalValue;
+      int pos = 3;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         if (counts[i] != 0) {
+            sparse[pos++] = i;
+            sparse[pos++] = counts[i];
+         }
+      }
+      return sparse;
+   }
+
+   /**
+    * Adds the values from an array created by {@link #toSparseArray()} to this histogram.
+    */
+   public void mergeSparseArray(long[] sparse) {
+      min = Math.min(min, sparse[0]);
+      max = Math.max(max, sparse[1]);
+      totalValue += sparse[2];
+      for (int pos = 3; pos < sparse.length; pos += 2) {
+         counts[(int) sparse[pos]] += sparse[pos + 1];
+         totalCount += sparse[pos + 1];
+      }
+   }
+
+   /**
+    * @param percentile a value between 0 and 100, e.g. 99.9
+    * @return the value under which the given percentage of the recorded values fall, or 0 if nothing was recorded
+    */
+   public long getValueAtPercentile(double percentile) {
+      if (totalCount == 0) return 0;
+      long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+      long runningCount = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         runningCount += counts[i];
+         if (runningCount >= countAtPercentile) {
+            return Math.max(min, Math.min(valueFromIndex(i + 1) - 1, max));
+         }
+      }
+      return max;
+   }
+
+   public long getTotalCount() {
+      return totalCount;
+   }
+
+   public long getMin() {
+      return totalCount == 0 ? 0 : min;
+   }
+
+   public long getMax() {
+      return max;
+   }
+
+   public double getMean() {
+      return totalCount == 0 ? 0 : ((double) totalValue) / totalCount;
+   }
+
+   static int indexFor(long value) {
+      if (value < SUB_BUCKET_COUNT) return (int) value;
+      // shift >= 1 and (value >>> shift) is in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+      int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+   }
+
+   /**
+    * @return the lowest value that is counted in the bucket with the given index
+    */
+   static long valueFromIndex(int index) {
+      if (index < SUB_BUCKET_COUNT) return index;
+      int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+      long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+      return subBucket << shift;
+   }
+
+   @Override
+   public String toString() {
+      return "LatencyHistogram{" +
+            "totalCount=" + totalCount +
+            ", min=" + getMin() +
+            ", mean=" + getMean() +
+            ", p99=" + getValueAtPercentile(99) +
+            ", max=" + max +
+            '}';
+   }
+
+   /**
+    * Binary form used by {@link org.radargun.protocol.BinaryCodec}: the non-empty buckets only.
+    */
+   public static class Externalizer implements BinaryExternalizer<LatencyHistogram> {
+      public void writeObject(BinaryOutput output, LatencyHistogram histogram) {
+         output.writeSignedVarLong(histogram.min);
+         output.writeVarLong(histogram.max);
+         output.writeVarLong(histogram.totalValue);
+         int nonEmpty = 0;
+         for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (histogram.counts[i] != 0) nonEmpty++;
+         }
+         output.writeVarInt(nonEmpty);
+         int previous = 0;
+         for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (histogram.counts[i] != 0) {
+               output.writeVarInt(i - previous);
+               output.writeVarLong(histogram.counts[i]);
+               previous = i;
+            }
+         }
+      }
+
+      public LatencyHistogram readObject(BinaryInput input) throws IOException {
+         LatencyHistogram histogram = new LatencyHistogram();
+         histogram.min = input.readSignedVarLong();
+         histogram.max = input.readVarLong();
+         histogram.totalValue = input.readVarLong();
+         int nonEmpty = input.readVarInt();
+         int index = 0;
+         for (int i = 0; i < nonEmpty; i++) {
+            index += input.readVarInt();
+            long count = input.readVarLong();
+            histogram.counts[index] = count;
+            histogram.totalCount += count;
+         }
+         return histogram;
+      }
+   }
+}
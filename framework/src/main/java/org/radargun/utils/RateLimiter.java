@@ -0,0 +1,103 @@
+package org.radargun.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces requests to a fixed rate. Each call to {@link #acquire()} takes the next slot of the schedule and parks the
+ * calling thread until the slot's time. Unlike sleeping for a fixed delay after each request, the schedule doesn't
+ * drift when the response time changes.
+ * <p/>
+ * When the callers fall behind (e.g. because the cache stalled), the limiter either:
+ * <ul>
+ * <li>keeps the precise schedule (maxBurst &lt; 0): the missed slots are handed out immediately, until the callers
+ * catch up. Latency measured from the slot time then includes the time the request waited to be sent, which avoids
+ * coordinated omission.</li>
+ * <li>acts as a token bucket (maxBurst &gt;= 0): at most maxBurst missed slots are kept, the rest are dropped, so
+ * that the load doesn't spike after a stall.</li>
+ * </ul>
+ * A limiter can be owned by a single thread or shared by all the threads of a node, in which case the threads take
+ * the slots in turn and the node rate is kept even if some threads are slower than others.
+ * <p/>
+ * Concurrency: this class is thread safe.
+ */
+public class RateLimiter {
+
+   /**
+    * Parking is only accurate to tens of microseconds, the last part of the wait is spent spinning.
+    */
+   static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+   private final long intervalNanos;
+   private final long maxLagNanos;
+   private final AtomicLong nextSlotNanos;
+
+   /**
+    * @param requestsPerSec the rate
+    * @param maxBurst       number of missed slots that can be used to catch up, or negative to keep the precise
+    *                       schedule
+    * @param startNanos     {@link System#nanoTime()} of the first slot
+    */
+   public RateLimiter(double requestsPerSec, int maxBurst, long startNanos) {
+      if (requestsPerSec <= 0) {
+         throw new IllegalArgumentException("The rate must be positive: " + requestsPerSec);
+      }
+      this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSec));
+      this.maxLagNanos = maxBurst < 0 ? Long.MAX_VALUE : maxBurst * intervalNanos;
+      this.nextSlotNanos = new AtomicLong(startNanos);
+   }
+
+   /**
+    * Waits for the next slot. Returns early if the thread is interrupted.
+    *
+    * @return the time the request should have started at, in {@link System#nanoTime()}
+    */
+   public long acquire() {
+      long slot;
+      for (; ; ) {
+         long next = nextSlotNanos.get();
+         slot = next;
+         if (maxLagNanos != Long.MAX_VALUE) {
+            slot = Math.max(next, System.nanoTime() - maxLagNanos);
+         }
+         if (nextSlotNanos.compareAndSet(next, slot + intervalNanos)) break;
+      }
+      parkUntil(slot);
+      return slot;
+   }
+
+   public long getIntervalNanos() {
+      return intervalNanos;
+   }
+
+   /**
+    * Parks the calling thread until the given {@link System#nanoTime()}, or until the thread is interrupted (the
+    * interrupted status is kept).
+    *
+    * @return how late the caller already was (0 if it had to wait)
+    */
+   public static long parkUntil(long deadlineNanos) {
+      long remaining = deadlineNanos - System.nanoTime();
+      if (remaining <= 0) {
+         return -remaining;
+      }
+      Thread thread = Thread.currentThread();
+      while (remaining > SPIN_THRESHOLD_NANOS && !thread.isInterrupted()) {
+         LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+         remaining = deadlineNanos - System.nanoTime();
+      }
+      while (deadlineNanos - System.nanoTime() > 0 && !thread.isInterrupted()) {
+         // spin
+      }
+      return 0;
+   }
+
+   @Override
+   public String toString() {
+      return "RateLimiter{" +
+            "intervalNanos=" + intervalNanos +
+            ", maxLagNanos=" + maxLagNanos +
+            '}';
+   }
+}
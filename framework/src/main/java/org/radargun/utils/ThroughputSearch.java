@@ -0,0 +1,176 @@
+package org.radargun.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Searches for the highest request rate at which a latency objective is still met. The rate is doubled until the
+ * objective is breached, then the interval between the highest good rate and the lowest bad one is halved until it is
+ * narrower than the given precision.
+ * <p/>
+ * Concurrency: this class is not thread safe.
+ */
+public class ThroughputSearch {
+
+   private final double maxRate;
+   private final double precision;
+   private final int maxIterations;
+
+   private final List<Step> steps = new ArrayList<Step>();
+   private double currentRate;
+   private double lowerBound = 0;
+   private double upperBound = -1;
+   private boolean finished;
+
+   /**
+    * @param initialRate   the first rate to try
+    * @param maxRate       the rate is never raised above this, negative means unlimited
+    * @param precision     the search stops once (upper - lower) / upper is below this ratio, e.g. 0.05
+    * @param maxIterations the search stops after this many rates were tried
+    */
+   public ThroughputSearch(double initialRate, double maxRate, double precision, int maxIterations) {
+      if (initialRate <= 0) {
+         throw new IllegalArgumentException("The initial rate must be positive: " + initialRate);
+      }
+      this.currentRate = maxRate > 0 ? Math.min(initialRate, maxRate) : initialRate;
+      this.maxRate = maxRate;
+      this.precision = precision;
+      this.maxIterations = maxIterations;
+   }
+
+   public double getCurrentRate() {
+      return currentRate;
+   }
+
+   /**
+    * Records the result of running at {@link #getCurrentRate()} and picks the next rate.
+    *
+    * @param actualRate the rate that was really achieved
+    * @param latency    the latency that is compared with the objective, in any unit
+    * @param withinSlo  true if the objective was met
+    * @return true if another rate should be tried
+    */
+   public boolean record(double actualRate, long latency, boolean withinSlo) {
+      if (finished) {
+         throw new IllegalStateException("The search is already finished");
+      }
+      steps.add(new Step(currentRate, actualRate, latency, withinSlo));
+      if (withinSlo) {
+         lowerBound = Math.max(lowerBound, currentRate);
+      } else {
+         upperBound = upperBound < 0 ? currentRate : Math.min(upperBound, currentRate);
+      }
+      double next;
+      if (upperBound < 0) {
+         if (maxRate > 0 && currentRate >= maxRate) {
+            finished = true;
+            return false;
+         }
+         next = maxRate > 0 ? Math.min(2 * currentRate, maxRate) : 2 * currentRate;
+      } else {
+         next = (lowerBound + upperBound) / 2;
+         if ((upperBound - lowerBound) / upperBound <= precision) {
+            finished = true;
+            return false;
+         }
+      }
+      if (steps.size() >= maxIterations) {
+         finished = true;
+         return false;
+      }
+      currentRate = next;
+      return true;
+   }
+
+   public boolean isFinished() {
+      return finished;
+   }
+
+   /**
+    * @return the highest rate that met the objective, or 0 if none did
+    */
+   public double getMaxSustainableRate() {
+      return lowerBound;
+   }
+
+   public List<Step> getSteps() {
+      return steps;
+   }
+
+   /**
+    * The knee of the throughput/latency curve: after normalizing both the achieved rates and the latencies to [0, 1],
+    * the step for which the rate exceeds the latency the most. Beyond the knee, little throughput is gained for a lot
+    * of latency.
+    *
+    * @return the step at the knee, or null if nothing was recorded
+    */
+   public Step getKnee() {
+      if (steps.isEmpty()) return null;
+      List<Step> sorted = new ArrayList<Step>(steps);
+      Collections.sort(sorted, new Comparator<Step>() {
+         @Override
+         public int compare(Step o1, Step o2) {
+            return Double.compare(o1.actualRate, o2.actualRate);
+         }
+      });
+      double minRate = sorted.get(0).actualRate, maxRate = sorted.get(sorted.size() - 1).actualRate;
+      long minLatency = Long.MAX_VALUE, maxLatency = Long.MIN_VALUE;
+      for (Step step : sorted) {
+         minLatency = Math.min(minLatency, step.latency);
+         maxLatency = Math.max(maxLatency, step.latency);
+      }
+      Step knee = sorted.get(0);
+      double best = Double.NEGATIVE_INFINITY;
+      for (Step step : sorted) {
+         double x = maxRate == minRate ? 1 : (step.actualRate - minRate) / (maxRate - minRate);
+         double y = maxLatency == minLatency ? 0 : (double) (step.latency - minLatency) / (maxLatency - minLatency);
+         if (x - y > best) {
+            best = x - y;
+            knee = step;
+         }
+      }
+      return knee;
+   }
+
+   public static class Step {
+      private final double targetRate;
+      private final double actualRate;
+      private final long latency;
+      private final boolean withinSlo;
+
+      public Step(double targetRate, double actualRate, long latency, boolean withinSlo) {
+         this.targetRate = targetRate;
+         this.actualRate = actualRate;
+         this.latency = latency;
+         this.withinSlo = withinSlo;
+      }
+
+      public double getTargetRate() {
+         return targetRate;
+      }
+
+      public double getActualRate() {
+         return actualRate;
+      }
+
+      public long getLatency() {
+         return latency;
+      }
+
+      public boolean isWithinSlo() {
+         return withinSlo;
+      }
+
+      @Override
+      public String toString() {
+         return "Step{" +
+               "targetRate=" + targetRate +
+               ", actualRate=" + actualRate +
+               ", latency=" + latency +
+               ", withinSlo=" + withinSlo +
+               '}';
+      }
+   }
+}
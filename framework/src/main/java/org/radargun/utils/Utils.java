@@ -278,4 +278,30 @@ public class Utils {
       }
       return durationMillis;
    }
+
+   /**
+    * Parses sizes such as '1024' (bytes), '64k', '4KB', '2m' or '1GB'. Units are powers of 1024.
+    */
+   public static long string2Bytes(String size) {
+      String value = size.trim().toUpperCase();
+      if (value.endsWith("B")) {
+         value = value.substring(0, value.length() - 1);
+      }
+      long multiplier = 1;
+      if (value.endsWith("K")) {
+         multiplier = 1024;
+      } else if (value.endsWith("M")) {
+         multiplier = 1024 * 1024;
+      } else if (value.endsWith("G")) {
+         multiplier = 1024 * 1024 * 1024;
+      }
+      if (multiplier != 1) {
+         value = value.substring(0, value.length() - 1);
+      }
+      try {
+         return Long.parseLong(value.trim()) * multiplier;
+      } catch (NumberFormatException nfe) {
+         throw new IllegalArgumentException("Cannot parse string: '" + size + "' Supported formats: '1024' (bytes), '64k' (kilobytes), '2m' (megabytes) or '1g' (gigabytes)");
+      }
+   }
 }
@@ -0,0 +1,60 @@
+#!/bin/bash
+
+## Load includes
+if [ "x$RADARGUN_HOME" = "x" ]; then DIRNAME=`dirname $0`; RADARGUN_HOME=`cd $DIRNAME/..; pwd` ; fi; export RADARGUN_HOME
+. ${RADARGUN_HOME}/bin/includes.sh
+
+CONFIG=./conf/benchmark.xml
+SLAVE_COUNT_ARG=""
+FORK=""
+NODES=""
+
+help_and_exit() {
+  echo "Usage: "
+  echo '  $ cluster.sh [-c CONFIG] [-s SLAVE_COUNT] [-f [-n NODES]]'
+  echo ""
+  echo "   -c        Path to the framework configuration XML file. Optional - if not supplied benchmark will load ${CONFIG}"
+  echo ""
+  echo "   -s        Number of slaves.  Defaults to maxSize attribute in framework configuration XML file."
+  echo ""
+  echo "   -f        Runs each slave in a JVM of its own. By default the slaves run in the master's JVM."
+  echo ""
+  echo "   -n        With -f, the number of slaves run by each slave JVM. Defaults to 1."
+  echo ""
+  echo "   -h        Displays this help screen"
+  echo ""
+
+  exit 0
+}
+
+welcome "This script is used to run a distributed benchmark with the master and all the slaves on this machine."
+
+### read in any command-line params
+while ! [ -z $1 ]
+do
+  case "$1" in
+    "-c")
+      CONFIG=$2
+      shift
+      ;;
+    "-s")
+      SLAVE_COUNT_ARG="-Dslaves=$2 "
+      shift
+      ;;
+    "-f")
+      FORK="-fork"
+      ;;
+    "-n")
+      NODES="-nodes $2"
+      shift
+      ;;
+    *)
+      help_and_exit
+      ;;
+  esac
+  shift
+done
+
+add_fwk_to_classpath
+set_env
+${JAVA} ${JVM_OPTS} -classpath $CP -Djava.net.preferIPv4Stack=true $SLAVE_COUNT_ARG org.radargun.LaunchCluster -config ${CONFIG} ${FORK} ${NODES}
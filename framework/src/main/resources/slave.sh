@@ -8,6 +8,7 @@ if [ "x$RADARGUN_HOME" = "x" ]; then DIRNAME=`dirname $0`; RADARGUN_HOME=`cd $DI
 MASTER_HOST=""
 MASTER_PORT=""
 LOG4J_PREFIX=`hostname`
+NODES=1
 
 
 default_master() {
@@ -30,12 +31,14 @@ MASTER=${MASTER_HOST}:${MASTER_PORT}
 
 help_and_exit() {
   echo "Usage: "
-  echo '  $ slave.sh [-m host:port] [-p log4j_file_prefix]'
+  echo '  $ slave.sh [-m host:port] [-p log4j_file_prefix] [-n nodes]'
   echo ""
   echo "   -m        Master host and port. Optional, defaults to ${MASTER}. (this value is taken from ./conf/benchmark.xml)."
   echo ""
   echo "   -p        Prefix to be appended to the generated log4j file (useful when running multiple nodes on the same machine). Optional."
   echo ""
+  echo "   -n        Number of cluster nodes run by this slave process, each with its own cache wrapper. Optional, defaults to 1."
+  echo ""
   echo "   -h        Displays this help screen"
   echo ""
   exit 0
@@ -55,6 +58,10 @@ do
       LOG4J_PREFIX=$2
       shift
       ;;
+    "-n")
+      NODES=$2
+      shift
+      ;;
     "-h")
       help_and_exit
       ;;
@@ -66,7 +73,7 @@ do
   shift
 done
 
-CONF="-master $MASTER"
+CONF="-master $MASTER -nodes $NODES"
 
 add_fwk_to_classpath
 set_env
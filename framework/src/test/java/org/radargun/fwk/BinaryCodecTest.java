@@ -0,0 +1,96 @@
+package org.radargun.fwk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.radargun.SerializationHelper;
+import org.radargun.stages.DefaultDistStageAck;
+import org.radargun.stages.WebSessionBenchmarkStage;
+import org.radargun.stressors.BackgroundStats;
+import org.radargun.stressors.IntervalStats;
+import org.radargun.utils.LatencyHistogram;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class BinaryCodecTest {
+
+   public void testAckWithPayload() throws Exception {
+      DefaultDistStageAck ack = new DefaultDistStageAck(3, InetAddress.getByName("127.0.0.1"));
+      ack.setDuration(12345);
+      ack.setError(true);
+      ack.setErrorMessage("ścieżka ☃");
+      Map<String, Object> payload = new LinkedHashMap<String, Object>();
+      payload.put("REQ_PER_SEC", 1234.5);
+      payload.put("READ_COUNT", Long.MIN_VALUE);
+      payload.put("NULL", null);
+      List<IntervalStats> intervals = new ArrayList<IntervalStats>();
+      intervals.add(new IntervalStats(1000, 1000, 10, 20, 0, 100, 200, 300, 400, 500, 600));
+      payload.put("INTERVALS", intervals);
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(17);
+      histogram.record(123456789);
+      payload.put("HISTOGRAM", histogram);
+      payload.put("ADDRESS", new InetSocketAddress("127.0.0.1", 2103));
+      ack.setPayload(payload);
+
+      DefaultDistStageAck copy = (DefaultDistStageAck) roundTrip(ack);
+      assertEquals(copy.toString(), ack.toString());
+      assertEquals(copy.getDuration(), 12345);
+      @SuppressWarnings("unchecked")
+      Map<String, Object> copyPayload = (Map<String, Object>) copy.getPayload();
+      assertEquals(new ArrayList<String>(copyPayload.keySet()), new ArrayList<String>(payload.keySet()));
+      IntervalStats interval = ((List<IntervalStats>) copyPayload.get("INTERVALS")).get(0);
+      assertEquals(interval.getWriteMax(), 600);
+      LatencyHistogram copyHistogram = (LatencyHistogram) copyPayload.get("HISTOGRAM");
+      assertEquals(copyHistogram.getTotalCount(), 2);
+      assertEquals(copyHistogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99));
+      assertEquals(copyPayload.get("ADDRESS"), payload.get("ADDRESS"));
+   }
+
+   public void testBackgroundStats() throws Exception {
+      BackgroundStats.Stats stats = new BackgroundStats.Stats();
+      stats.registerRequest(100, true, false);
+      stats.registerRequest(50, false, true);
+      List<BackgroundStats.Stats> list = new ArrayList<BackgroundStats.Stats>();
+      list.add(stats.snapshot(false, 5000));
+      list.add(new BackgroundStats.Stats(false));
+      @SuppressWarnings("unchecked")
+      List<BackgroundStats.Stats> copy = (List<BackgroundStats.Stats>) roundTrip(list);
+      assertEquals(copy.size(), 2);
+      assertTrue(copy.get(0).isSnapshot());
+      assertTrue(copy.get(0).isNodeUp());
+      assertTrue(!copy.get(1).isNodeUp());
+   }
+
+   public void testStageFields() throws Exception {
+      WebSessionBenchmarkStage stage = new WebSessionBenchmarkStage();
+      stage.setNumberOfRequests(4321);
+      stage.setKeyGeneratorClass("org.radargun.stressors.LongKeyGenerator");
+      stage.setSlaves("0,2");
+      WebSessionBenchmarkStage copy = (WebSessionBenchmarkStage) roundTrip(stage);
+      assertEquals(copy.toString(), stage.toString());
+   }
+
+   public void testJavaSerializedMessageAccepted() throws Exception {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      oos.writeObject("legacy");
+      oos.close();
+      assertEquals(SerializationHelper.deserialize(bytes.toByteArray(), 0, bytes.size()), "legacy");
+   }
+
+   private Object roundTrip(Object object) throws Exception {
+      byte[] bytes = SerializationHelper.prepareForSerialization((java.io.Serializable) object);
+      assertEquals(SerializationHelper.byteArrayToInt(bytes), bytes.length - 4);
+      return SerializationHelper.deserialize(bytes, 4, bytes.length - 4);
+   }
+}
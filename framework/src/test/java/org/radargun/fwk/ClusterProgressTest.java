@@ -0,0 +1,51 @@
+package org.radargun.fwk;
+
+import java.util.List;
+
+import org.radargun.ClusterProgress;
+import org.radargun.stressors.IntervalStats;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class ClusterProgressTest {
+
+   public void testRowCompletedWhenAllSlavesReported() {
+      ClusterProgress progress = new ClusterProgress();
+      progress.stageStarted("WebSessionBenchmarkStage", 2);
+      progress.progressReceived(0, stats(1000, 800, 200, 1, 5000, 9000));
+      assertTrue(progress.getRows().isEmpty());
+      progress.progressReceived(1, stats(1000, 400, 100, 0, 7000, 3000));
+      List<ClusterProgress.Row> rows = progress.getRows();
+      assertEquals(rows.size(), 1);
+      ClusterProgress.Row row = rows.get(0);
+      assertEquals(row.getSlavesReporting(), 2);
+      assertEquals(row.getOps(), 1500);
+      assertEquals(row.getFailures(), 1);
+      assertEquals(row.getThroughput(), 1500.0);
+      assertEquals(row.getReadP99(), 7000);
+      assertEquals(row.getWriteP99(), 9000);
+      assertTrue(progress.toJson().contains("\"rows\":[{"));
+   }
+
+   public void testStageFinishedCompletesPartialRow() {
+      ClusterProgress progress = new ClusterProgress();
+      progress.stageStarted("WebSessionBenchmarkStage", 3);
+      progress.progressReceived(2, stats(500, 100, 0, 0, 1000, 0));
+      progress.progressReceived(2, stats(500, 50, 50, 0, 2000, 4000));
+      List<ClusterProgress.Row> rows = progress.stageFinished();
+      assertEquals(rows.size(), 1);
+      assertEquals(rows.get(0).getSlavesReporting(), 1);
+      assertEquals(rows.get(0).getOps(), 200);
+      assertEquals(rows.get(0).getThroughput(), 200.0);
+      progress.stageStarted("ClearClusterStage", 3);
+      assertTrue(progress.stageFinished().isEmpty());
+   }
+
+   private IntervalStats stats(long durationMillis, long reads, long writes, long failures, long readP99, long writeP99) {
+      return new IntervalStats(System.currentTimeMillis(), durationMillis, reads, writes, failures, readP99 / 2,
+                               readP99, readP99 * 2, writeP99 / 2, writeP99, writeP99 * 2);
+   }
+}
@@ -0,0 +1,86 @@
+package org.radargun.fwk;
+
+import org.radargun.stressors.HotspotKeySelector;
+import org.radargun.stressors.KeySelector;
+import org.radargun.stressors.LatestKeySelector;
+import org.radargun.stressors.UniformKeySelector;
+import org.radargun.stressors.ZipfianKeySelector;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+@Test
+public class KeySelectorTest {
+
+   private static final int KEYS = 1000;
+   private static final int SAMPLES = 200000;
+
+   public void testUniformSelectsAllKeys() {
+      int[] counts = sample(new UniformKeySelector(), false);
+      for (int i = 0; i < KEYS; i++) {
+         assert counts[i] > 0 : "key " + i + " was never selected";
+      }
+   }
+
+   public void testZipfianIsSkewed() {
+      ZipfianKeySelector selector = new ZipfianKeySelector();
+      selector.setScrambled(false);
+      int[] counts = sample(selector, false);
+      // with theta = 0.99 the first 10% of the keys receive well over half of the operations
+      assert sum(counts, 0, KEYS / 10) > SAMPLES / 2;
+      assert counts[0] > counts[1] && counts[1] > counts[10];
+   }
+
+   public void testScrambledZipfianIsSkewedOverTheKeySpace() {
+      int[] counts = sample(new ZipfianKeySelector(), false);
+      // the hottest keys aren't the first ones any more
+      assert sum(counts, 0, KEYS / 10) < SAMPLES / 2;
+      int[] sorted = counts.clone();
+      Arrays.sort(sorted);
+      assert sum(sorted, KEYS - KEYS / 10, KEYS) > SAMPLES / 2;
+   }
+
+   public void testHotspot() {
+      HotspotKeySelector selector = new HotspotKeySelector();
+      selector.setHotOpsPercentage(90);
+      selector.setHotKeysPercentage(10);
+      int hot = sum(sample(selector, false), 0, KEYS / 10);
+      assert Math.abs(hot - SAMPLES * 0.9) < SAMPLES * 0.01 : "hot ops: " + hot;
+   }
+
+   public void testLatestReadsRecentWrites() {
+      LatestKeySelector selector = new LatestKeySelector();
+      Random random = new Random(1);
+      selector.init(KEYS, random);
+      int written = 0;
+      for (int i = 0; i < 500; i++) {
+         written = selector.nextKeyIndex(true, random);
+      }
+      assert written == 499;
+      int recent = 0;
+      for (int i = 0; i < SAMPLES; i++) {
+         int index = selector.nextKeyIndex(false, random);
+         if (index <= written && index > written - 50) recent++;
+      }
+      assert recent > SAMPLES / 2 : "recent reads: " + recent;
+   }
+
+   private int[] sample(KeySelector selector, boolean write) {
+      Random random = new Random(1);
+      selector.init(KEYS, random);
+      int[] counts = new int[KEYS];
+      for (int i = 0; i < SAMPLES; i++) {
+         counts[selector.nextKeyIndex(write, random)]++;
+      }
+      return counts;
+   }
+
+   private int sum(int[] counts, int from, int to) {
+      int sum = 0;
+      for (int i = from; i < to; i++) {
+         sum += counts[i];
+      }
+      return sum;
+   }
+}
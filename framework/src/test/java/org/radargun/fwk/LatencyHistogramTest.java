@@ -0,0 +1,83 @@
+package org.radargun.fwk;
+
+import org.radargun.utils.LatencyHistogram;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class LatencyHistogramTest {
+
+   public void testEmpty() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(histogram.getTotalCount(), 0);
+      assertEquals(histogram.getValueAtPercentile(99), 0);
+      assertEquals(histogram.getMax(), 0);
+   }
+
+   public void testSmallValuesAreExact() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (int i = 1; i <= 100; i++) {
+         histogram.record(i);
+      }
+      assertEquals(histogram.getValueAtPercentile(50), 50);
+      assertEquals(histogram.getValueAtPercentile(99), 99);
+      assertEquals(histogram.getValueAtPercentile(100), 100);
+      assertEquals(histogram.getMin(), 1);
+      assertEquals(histogram.getMean(), 50.5, 0.0001);
+   }
+
+   public void testPercentilesWithinOnePercent() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long i = 1; i <= 100000; i++) {
+         histogram.record(i * 1000);
+      }
+      assertWithinOnePercent(histogram.getValueAtPercentile(50), 50000000);
+      assertWithinOnePercent(histogram.getValueAtPercentile(90), 90000000);
+      assertWithinOnePercent(histogram.getValueAtPercentile(99), 99000000);
+      assertWithinOnePercent(histogram.getValueAtPercentile(99.9), 99900000);
+      assertEquals(histogram.getMax(), 100000000);
+   }
+
+   public void testMerge() {
+      LatencyHistogram fast = new LatencyHistogram();
+      LatencyHistogram slow = new LatencyHistogram();
+      for (int i = 0; i < 990; i++) {
+         fast.record(1000);
+      }
+      for (int i = 0; i < 10; i++) {
+         slow.record(5000000);
+      }
+      fast.merge(slow);
+      assertEquals(fast.getTotalCount(), 1000);
+      assertWithinOnePercent(fast.getValueAtPercentile(99), 1000);
+      assertWithinOnePercent(fast.getValueAtPercentile(99.9), 5000000);
+      assertEquals(fast.getMax(), 5000000);
+      assertEquals(slow.getTotalCount(), 10);
+   }
+
+   public void testValuesOverMaximumAreClamped() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(LatencyHistogram.MAX_TRACKABLE_VALUE * 2);
+      assertEquals(histogram.getMax(), LatencyHistogram.MAX_TRACKABLE_VALUE * 2);
+      assert histogram.getValueAtPercentile(100) >= LatencyHistogram.MAX_TRACKABLE_VALUE;
+   }
+
+   public void testSparseArray() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long i = 1; i <= 1000; i++) {
+         histogram.record(i * 1000);
+      }
+      LatencyHistogram copy = new LatencyHistogram();
+      copy.mergeSparseArray(histogram.toSparseArray());
+      assertEquals(copy.getTotalCount(), 1000);
+      assertEquals(copy.getMin(), 1000);
+      assertEquals(copy.getMax(), 1000000);
+      assertEquals(copy.getMean(), histogram.getMean(), 0.0001);
+      assertEquals(copy.getValueAtPercentile(99), histogram.getValueAtPercentile(99));
+   }
+
+   private void assertWithinOnePercent(long actual, long expected) {
+      assert Math.abs(actual - expected) <= expected / 100 : "expected " + expected + " but was " + actual;
+   }
+}
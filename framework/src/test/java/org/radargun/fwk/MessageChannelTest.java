@@ -0,0 +1,138 @@
+package org.radargun.fwk;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.radargun.protocol.BinaryOutput;
+import org.radargun.protocol.BufferPool;
+import org.radargun.protocol.MessageChannel;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test
+public class MessageChannelTest {
+
+   public void testLargeAndSmallMessages() throws Exception {
+      ServerSocketChannel server = ServerSocketChannel.open();
+      server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+      SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+      SocketChannel accepted = server.accept();
+      client.configureBlocking(false);
+      accepted.configureBlocking(false);
+      MessageChannel sender = new MessageChannel(client);
+      MessageChannel receiver = new MessageChannel(accepted);
+      try {
+         byte[] large = new byte[5 * 1024 * 1024 + 17];
+         new Random(42).nextBytes(large);
+         sender.send(MessageChannel.ACK, large, 0, large.length);
+         sender.send(MessageChannel.STAGE, new byte[0], 0, 0);
+         sender.send(MessageChannel.ACK, new byte[]{1, 2, 3, 4}, 1, 2);
+
+         List<MessageChannel.Message> messages = new ArrayList<MessageChannel.Message>();
+         long deadline = System.currentTimeMillis() + 10000;
+         while (messages.size() < 3 && System.currentTimeMillis() < deadline) {
+            sender.flush();
+            assertTrue(receiver.read());
+            MessageChannel.Message message;
+            while ((message = receiver.poll()) != null) {
+               messages.add(message);
+            }
+         }
+         assertTrue(!sender.hasPendingWrites());
+         assertEquals(messages.size(), 3);
+         assertEquals(messages.get(0).getType(), MessageChannel.ACK);
+         assertTrue(Arrays.equals(messages.get(0).getData(), large));
+         assertEquals(messages.get(1).getType(), MessageChannel.STAGE);
+         assertEquals(messages.get(1).getData().length, 0);
+         assertTrue(Arrays.equals(messages.get(2).getData(), new byte[]{2, 3}));
+      } finally {
+         sender.close();
+         receiver.close();
+         server.close();
+      }
+   }
+
+   public void testSharedMessage() throws Exception {
+      ServerSocketChannel server = ServerSocketChannel.open();
+      server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+      SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+      SocketChannel accepted = server.accept();
+      client.configureBlocking(false);
+      accepted.configureBlocking(false);
+      MessageChannel sender = new MessageChannel(client);
+      MessageChannel receiver = new MessageChannel(accepted);
+      try {
+         byte[] body = new byte[3 * MessageChannel.CHUNK_SIZE + 5];
+         new Random(42).nextBytes(body);
+         BinaryOutput output = new BinaryOutput();
+         output.write(body, 0, body.length);
+         ByteBuffer shared = MessageChannel.share(output);
+         // the same buffer twice, as if sent to two slaves
+         sender.send(MessageChannel.STAGE, new byte[]{1, 2}, shared);
+         sender.send(MessageChannel.STAGE, new byte[]{3, 4}, shared);
+         assertEquals(shared.remaining(), body.length);
+
+         List<MessageChannel.Message> messages = new ArrayList<MessageChannel.Message>();
+         long deadline = System.currentTimeMillis() + 10000;
+         while (messages.size() < 2 && System.currentTimeMillis() < deadline) {
+            sender.flush();
+            assertTrue(receiver.read());
+            MessageChannel.Message message;
+            while ((message = receiver.poll()) != null) {
+               messages.add(message);
+            }
+         }
+         assertEquals(messages.size(), 2);
+         for (int i = 0; i < 2; i++) {
+            byte[] data = messages.get(i).getData();
+            assertEquals(data.length, body.length + 2);
+            assertEquals(data[0], (byte) (2 * i + 1));
+            assertEquals(data[1], (byte) (2 * i + 2));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, 2, data.length), body));
+         }
+      } finally {
+         sender.close();
+         receiver.close();
+         server.close();
+      }
+   }
+
+   public void testTooLongMessageClosesChannel() throws Exception {
+      ServerSocketChannel server = ServerSocketChannel.open();
+      server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+      SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+      SocketChannel accepted = server.accept();
+      accepted.configureBlocking(false);
+      MessageChannel receiver = new MessageChannel(accepted, new BufferPool(MessageChannel.CHUNK_SIZE, 1), 1024);
+      try {
+         ByteBuffer header = ByteBuffer.allocate(9);
+         header.put(MessageChannel.ACK).putInt(16).putInt(Integer.MAX_VALUE - 1);
+         header.flip();
+         client.write(header);
+         long deadline = System.currentTimeMillis() + 10000;
+         try {
+            while (System.currentTimeMillis() < deadline) {
+               receiver.read();
+            }
+            fail("The message should have been refused");
+         } catch (IOException e) {
+            assertFalse(accepted.isOpen());
+         }
+      } finally {
+         client.close();
+         server.close();
+      }
+   }
+}
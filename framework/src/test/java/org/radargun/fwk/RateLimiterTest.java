@@ -0,0 +1,45 @@
+package org.radargun.fwk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.radargun.utils.RateLimiter;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class RateLimiterTest {
+
+   public void testPreciseScheduleKeepsMissedSlots() throws Exception {
+      long start = System.nanoTime();
+      RateLimiter limiter = new RateLimiter(1000, -1, start);
+      long interval = TimeUnit.MILLISECONDS.toNanos(1);
+      assertEquals(limiter.acquire(), start);
+      Thread.sleep(20);
+      // the slots missed while sleeping are handed out without waiting, in order
+      for (int i = 1; i <= 10; i++) {
+         assertEquals(limiter.acquire(), start + i * interval);
+      }
+   }
+
+   public void testTokenBucketDropsMissedSlots() throws Exception {
+      long start = System.nanoTime();
+      RateLimiter limiter = new RateLimiter(1000, 2, start);
+      long interval = TimeUnit.MILLISECONDS.toNanos(1);
+      limiter.acquire();
+      Thread.sleep(20);
+      long beforeBurst = System.nanoTime();
+      long first = limiter.acquire();
+      assert first >= beforeBurst - 2 * interval : "more than the burst was kept";
+      assertEquals(limiter.acquire(), first + interval);
+      assertEquals(limiter.acquire(), first + 2 * interval);
+   }
+
+   public void testWaitsForSlot() {
+      long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+      RateLimiter limiter = new RateLimiter(100, -1, start);
+      limiter.acquire();
+      limiter.acquire();
+      assert System.nanoTime() >= start + TimeUnit.MILLISECONDS.toNanos(10) : "returned before the slot";
+   }
+}
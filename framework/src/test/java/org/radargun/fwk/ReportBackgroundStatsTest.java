@@ -0,0 +1,51 @@
+package org.radargun.fwk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.radargun.stages.ReportBackgroundStatsStage;
+import org.radargun.stressors.BackgroundStats.Stats;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+@Test
+public class ReportBackgroundStatsTest {
+
+   public void testJitteredIntervalsStayAligned() {
+      // slave 0: the second period is split in two by jitter
+      List<Stats> slave0 = Arrays.asList(stats(0, 1000, 10), stats(1000, 1400, 4), stats(1400, 2000, 6),
+                                         stats(2000, 3000, 10), stats(3000, 3950, 10));
+      // slave 1: its clock is 5 s behind the master's, and it joined one period later
+      List<Stats> slave1 = Arrays.asList(stats(-4000, -3050, 20), stats(-3050, -2000, 20));
+      List<List<Stats>> results = new ArrayList<List<Stats>>();
+      results.add(slave0);
+      results.add(slave1);
+
+      List<List<Stats>> aligned = ReportBackgroundStatsStage.alignByTime(results, new long[]{0, 5000});
+
+      assertEquals(aligned.get(0).size(), 4);
+      assertEquals(aligned.get(0).get(0).getNumberOfRequests(), 10);
+      assertEquals(aligned.get(0).get(1).getNumberOfRequests(), 10);
+      assertEquals(aligned.get(0).get(1).getIntervalBeginTime(), 1000);
+      assertEquals(aligned.get(0).get(1).getIntervalEndTime(), 2000);
+      assertEquals(aligned.get(0).get(2).getIntervalBeginTime(), 2000);
+      assertEquals(aligned.get(0).get(3).getIntervalBeginTime(), 3000);
+
+      assertEquals(aligned.get(1).size(), 3);
+      assertNull(aligned.get(1).get(0));
+      assertEquals(aligned.get(1).get(1).getIntervalBeginTime(), 1000);
+      assertEquals(aligned.get(1).get(2).getIntervalEndTime(), 3000);
+   }
+
+   private Stats stats(long begin, long end, int requests) {
+      Stats stats = new Stats();
+      stats.reset(begin);
+      for (int i = 0; i < requests; i++) {
+         stats.registerRequest(1000, i % 2 == 0, false);
+      }
+      return stats.snapshot(false, end);
+   }
+}
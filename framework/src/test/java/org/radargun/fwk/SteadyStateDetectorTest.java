@@ -0,0 +1,43 @@
+package org.radargun.fwk;
+
+import org.radargun.stressors.SteadyStateDetector;
+import org.testng.annotations.Test;
+
+@Test
+public class SteadyStateDetectorTest {
+
+   public void testWarmupIsNotSteady() {
+      SteadyStateDetector detector = new SteadyStateDetector(5, 0.05);
+      double[] warmup = {100, 300, 600, 800, 950};
+      for (double sample : warmup) {
+         assert !detector.addSample(sample);
+      }
+      assert !detector.isSteady();
+      int samples = 0;
+      while (!detector.addSample(1000 + (samples % 2) * 10)) {
+         samples++;
+         assert samples < 5 : "steady state not detected";
+      }
+      assert detector.isSteady();
+      assert detector.getSteadySamples() == 0;
+      detector.addSample(1000);
+      assert detector.getSteadySamples() == 1;
+   }
+
+   public void testConfidenceIntervalNarrows() {
+      SteadyStateDetector detector = new SteadyStateDetector(2, 0.05);
+      detector.addSample(1000);
+      assert detector.addSample(1000);
+      assert Double.isNaN(detector.getRelativeConfidenceInterval());
+      for (int i = 0; i < 10; i++) {
+         detector.addSample(i % 2 == 0 ? 900 : 1100);
+      }
+      double wide = detector.getRelativeConfidenceInterval();
+      for (int i = 0; i < 1000; i++) {
+         detector.addSample(i % 2 == 0 ? 900 : 1100);
+      }
+      double narrow = detector.getRelativeConfidenceInterval();
+      assert narrow < wide / 5 : "wide: " + wide + ", narrow: " + narrow;
+      assert Math.abs(detector.getSteadyMean() - 1000) < 1;
+   }
+}
@@ -0,0 +1,42 @@
+package org.radargun.fwk;
+
+import org.radargun.utils.ThroughputSearch;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+@Test
+public class ThroughputSearchTest {
+
+   public void testFindsCapacity() {
+      ThroughputSearch search = new ThroughputSearch(1000, -1, 0.05, 30);
+      // latency explodes past 12000 requests per second
+      while (true) {
+         double rate = search.getCurrentRate();
+         boolean ok = rate <= 12000;
+         if (!search.record(rate, ok ? 1000000 : 50000000, ok)) break;
+      }
+      double max = search.getMaxSustainableRate();
+      assert max <= 12000 && max >= 12000 * 0.95 : "unexpected maximum " + max;
+      // doubling until 16000, then halving the interval [8000, 16000]
+      assertEquals(search.getSteps().get(4).getTargetRate(), 16000.0);
+   }
+
+   public void testRespectsMaxRate() {
+      ThroughputSearch search = new ThroughputSearch(1000, 3000, 0.05, 30);
+      assert search.record(1000, 1, true);
+      assert search.record(2000, 1, true);
+      assertEquals(search.getCurrentRate(), 3000.0);
+      assert !search.record(3000, 1, true);
+      assertEquals(search.getMaxSustainableRate(), 3000.0);
+   }
+
+   public void testKnee() {
+      ThroughputSearch search = new ThroughputSearch(1000, -1, 0.05, 4);
+      search.record(1000, 1000, true);
+      search.record(2000, 1100, true);
+      search.record(3900, 1500, true);
+      search.record(4000, 20000, false);
+      assertEquals(search.getKnee().getActualRate(), 3900.0);
+   }
+}
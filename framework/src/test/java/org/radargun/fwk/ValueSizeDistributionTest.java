@@ -0,0 +1,76 @@
+package org.radargun.fwk;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.radargun.stressors.ByteArrayValueGenerator;
+import org.radargun.stressors.ValueSizeDistribution;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test
+public class ValueSizeDistributionTest {
+
+   public void testUniformStaysInRange() {
+      ValueSizeDistribution sizes = ValueSizeDistribution.parse("uniform(200, 2k)");
+      Random random = new Random(1);
+      int min = Integer.MAX_VALUE, max = 0;
+      for (int i = 0; i < 100000; i++) {
+         int size = sizes.nextSize(random);
+         min = Math.min(min, size);
+         max = Math.max(max, size);
+      }
+      assertEquals(min, 200);
+      assertEquals(max, 2048);
+   }
+
+   public void testLogNormalIsClamped() {
+      ValueSizeDistribution sizes = ValueSizeDistribution.parse("lognormal(4k, 3, 200, 2m)");
+      Random random = new Random(1);
+      for (int i = 0; i < 100000; i++) {
+         int size = sizes.nextSize(random);
+         assert size >= 200 && size <= 2 * 1024 * 1024 : "size out of range: " + size;
+      }
+   }
+
+   public void testHistogram() throws Exception {
+      File file = File.createTempFile("sizes", ".txt");
+      file.deleteOnExit();
+      FileWriter writer = new FileWriter(file);
+      writer.write("# size weight\n100 1\n1k 0\n10k 3\n");
+      writer.close();
+      ValueSizeDistribution sizes = ValueSizeDistribution.parse("histogram(" + file.getAbsolutePath() + ")");
+      Random random = new Random(1);
+      int small = 0;
+      for (int i = 0; i < 100000; i++) {
+         int size = sizes.nextSize(random);
+         assert size == 100 || size == 10240 : "unexpected size " + size;
+         if (size == 100) small++;
+      }
+      assert Math.abs(small - 25000) < 1000 : "expected about 25% of small values but got " + small;
+   }
+
+   public void testMutatedValuesDontChangeReturnedOnes() {
+      ByteArrayValueGenerator generator = new ByteArrayValueGenerator();
+      Random random = new Random(1);
+      generator.init(ValueSizeDistribution.fixed(1000), 1, true, 0, random);
+      byte[] first = (byte[]) generator.nextValue(random);
+      byte[] copy = first.clone();
+      byte[] second = (byte[]) generator.nextValue(random);
+      assertTrue(Arrays.equals(first, copy));
+      assertFalse(Arrays.equals(first, second));
+   }
+
+   public void testUnknownDistribution() {
+      try {
+         ValueSizeDistribution.parse("pareto(1k)");
+         assert false : "unknown distribution should be rejected";
+      } catch (IllegalArgumentException expected) {
+      }
+   }
+}
@@ -1,12 +1,16 @@
 package org.radargun.cachewrappers;
 
+import org.radargun.BulkOperationsCapable;
 import org.radargun.CacheWrapper;
 import org.radargun.utils.TypedProperties;
 
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class ChmWrapper implements CacheWrapper {
+public class ChmWrapper implements CacheWrapper, BulkOperationsCapable {
 
    public final ConcurrentHashMap chm = new ConcurrentHashMap();
 
@@ -27,6 +31,20 @@ public class ChmWrapper implements CacheWrapper {
       return chm.get(key);
    }
 
+   @Override
+   public void putAll(String bucket, Map<Object, Object> entries) throws Exception {
+      chm.putAll(entries);
+   }
+
+   @Override
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys) throws Exception {
+      Map<Object, Object> result = new HashMap<Object, Object>(keys.size() * 2);
+      for (Object key : keys) {
+         result.put(key, chm.get(key));
+      }
+      return result;
+   }
+
    public void empty() throws Exception {
       chm.clear();
    }
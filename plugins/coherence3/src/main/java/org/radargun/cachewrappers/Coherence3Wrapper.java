@@ -1,6 +1,7 @@
 package org.radargun.cachewrappers;
 
 import org.apache.log4j.Logger;
+import org.radargun.BulkOperationsCapable;
 import org.radargun.CacheWrapper;
 import org.radargun.utils.TypedProperties;
 
@@ -8,6 +9,9 @@ import com.tangosol.net.CacheFactory;
 import com.tangosol.net.DefaultConfigurableCacheFactory;
 import com.tangosol.net.NamedCache;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Oracle Coherence 3.x CacheWrapper implementation.
  * 
@@ -15,7 +19,7 @@ import com.tangosol.net.NamedCache;
  * @author <a href="mailto:mlinhard@redhat.com">Michal Linhard</a>
  * @since 1.0.0
  */
-public class Coherence3Wrapper implements CacheWrapper {
+public class Coherence3Wrapper implements CacheWrapper, BulkOperationsCapable {
    private static final String CACHE_NAME = "x"; // this must be synced with cache configs
    private NamedCache nc;
    private Logger log = Logger.getLogger(Coherence3Wrapper.class);
@@ -52,6 +56,17 @@ public class Coherence3Wrapper implements CacheWrapper {
       return nc.get(key);
    }
 
+   @Override
+   public void putAll(String bucket, Map<Object, Object> entries) throws Exception {
+      nc.putAll(entries);
+   }
+
+   @Override
+   @SuppressWarnings("unchecked")
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys) throws Exception {
+      return nc.getAll(keys);
+   }
+
    public void empty() throws Exception {
       nc.clear();
    }
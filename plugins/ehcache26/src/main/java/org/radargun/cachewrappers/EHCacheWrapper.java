@@ -5,11 +5,17 @@ import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.radargun.BulkOperationsCapable;
 import org.radargun.CacheWrapper;
 import org.radargun.utils.TypedProperties;
 
 import java.io.Serializable;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -20,7 +26,7 @@ import java.net.URL;
  *
  * @author Manik Surtani (manik@surtani.org)
  */
-public class EHCacheWrapper implements CacheWrapper {
+public class EHCacheWrapper implements CacheWrapper, BulkOperationsCapable {
    private CacheManager manager;
    private Ehcache cache;
    private Log log = LogFactory.getLog("org.radargun.cachewrappers.EHCacheWrapper");
@@ -81,6 +87,23 @@ public class EHCacheWrapper implements CacheWrapper {
       } else return s;
    }
 
+   public void putAll(String bucket, Map<Object, Object> entries) throws Exception {
+      List<Element> elements = new ArrayList<Element>(entries.size());
+      for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+         elements.add(new Element((Serializable) entry.getKey(), (Serializable) entry.getValue()));
+      }
+      cache.putAll(elements);
+   }
+
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys) throws Exception {
+      Map<Object, Element> elements = cache.getAll(keys);
+      Map<Object, Object> result = new HashMap<Object, Object>(elements.size() * 2);
+      for (Map.Entry<Object, Element> entry : elements.entrySet()) {
+         result.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().getValue());
+      }
+      return result;
+   }
+
    public int getNumMembers() {
       return localMode ? 0 : manager.getCacheManagerPeerProvider("RMI").listRemoteCachePeers(cache).size();
    }
@@ -7,21 +7,33 @@ import org.infinispan.context.Flag;
 import org.infinispan.distribution.ch.ConsistentHash;
 import org.infinispan.factories.ComponentRegistry;
 import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
+import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
 import org.infinispan.remoting.rpc.RpcManager;
 import org.infinispan.remoting.transport.Address;
 import org.jgroups.logging.Log;
 import org.jgroups.logging.LogFactory;
+import org.radargun.AsyncOperationsCapable;
+import org.radargun.BulkOperationsCapable;
 import org.radargun.CacheWrapper;
+import org.radargun.MembershipAware;
+import org.radargun.utils.CompletedFuture;
 import org.radargun.utils.TypedProperties;
 import org.radargun.utils.Utils;
 
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
 
-public class InfinispanWrapper implements CacheWrapper {
+public class InfinispanWrapper implements CacheWrapper, BulkOperationsCapable, AsyncOperationsCapable, MembershipAware {
 
    static {
       // Set up transactional stores for JBoss TS
@@ -36,6 +48,9 @@ public class InfinispanWrapper implements CacheWrapper {
    protected boolean started = false;
    String config;
    private volatile boolean enlistExtraXAResource;
+   private volatile boolean syncGetLogged;
+   private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<MembershipListener>();
+   protected final ViewListener viewListener = new ViewListener();
 
    public void setUp(String config, boolean isLocal, int nodeIndex, TypedProperties confAttributes) throws Exception {
       this.config = config;
@@ -46,6 +61,7 @@ public class InfinispanWrapper implements CacheWrapper {
 
       if (!started) {
          cacheManager = new DefaultCacheManager(configFile);
+         cacheManager.addListener(viewListener);
          String cacheNames = cacheManager.getDefinedCacheNames();
          if (!cacheNames.contains(cacheName))
             throw new IllegalStateException("The requested cache(" + cacheName + ") is not defined. Defined cache " +
@@ -79,6 +95,37 @@ public class InfinispanWrapper implements CacheWrapper {
       return cache.get(key);
    }
 
+   public void putAll(String bucket, Map<Object, Object> entries) throws Exception {
+      getCache().putAll(entries);
+   }
+
+   public Future<?> putAsync(String bucket, Object key, Object value) throws Exception {
+      return getCache().putAsync(key, value);
+   }
+
+   /**
+    * Infinispan 4.x doesn't have an asynchronous get, so the key is read synchronously: only the writes overlap.
+    */
+   public Future<?> getAsync(String bucket, Object key) throws Exception {
+      if (!syncGetLogged) {
+         syncGetLogged = true;
+         log.warn("Infinispan 4.x has no asynchronous get, the reads are synchronous and only the writes overlap");
+      }
+      return new CompletedFuture<Object>(getCache().get(key));
+   }
+
+   /**
+    * Infinispan 4.x doesn't have a bulk get, so the keys are read one by one.
+    */
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys) throws Exception {
+      Map<Object, Object> result = new HashMap<Object, Object>(keys.size() * 2);
+      Cache<Object, Object> cache = getCache();
+      for (Object key : keys) {
+         result.put(key, cache.get(key));
+      }
+      return result;
+   }
+
    public void empty() throws Exception {
       RpcManager rpcManager = cache.getAdvancedCache().getRpcManager();
       int clusterSize = 0;
@@ -95,6 +142,27 @@ public class InfinispanWrapper implements CacheWrapper {
       log.info("Cache size after clear: " + cache.keySet().size());
    }
 
+   public void addMembershipListener(MembershipListener listener) {
+      membershipListeners.add(listener);
+   }
+
+   public void removeMembershipListener(MembershipListener listener) {
+      membershipListeners.remove(listener);
+   }
+
+   /**
+    * Passes the view changes of the cache manager to the {@link MembershipListener}s.
+    */
+   @Listener
+   public class ViewListener {
+      @ViewChanged
+      public void viewChanged(ViewChangedEvent event) {
+         for (MembershipListener listener : membershipListeners) {
+            listener.membershipChanged(event.getNewMembers().size());
+         }
+      }
+   }
+
    public int getNumMembers() {
       ComponentRegistry componentRegistry = cache.getAdvancedCache().getComponentRegistry();
       if (componentRegistry.getStatus().startingUp()) {
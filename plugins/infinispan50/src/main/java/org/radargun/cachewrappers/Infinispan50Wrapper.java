@@ -0,0 +1,14 @@
+package org.radargun.cachewrappers;
+
+import java.util.concurrent.Future;
+
+/**
+ * InfinispanWrapper using the asynchronous get of Infinispan 5.x, so that reads overlap as well as writes.
+ */
+public class Infinispan50Wrapper extends InfinispanWrapper {
+
+   @Override
+   public Future<?> getAsync(String bucket, Object key) throws Exception {
+      return getCache().getAsync(key);
+   }
+}
@@ -1,5 +1,8 @@
 package org.radargun.cachewrappers;
 
+import java.util.Map;
+import java.util.concurrent.Future;
+
 import javax.transaction.Status;
 
 import org.infinispan.Cache;
@@ -20,7 +23,7 @@ import org.radargun.utils.TypedProperties;
  * @author Michal Linhard <mlinhard@redhat.com>
  * @author Ondrej Nevelik <onevelik@redhat.com>
  */
-public class InfinispanKillableWrapper extends InfinispanWrapper implements Killable {
+public class InfinispanKillableWrapper extends Infinispan50Wrapper implements Killable {
 
    private boolean isExplicitLocking;
    private static Log log = LogFactory.getLog(InfinispanKillableWrapper.class);
@@ -76,6 +79,41 @@ public class InfinispanKillableWrapper extends InfinispanWrapper implements Kill
       }
    }
 
+   /**
+    * Locks all the keys explicitly before writing them, the same way as {@link #put(String, Object, Object)}, so that
+    * batched and single puts are comparable.
+    */
+   @Override
+   public void putAll(String bucket, Map<Object, Object> entries) throws Exception {
+      boolean shouldStopTransactionHere = false;
+      if (isExplicitLocking && !isClusterValidationRequest(bucket)) {
+         if (tm.getStatus() == Status.STATUS_NO_TRANSACTION) {
+            shouldStopTransactionHere = true;
+            startTransaction();
+         }
+         getCache().getAdvancedCache().lock(entries.keySet());
+      }
+      super.putAll(bucket, entries);
+      if (shouldStopTransactionHere) {
+         endTransaction(true);
+      }
+   }
+
+   /**
+    * Explicit locking holds the lock in the transaction of the calling thread, which an asynchronous put can't use.
+    */
+   @Override
+   public Future<?> putAsync(String bucket, Object key, Object value) throws Exception {
+      checkNoExplicitLocking(bucket);
+      return super.putAsync(bucket, key, value);
+   }
+
+   protected void checkNoExplicitLocking(String bucket) {
+      if (isExplicitLocking && !isClusterValidationRequest(bucket)) {
+         throw new UnsupportedOperationException("Asynchronous puts can't use explicit locking, set maxOutstandingRequests to 1");
+      }
+   }
+
    protected boolean isClusterValidationRequest(String bucket) {
       return bucket.startsWith("clusterValidation") ? true : false;
    }
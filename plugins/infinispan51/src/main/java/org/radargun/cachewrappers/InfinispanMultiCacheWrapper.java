@@ -3,6 +3,7 @@ package org.radargun.cachewrappers;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.transaction.Status;
 
@@ -37,6 +38,7 @@ public class InfinispanMultiCacheWrapper extends InfinispanKillableWrapper imple
 
       if (!started) {
          cacheManager = new DefaultCacheManager(configFile);
+         cacheManager.addListener(viewListener);
 
          /*
           * Test case with multiple caches
@@ -101,6 +103,46 @@ public class InfinispanMultiCacheWrapper extends InfinispanKillableWrapper imple
       return caches.get(getThreadIdFromBucket(bucket)).get(key);
    }
 
+   /**
+    * Explicit locking is done the same way as in {@link #put(String, Object, Object)}.
+    */
+   @Override
+   public void putAll(String bucket, Map<Object, Object> entries) throws Exception {
+      boolean shouldStopTransactionHere = false;
+      if (isExplicitLockingEnabled() && !isClusterValidationRequest(bucket)) {
+         if (tm.getStatus() == Status.STATUS_NO_TRANSACTION) {
+            shouldStopTransactionHere = true;
+            startTransaction();
+         }
+         caches.get(getThreadIdFromBucket(bucket)).getAdvancedCache().lock(entries.keySet());
+      }
+      caches.get(getThreadIdFromBucket(bucket)).putAll(entries);
+      if (shouldStopTransactionHere) {
+         endTransaction(true);
+      }
+   }
+
+   @Override
+   public Future<?> putAsync(String bucket, Object key, Object value) throws Exception {
+      checkNoExplicitLocking(bucket);
+      return caches.get(getThreadIdFromBucket(bucket)).putAsync(key, value);
+   }
+
+   @Override
+   public Future<?> getAsync(String bucket, Object key) throws Exception {
+      return caches.get(getThreadIdFromBucket(bucket)).getAsync(key);
+   }
+
+   @Override
+   public Map<Object, Object> getAll(String bucket, Set<Object> keys) throws Exception {
+      Cache<Object, Object> cache = caches.get(getThreadIdFromBucket(bucket));
+      Map<Object, Object> result = new HashMap<Object, Object>(keys.size() * 2);
+      for (Object key : keys) {
+         result.put(key, cache.get(key));
+      }
+      return result;
+   }
+
    @Override
    public void empty() throws Exception {
       for (Cache aCache : caches.values()) {
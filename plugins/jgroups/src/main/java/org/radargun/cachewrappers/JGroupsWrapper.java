@@ -6,12 +6,14 @@ import org.jgroups.logging.Log;
 import org.jgroups.logging.LogFactory;
 import org.jgroups.util.Util;
 import org.radargun.CacheWrapper;
+import org.radargun.MembershipAware;
 import org.radargun.utils.TypedProperties;
 
 import javax.transaction.TransactionManager;
 import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -25,7 +27,7 @@ import java.util.*;
  * defined in jgroups.properties.
  * @author Bela Ban
  */
-public class JGroupsWrapper extends ReceiverAdapter implements CacheWrapper {
+public class JGroupsWrapper extends ReceiverAdapter implements CacheWrapper, MembershipAware {
    private static Log log = LogFactory.getLog(JGroupsWrapper.class);
    public static Random random = new Random();
 
@@ -45,6 +47,7 @@ public class JGroupsWrapper extends ReceiverAdapter implements CacheWrapper {
    protected volatile boolean started = false;
    protected volatile Address local_addr;
    protected volatile List<Address> members = Collections.emptyList();
+   private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<MembershipListener>();
 
    private int num_owners;
    private byte[] get_rsp;
@@ -151,6 +154,17 @@ public class JGroupsWrapper extends ReceiverAdapter implements CacheWrapper {
       // put the local address at the end of the list
       Collections.rotate(members, members.size() - members.indexOf(ch.getAddress()));
       this.members = members;
+      for (MembershipListener listener : membershipListeners) {
+         listener.membershipChanged(new_view.size());
+      }
+   }
+
+   public void addMembershipListener(MembershipListener listener) {
+      membershipListeners.add(listener);
+   }
+
+   public void removeMembershipListener(MembershipListener listener) {
+      membershipListeners.remove(listener);
    }
 
    public int getNumMembers() {